@@ -30,11 +30,154 @@ public class Config
             .comment("Modèle OpenAI à utiliser (par défaut: gpt-4o-mini)")
             .define("openAiModel", "gpt-4o-mini");
 
+    public static final ForgeConfigSpec.ConfigValue<String> OPENAI_BASE_URL = BUILDER
+            .comment("URL de base de l'API compatible OpenAI (par défaut: https://api.openai.com/v1).",
+                    "Permet de viser un proxy, un serveur local ou le stand-in de test (/aitest standin).")
+            .define("openAiBaseUrl", "https://api.openai.com/v1");
+
     public static final ForgeConfigSpec.IntValue OPENAI_SESSION_TTL_SECONDS = BUILDER
             .comment("Durée de vie (TTL) des conversations IA en secondes",
                     "(clé par joueur/villageois). Par défaut 900s (15 min)")
             .defineInRange("openAiSessionTtlSeconds", 900, 60, 86400);
 
+    public static final ForgeConfigSpec.IntValue OPENAI_MAX_SESSIONS = BUILDER
+            .comment("Nombre maximum de conversations IA gardées en mémoire sur le serveur.",
+                    "Au-delà, la conversation utilisée le moins récemment est oubliée. Par défaut 500")
+            .defineInRange("openAiMaxSessions", 500, 1, 100000);
+
+    public static final ForgeConfigSpec.IntValue OPENAI_MAX_SESSIONS_PER_PLAYER = BUILDER
+            .comment("Nombre maximum de conversations IA gardées par joueur (une par villageois).",
+                    "Au-delà, la plus ancienne est oubliée. Par défaut 8")
+            .defineInRange("openAiMaxSessionsPerPlayer", 8, 1, 1000);
+
+    public static final ForgeConfigSpec.IntValue OPENAI_PRECOMPUTE_WINDOW_SECONDS = BUILDER
+            .comment("Préparation anticipée du contexte IA à l'ouverture du dialogue (émotions, souvenirs, relation).",
+                    "Réutilisée pour le premier message si elle a moins de N secondes. 0 = désactivé. Par défaut 30")
+            .defineInRange("openAiPrecomputeWindowSeconds", 30, 0, 600);
+
+    public static final ForgeConfigSpec.IntValue OPENAI_HISTORY_TOKEN_BUDGET = BUILDER
+            .comment("Budget (tokens estimés) de l'historique envoyé à l'IA par conversation.",
+                    "Les échanges plus anciens sont résumés en arrière-plan. Par défaut 2000")
+            .defineInRange("openAiHistoryTokenBudget", 2000, 200, 32000);
+
+    public static final ForgeConfigSpec.BooleanValue OPENAI_SINGLE_CALL_ANALYSIS = BUILDER
+            .comment("Mode appel unique: la réponse du villageois contient aussi l'analyse émotionnelle",
+                    "du message (bloc caché en fin de réponse) au lieu d'un second appel IA séparé.",
+                    "Divise environ par deux la latence et le coût par message. Par défaut false")
+            .define("openAiSingleCallAnalysis", false);
+
+    public static final ForgeConfigSpec.BooleanValue ANALYSIS_LOCAL_TIER = BUILDER
+            .comment("Analyse émotionnelle locale (lexique FR/EN, sans réseau) avant l'IA.",
+                    "Les messages évidents (bonjour, merci, insultes) ne coûtent aucun appel. Par défaut true")
+            .define("analysisLocalTier", true);
+
+    public static final ForgeConfigSpec.DoubleValue ANALYSIS_LOCAL_CONFIDENCE = BUILDER
+            .comment("Confiance minimale (0-1) de l'analyse locale pour se passer de l'IA.",
+                    "Plus haut = plus d'appels IA mais moins d'erreurs. Voir l'accord local/IA dans /aitest llm. Par défaut 0.75")
+            .defineInRange("analysisLocalConfidence", 0.75, 0.0, 1.0);
+
+    public static final ForgeConfigSpec.IntValue ROUTING_LONG_INPUT_TOKENS = BUILDER
+            .comment("Au-delà de ce nombre de tokens (estimés), un message part directement au 2e modèle de la cascade.",
+                    "Les petits modèles perdent le fil sur les longs messages. Par défaut 150")
+            .defineInRange("routingLongInputTokens", 150, 10, 100000);
+
+    public static final ForgeConfigSpec.DoubleValue ROUTING_MIN_CONFIDENCE = BUILDER
+            .comment("Confiance minimale (0-1) annoncée par un modèle d'analyse; en dessous, le modèle suivant de la cascade est essayé.",
+                    "Voir les routes et leur coût dans /aitest llm. Par défaut 0.5")
+            .defineInRange("routingMinConfidence", 0.5, 0.0, 1.0);
+
+    public static final ForgeConfigSpec.IntValue REFLECTION_DEBOUNCE_SECONDS = BUILDER
+            .comment("Délai (secondes) sans nouvel événement important avant qu'un villageois fasse sa réflexion IA.",
+                    "Une rafale d'événements ne donne qu'une seule réflexion. Par défaut 10")
+            .defineInRange("reflectionDebounceSeconds", 10, 0, 600);
+
+    public static final ForgeConfigSpec.IntValue REFLECTION_MAX_CONCURRENT = BUILDER
+            .comment("Nombre maximum de réflexions IA en cours en même temps (arrière-plan). Par défaut 2")
+            .defineInRange("reflectionMaxConcurrent", 2, 1, 16);
+
+    public static final ForgeConfigSpec.BooleanValue DREAM_PASS_ENABLED = BUILDER
+            .comment("Passe de \"rêve\" nocturne: la nuit (ou sans joueur connecté), les villageois chargés consolident",
+                    "leurs souvenirs importants en réflexions, par lots. Reprend après un redémarrage. Par défaut true")
+            .define("dreamPassEnabled", true);
+
+    public static final ForgeConfigSpec.IntValue DREAM_BATCH_SIZE = BUILDER
+            .comment("Nombre de villageois regroupés dans une même requête de rêve. Par défaut 4")
+            .defineInRange("dreamBatchSize", 4, 1, 10);
+
+    public static final ForgeConfigSpec.IntValue DREAM_MAX_CONCURRENT = BUILDER
+            .comment("Nombre maximum de requêtes de rêve en cours en même temps. Par défaut 2")
+            .defineInRange("dreamMaxConcurrent", 2, 1, 8);
+
+    public static final ForgeConfigSpec.IntValue DREAM_TOKEN_BUDGET = BUILDER
+            .comment("Budget de tokens par nuit pour la passe de rêve (estimé avant envoi, corrigé avec l'usage réel).",
+                    "0 = aucune requête. Par défaut 20000")
+            .defineInRange("dreamTokenBudget", 20000, 0, 1000000);
+
+    public static final ForgeConfigSpec.IntValue ANALYSIS_CACHE_SIZE = BUILDER
+            .comment("Nombre maximum d'analyses émotionnelles gardées en cache",
+                    "(messages courts répétés: salutations, remerciements...). Par défaut 2048")
+            .defineInRange("analysisCacheSize", 2048, 1, 100000);
+
+    public static final ForgeConfigSpec.IntValue ANALYSIS_CACHE_TTL_SECONDS = BUILDER
+            .comment("Durée de validité d'une analyse en cache, en secondes. Par défaut 86400 (24h)")
+            .defineInRange("analysisCacheTtlSeconds", 86400, 60, 2592000);
+
+    public static final ForgeConfigSpec.BooleanValue ANALYSIS_CACHE_PERSIST = BUILDER
+            .comment("Sauvegarder le cache d'analyses dans le dossier du monde entre deux démarrages")
+            .define("analysisCachePersist", true);
+
+    public static final ForgeConfigSpec.IntValue ANALYSIS_BATCH_WINDOW_MS = BUILDER
+            .comment("Fenêtre (ms) pendant laquelle les analyses émotionnelles sont regroupées",
+                    "en une seule requête IA. 0 = désactivé. Par défaut 100")
+            .defineInRange("analysisBatchWindowMs", 100, 0, 2000);
+
+    public static final ForgeConfigSpec.IntValue LLM_GLOBAL_REQUESTS_PER_MINUTE = BUILDER
+            .comment("Nombre maximum de requêtes IA par minute, tous joueurs confondus",
+                    "(chat, analyse, réflexions, enrichissement). Par défaut 120")
+            .defineInRange("llmGlobalRequestsPerMinute", 120, 1, 10000);
+
+    public static final ForgeConfigSpec.IntValue LLM_PLAYER_REQUESTS_PER_MINUTE = BUILDER
+            .comment("Nombre maximum de requêtes IA par minute pour un même joueur. Par défaut 20")
+            .defineInRange("llmPlayerRequestsPerMinute", 20, 1, 1000);
+
+    public static final ForgeConfigSpec.IntValue LLM_QUEUE_CAPACITY = BUILDER
+            .comment("Taille maximale de la file d'attente des requêtes IA.",
+                    "Au-delà, les tâches de fond sont refusées. Par défaut 64")
+            .defineInRange("llmQueueCapacity", 64, 1, 4096);
+
+    public static final ForgeConfigSpec.IntValue LLM_FIRST_TOKEN_TIMEOUT_MS = BUILDER
+            .comment("Délai maximum (ms) avant le premier mot d'une réponse en streaming.",
+                    "Le délai réel s'adapte à la latence observée (p95) sans dépasser cette valeur. Par défaut 15000")
+            .defineInRange("llmFirstTokenTimeoutMs", 15000, 1000, 120000);
+
+    public static final ForgeConfigSpec.DoubleValue LLM_TIMEOUT_P95_FACTOR = BUILDER
+            .comment("Timeout adaptatif = latence p95 observée x ce facteur (borné par les maximums). Par défaut 3.0")
+            .defineInRange("llmTimeoutP95Factor", 3.0, 1.0, 20.0);
+
+    public static final ForgeConfigSpec.BooleanValue LLM_HEDGE_INTERACTIVE = BUILDER
+            .comment("Requêtes doublées (hedging) pour le chat: si le premier mot tarde au-delà du p95,",
+                    "une requête identique est lancée et la plus rapide gagne. Coûte des tokens. Par défaut false")
+            .define("llmHedgeInteractive", false);
+
+    public static final ForgeConfigSpec.IntValue LLM_STREAM_FLUSH_MS = BUILDER
+            .comment("Fenêtre (ms) de regroupement des morceaux de réponse envoyés au joueur pendant le streaming.",
+                    "Moins de paquets et de tâches serveur; 0 = envoi sans attente. Par défaut 50")
+            .defineInRange("llmStreamFlushMs", 50, 0, 1000);
+
+    public static final ForgeConfigSpec.IntValue LLM_STREAM_FLUSH_CHARS = BUILDER
+            .comment("Nombre de caractères en attente qui déclenche un envoi immédiat, sans attendre la fenêtre.",
+                    "Par défaut 96")
+            .defineInRange("llmStreamFlushChars", 96, 1, 4096);
+
+    public static final ForgeConfigSpec.DoubleValue LLM_BREAKER_FAILURE_RATE = BUILDER
+            .comment("Taux d'erreurs récent (0-1) au-delà duquel le disjoncteur coupe les appels IA",
+                    "et les villageois répondent localement. Par défaut 0.5")
+            .defineInRange("llmBreakerFailureRate", 0.5, 0.05, 1.0);
+
+    public static final ForgeConfigSpec.IntValue LLM_BREAKER_COOLDOWN_SECONDS = BUILDER
+            .comment("Durée (s) pendant laquelle le disjoncteur reste ouvert avant de retenter. Par défaut 30")
+            .defineInRange("llmBreakerCooldownSeconds", 30, 1, 3600);
+
     // ====== Exemples existants ======
     private static final ForgeConfigSpec.BooleanValue LOG_DIRT_BLOCK = BUILDER
             .comment("Whether to log the dirt block on common setup")
@@ -61,7 +204,37 @@ public class Config
     public static Set<Item> items;
     public static String openAiApiKey;
     public static String openAiModel;
+    public static String openAiBaseUrl;
     public static int openAiSessionTtlSeconds;
+    public static int openAiMaxSessions;
+    public static int openAiMaxSessionsPerPlayer;
+    public static int openAiHistoryTokenBudget;
+    public static int openAiPrecomputeWindowSeconds;
+    public static boolean openAiSingleCallAnalysis;
+    public static boolean analysisLocalTier;
+    public static double analysisLocalConfidence;
+    public static int routingLongInputTokens;
+    public static double routingMinConfidence;
+    public static int reflectionDebounceSeconds;
+    public static int reflectionMaxConcurrent;
+    public static boolean dreamPassEnabled;
+    public static int dreamBatchSize;
+    public static int dreamMaxConcurrent;
+    public static int dreamTokenBudget;
+    public static int analysisCacheSize;
+    public static int analysisCacheTtlSeconds;
+    public static boolean analysisCachePersist;
+    public static int analysisBatchWindowMs;
+    public static int llmGlobalRequestsPerMinute;
+    public static int llmPlayerRequestsPerMinute;
+    public static int llmQueueCapacity;
+    public static int llmFirstTokenTimeoutMs;
+    public static double llmTimeoutP95Factor;
+    public static boolean llmHedgeInteractive;
+    public static int llmStreamFlushMs;
+    public static int llmStreamFlushChars;
+    public static double llmBreakerFailureRate;
+    public static int llmBreakerCooldownSeconds;
 
     private static boolean validateItemName(final Object obj)
     {
@@ -82,6 +255,36 @@ public class Config
 
         openAiApiKey = OPENAI_API_KEY.get();
         openAiModel = OPENAI_MODEL.get();
+        openAiBaseUrl = OPENAI_BASE_URL.get();
         openAiSessionTtlSeconds = OPENAI_SESSION_TTL_SECONDS.get();
+        openAiMaxSessions = OPENAI_MAX_SESSIONS.get();
+        openAiMaxSessionsPerPlayer = OPENAI_MAX_SESSIONS_PER_PLAYER.get();
+        openAiHistoryTokenBudget = OPENAI_HISTORY_TOKEN_BUDGET.get();
+        openAiPrecomputeWindowSeconds = OPENAI_PRECOMPUTE_WINDOW_SECONDS.get();
+        openAiSingleCallAnalysis = OPENAI_SINGLE_CALL_ANALYSIS.get();
+        analysisLocalTier = ANALYSIS_LOCAL_TIER.get();
+        analysisLocalConfidence = ANALYSIS_LOCAL_CONFIDENCE.get();
+        routingLongInputTokens = ROUTING_LONG_INPUT_TOKENS.get();
+        routingMinConfidence = ROUTING_MIN_CONFIDENCE.get();
+        reflectionDebounceSeconds = REFLECTION_DEBOUNCE_SECONDS.get();
+        reflectionMaxConcurrent = REFLECTION_MAX_CONCURRENT.get();
+        dreamPassEnabled = DREAM_PASS_ENABLED.get();
+        dreamBatchSize = DREAM_BATCH_SIZE.get();
+        dreamMaxConcurrent = DREAM_MAX_CONCURRENT.get();
+        dreamTokenBudget = DREAM_TOKEN_BUDGET.get();
+        analysisCacheSize = ANALYSIS_CACHE_SIZE.get();
+        analysisCacheTtlSeconds = ANALYSIS_CACHE_TTL_SECONDS.get();
+        analysisCachePersist = ANALYSIS_CACHE_PERSIST.get();
+        analysisBatchWindowMs = ANALYSIS_BATCH_WINDOW_MS.get();
+        llmGlobalRequestsPerMinute = LLM_GLOBAL_REQUESTS_PER_MINUTE.get();
+        llmPlayerRequestsPerMinute = LLM_PLAYER_REQUESTS_PER_MINUTE.get();
+        llmQueueCapacity = LLM_QUEUE_CAPACITY.get();
+        llmFirstTokenTimeoutMs = LLM_FIRST_TOKEN_TIMEOUT_MS.get();
+        llmTimeoutP95Factor = LLM_TIMEOUT_P95_FACTOR.get();
+        llmHedgeInteractive = LLM_HEDGE_INTERACTIVE.get();
+        llmStreamFlushMs = LLM_STREAM_FLUSH_MS.get();
+        llmStreamFlushChars = LLM_STREAM_FLUSH_CHARS.get();
+        llmBreakerFailureRate = LLM_BREAKER_FAILURE_RATE.get();
+        llmBreakerCooldownSeconds = LLM_BREAKER_COOLDOWN_SECONDS.get();
     }
 }
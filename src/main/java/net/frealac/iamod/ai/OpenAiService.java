@@ -7,32 +7,60 @@ import com.google.gson.JsonParser;
 import net.frealac.iamod.Config;
 import net.frealac.iamod.common.story.VillagerStory;
 
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.ChatRequestWriter;
+import net.frealac.iamod.ai.openai.CircuitBreaker;
+import net.frealac.iamod.ai.openai.LatencyTracker;
+import net.frealac.iamod.ai.openai.LlmScheduler;
+import net.frealac.iamod.ai.openai.OpenAiClient;
+import net.frealac.iamod.ai.openai.OpenAiTransport;
+import net.frealac.iamod.ai.openai.SseStreamEngine;
+
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.InputStreamReader;
-import java.io.BufferedReader;
-import java.net.URI;
-import java.net.HttpURLConnection;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 public class OpenAiService {
 
     private static final String DEFAULT_MODEL = "gpt-4.1-nano"; // favor small fast model by default
-    private static final URI CHAT_URI = URI.create("https://api.openai.com/v1/chat/completions");
 
-    private final HttpClient httpClient;
+    // In-character replies used while the OpenAI circuit is open
+    private static final List<String> FALLBACK_REPLIES = List.of(
+            "*se gratte la tête* Pardon, j'ai l'esprit ailleurs... Tu peux répéter plus tard ?",
+            "Hmm ? Excuse-moi, je suis un peu perdu dans mes pensées aujourd'hui.",
+            "*bâille* Je suis épuisé... Reviens me voir dans un moment, d'accord ?",
+            "Désolé, je n'ai pas la tête à discuter pour l'instant."
+    );
 
-    public OpenAiService() {
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+    /**
+     * Shared transport, resolved on first use so nothing network-related starts on the client side.
+     */
+    private static OpenAiTransport transport() {
+        return OpenAiTransport.get();
+    }
+
+    /**
+     * Send a non-streamed request through the LLM scheduler and wait for the response body.
+     * The body's pooled buffer is released once the exchange is over.
+     */
+    private static String sendScheduled(LlmScheduler.Lane lane, String apiKey, Duration timeout, ChatRequestWriter.Body body)
+            throws IOException, InterruptedException {
+        try {
+            HttpRequest request = transport().newChatRequest(apiKey, timeout)
+                    .POST(body.publisher())
+                    .build();
+            return LlmScheduler.get().submitAndWait(lane, null, () -> OpenAiClient.sendTimed(lane, request, CancellationToken.NONE));
+        } finally {
+            body.release();
+        }
+    }
+
+    private static Duration interactiveTimeout() {
+        return LatencyTracker.completion(LlmScheduler.Lane.INTERACTIVE).timeout(Duration.ofSeconds(45));
     }
 
     public String ask(String userMessage, String who) throws IOException, InterruptedException {
@@ -43,39 +71,13 @@ public class OpenAiService {
 
         final String model = (Config.openAiModel == null || Config.openAiModel.isBlank()) ? DEFAULT_MODEL : Config.openAiModel;
 
-        JsonObject root = new JsonObject();
-        root.addProperty("model", model);
-
-        JsonArray messages = new JsonArray();
-
-        JsonObject system = new JsonObject();
-        system.addProperty("role", "system");
-        system.addProperty("content", "Tu es un assistant Minecraft amical et concis. Réponds en français si possible.");
-        messages.add(system);
-
-        JsonObject user = new JsonObject();
-        user.addProperty("role", "user");
-        user.addProperty("content", prefixWho(who) + userMessage);
-        messages.add(user);
-
-        root.add("messages", messages);
-        root.addProperty("temperature", 1.0);  // Increased for more emotional variety
-        root.addProperty("max_tokens", 3000);
-
-        HttpRequest request = HttpRequest.newBuilder(CHAT_URI)
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(45))
-                .POST(HttpRequest.BodyPublishers.ofString(root.toString(), StandardCharsets.UTF_8))
-                .build();
-
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-
-        if (response.statusCode() / 100 != 2) {
-            throw new IOException("OpenAI HTTP " + response.statusCode() + ": " + trim(response.body(), 300));
-        }
+        List<ChatMessage> messages = List.of(
+                ChatMessage.system("Tu es un assistant Minecraft amical et concis. Réponds en français si possible."),
+                ChatMessage.user(prefixWho(who) + userMessage));
+        // Increased temperature for more emotional variety
+        ChatRequestWriter.Body body = ChatRequestWriter.chat(model, messages, 1.0, 3000, false, false);
 
-        return extractContent(response.body());
+        return extractContent(sendScheduled(LlmScheduler.Lane.INTERACTIVE, apiKey, interactiveTimeout(), body));
     }
 
     public String chat(List<ChatMessage> history) throws IOException, InterruptedException {
@@ -85,32 +87,10 @@ public class OpenAiService {
         }
         final String model = (Config.openAiModel == null || Config.openAiModel.isBlank()) ? DEFAULT_MODEL : Config.openAiModel;
 
-        JsonObject root = new JsonObject();
-        root.addProperty("model", model);
-
-        JsonArray messages = new JsonArray();
-        for (ChatMessage m : history) {
-            JsonObject j = new JsonObject();
-            j.addProperty("role", m.role);
-            j.addProperty("content", m.content);
-            messages.add(j);
-        }
-        root.add("messages", messages);
-        root.addProperty("temperature", 1.0);  // Increased for more emotional variety
-        root.addProperty("max_tokens", 3000);
-
-        HttpRequest request = HttpRequest.newBuilder(CHAT_URI)
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(45))
-                .POST(HttpRequest.BodyPublishers.ofString(root.toString(), StandardCharsets.UTF_8))
-                .build();
+        // Increased temperature for more emotional variety
+        ChatRequestWriter.Body body = ChatRequestWriter.chat(model, history, 1.0, 3000, false, false);
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-        if (response.statusCode() / 100 != 2) {
-            throw new IOException("OpenAI HTTP " + response.statusCode() + ": " + trim(response.body(), 300));
-        }
-        return extractContent(response.body());
+        return extractContent(sendScheduled(LlmScheduler.Lane.INTERACTIVE, apiKey, interactiveTimeout(), body));
     }
 
     /**
@@ -118,77 +98,50 @@ public class OpenAiService {
      * Returns a future completed with the full aggregated reply.
      */
     public CompletableFuture<String> chatStreamSSE(List<ChatMessage> history, Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
-        CompletableFuture<String> result = new CompletableFuture<>();
-        new Thread(() -> {
-            StringBuilder full = new StringBuilder();
-            try {
-                final String apiKey = getApiKey();
-                if (apiKey == null || apiKey.isBlank()) throw new IllegalStateException("OPENAI_API_KEY manquant");
-                final String model = (Config.openAiModel == null || Config.openAiModel.isBlank()) ? DEFAULT_MODEL : Config.openAiModel;
-
-                JsonObject root = new JsonObject();
-                root.addProperty("model", model);
-                JsonArray messages = new JsonArray();
-                for (ChatMessage m : history) {
-                    JsonObject j = new JsonObject();
-                    j.addProperty("role", m.role);
-                    j.addProperty("content", m.content);
-                    messages.add(j);
-                }
-                root.add("messages", messages);
-                root.addProperty("temperature", 1.0);  // Increased for more emotional variety
-                root.addProperty("max_tokens", 3000);
-                root.addProperty("stream", true);
-
-                HttpURLConnection conn = (HttpURLConnection) CHAT_URI.toURL().openConnection();
-                conn.setRequestMethod("POST");
-                conn.setDoOutput(true);
-                conn.setConnectTimeout(10000);
-                conn.setReadTimeout(60000);
-                conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-                conn.setRequestProperty("Content-Type", "application/json");
-                byte[] payload = root.toString().getBytes(StandardCharsets.UTF_8);
-                try (OutputStream os = conn.getOutputStream()) {
-                    os.write(payload);
-                }
-                int code = conn.getResponseCode();
-                if (code / 100 != 2) {
-                    InputStreamReader er = new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8);
-                    String err = new BufferedReader(er).lines().reduce((a,b)->a+b).orElse("");
-                    throw new IOException("OpenAI HTTP " + code + ": " + trim(err, 200));
-                }
-                if (onStart != null) onStart.run();
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        line = line.trim();
-                        if (line.isEmpty() || line.equals(":")) continue; // comment/keepalive
-                        if (!line.startsWith("data:")) continue;
-                        String data = line.substring(5).trim();
-                        if ("[DONE]".equals(data)) break;
-                        try {
-                            JsonObject obj = JsonParser.parseString(data).getAsJsonObject();
-                            JsonArray choices = obj.getAsJsonArray("choices");
-                            if (choices != null && !choices.isEmpty()) {
-                                JsonObject delta = choices.get(0).getAsJsonObject().getAsJsonObject("delta");
-                                if (delta != null) {
-                                    String content = delta.has("content") && !delta.get("content").isJsonNull() ? delta.get("content").getAsString() : null;
-                                    if (content != null && !content.isEmpty()) {
-                                        full.append(content);
-                                        if (onDelta != null) onDelta.accept(content);
-                                    }
-                                }
-                            }
-                        } catch (Exception ignore) {}
-                    }
-                }
-                if (onDone != null) onDone.run();
-                result.complete(full.toString());
-            } catch (Exception ex) {
-                result.completeExceptionally(ex);
-            }
-        }, "iamod-openai-sse").start();
-        return result;
+        return chatStreamSSE(history, CancellationToken.NONE, onStart, onDelta, onDone);
+    }
+
+    /**
+     * Same as above, aborted as soon as the conversation token is cancelled.
+     */
+    public CompletableFuture<String> chatStreamSSE(List<ChatMessage> history, CancellationToken token,
+                                                   Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
+        final String apiKey = getApiKey();
+        if (apiKey == null || apiKey.isBlank()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("OPENAI_API_KEY manquant"));
+        }
+        final String model = (Config.openAiModel == null || Config.openAiModel.isBlank()) ? DEFAULT_MODEL : Config.openAiModel;
+
+        // Increased temperature for more emotional variety
+        ChatRequestWriter.Body body = ChatRequestWriter.chat(model, history, 1.0, 3000, true, false);
+
+        HttpRequest request = transport().newChatRequest(apiKey, Duration.ofSeconds(60))
+                .POST(body.publisher())
+                .build();
+        return SseStreamEngine.get().streamHedged(request, token, onStart, onDelta, onDone)
+                .whenComplete((reply, ex) -> body.release())
+                .exceptionallyCompose(ex -> isCircuitOpen(ex)
+                        ? CompletableFuture.completedFuture(localFallbackReply(onStart, onDelta, onDone))
+                        : CompletableFuture.failedFuture(ex));
+    }
+
+    /**
+     * Circuit open: answer locally and instantly instead of leaving the villager "thinking".
+     */
+    private static String localFallbackReply(Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
+        String reply = FALLBACK_REPLIES.get(ThreadLocalRandom.current().nextInt(FALLBACK_REPLIES.size()));
+        if (onStart != null) onStart.run();
+        if (onDelta != null) onDelta.accept(reply);
+        if (onDone != null) onDone.run();
+        return reply;
+    }
+
+    private static boolean isCircuitOpen(Throwable ex) {
+        while (ex != null) {
+            if (ex instanceof CircuitBreaker.OpenException) return true;
+            ex = ex.getCause();
+        }
+        return false;
     }
 
     /**
@@ -244,18 +197,9 @@ public class OpenAiService {
         root.addProperty("temperature", 0.6);
         root.addProperty("max_tokens", 5000);
 
-        HttpRequest request = HttpRequest.newBuilder(CHAT_URI)
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(20))
-                .POST(HttpRequest.BodyPublishers.ofString(root.toString(), StandardCharsets.UTF_8))
-                .build();
-
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-        if (response.statusCode() / 100 != 2) {
-            throw new IOException("OpenAI HTTP " + response.statusCode() + ": " + trim(response.body(), 300));
-        }
-        String content = extractContent(response.body());
+        String content = extractContent(sendScheduled(LlmScheduler.Lane.ENRICHMENT, apiKey,
+                LatencyTracker.completion(LlmScheduler.Lane.ENRICHMENT).timeout(Duration.ofSeconds(20)),
+                ChatRequestWriter.write(root)));
         return content;
     }
 
@@ -365,10 +309,7 @@ public class OpenAiService {
 
     private static String getApiKey() {
         // Priorité au fichier de config Forge (run/config/iamod-common.toml), sinon variable d'environnement
-        String fromConfig = Config.openAiApiKey;
-        if (fromConfig != null && !fromConfig.isBlank()) return fromConfig.trim();
-        String fromEnv = System.getenv("OPENAI_API_KEY");
-        return fromEnv != null ? fromEnv.trim() : null;
+        return OpenAiClient.getApiKey();
     }
 
     private static String extractContent(String json) throws IOException {
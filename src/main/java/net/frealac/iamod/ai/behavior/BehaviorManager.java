@@ -393,7 +393,8 @@ public class BehaviorManager {
             activity.isAiProcessing,
             activity.lastAiActivity,
             activity.conversationMessageCount,
-            activity.lastMemoryAction
+            activity.lastMemoryAction,
+            activity.lastModelRoute
         );
     }
 }
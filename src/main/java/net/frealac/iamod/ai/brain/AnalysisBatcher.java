@@ -0,0 +1,171 @@
+package net.frealac.iamod.ai.brain;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.CircuitBreaker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro-batching for MessageAnalyzer.
+ *
+ * Analyses requested within the same window (raid, village event, several players talking)
+ * are packed into ONE prompt answered with a per-item JSON array.
+ *
+ * - A batch leaves when the window elapses or MAX_BATCH_SIZE is reached
+ * - A batch of one is sent as a normal single analysis
+ * - Items missing from the batched answer fall back to a single analysis
+ * - When the batch failed because the pipeline is overloaded (queue full, circuit open, HTTP 429),
+ *   every item gets the local score instead: N single requests would only add to the overload
+ * - Cancelling an item's token only drops that item
+ */
+public final class AnalysisBatcher {
+
+    private static final int MAX_BATCH_SIZE = 8;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "iamod-analysis-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Object LOCK = new Object();
+    private static List<Item> pending = new ArrayList<>();
+    private static ScheduledFuture<?> flushTask;
+
+    private static final AtomicLong batchesSent = new AtomicLong();
+    private static final AtomicLong itemsBatched = new AtomicLong();
+    private static final AtomicLong fallbacks = new AtomicLong();
+    private static final AtomicLong localFallbacks = new AtomicLong();
+
+    private AnalysisBatcher() {
+    }
+
+    /**
+     * One message waiting for its analysis.
+     */
+    record Item(String message, double currentMood, double currentStress, CancellationToken token,
+                CompletableFuture<MessageAnalyzer.MessageImpact> result) {}
+
+    /**
+     * Queue an analysis for the current batching window.
+     */
+    static CompletableFuture<MessageAnalyzer.MessageImpact> submit(String message, double currentMood, double currentStress,
+                                                                   CancellationToken token) {
+        Item item = new Item(message, currentMood, currentStress, token, new CompletableFuture<>());
+        Runnable unregister = token.onCancel(() -> item.result.completeExceptionally(CancellationToken.cancelledException()));
+        item.result.whenComplete((impact, ex) -> unregister.run());
+
+        List<Item> full = null;
+        synchronized (LOCK) {
+            pending.add(item);
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                full = drain();
+            } else if (flushTask == null) {
+                flushTask = TIMER.schedule(AnalysisBatcher::flush, Math.max(1, Config.analysisBatchWindowMs), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) dispatch(full);
+        return item.result;
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        long batches = batchesSent.get();
+        double avg = batches == 0 ? 0 : (double) itemsBatched.get() / batches;
+        return String.format("Analysis batches: sent=%d avgSize=%.1f fallbacks=%d local=%d",
+                batches, avg, fallbacks.get(), localFallbacks.get());
+    }
+
+    private static void flush() {
+        List<Item> batch;
+        synchronized (LOCK) {
+            batch = drain();
+        }
+        dispatch(batch);
+    }
+
+    // Caller holds LOCK
+    private static List<Item> drain() {
+        List<Item> batch = pending;
+        pending = new ArrayList<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return batch;
+    }
+
+    private static void dispatch(List<Item> batch) {
+        batch.removeIf(item -> item.result.isDone()); // Cancelled while waiting
+        if (batch.isEmpty()) return;
+        if (batch.size() == 1) {
+            single(batch.get(0));
+            return;
+        }
+
+        batchesSent.incrementAndGet();
+        itemsBatched.addAndGet(batch.size());
+        IAMOD.LOGGER.debug("🧠 MessageAnalyzer: batching {} analyses in one request", batch.size());
+
+        MessageAnalyzer.analyzeBatchAsync(batch).whenComplete((impacts, ex) -> {
+            if (ex != null && isOverload(ex)) {
+                IAMOD.LOGGER.warn("⏳ Batched analysis refused ({}), scoring {} messages locally", ex.getMessage(), batch.size());
+                batch.forEach(AnalysisBatcher::local);
+                return;
+            }
+            if (ex != null) {
+                IAMOD.LOGGER.warn("Batched analysis failed, falling back to single analyses", ex);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Item item = batch.get(i);
+                MessageAnalyzer.MessageImpact impact = (ex == null && i < impacts.size()) ? impacts.get(i) : null;
+                if (impact != null) {
+                    MessageAnalyzer.recordLlmImpact(item.message, item.currentMood, item.currentStress, impact);
+                    item.result.complete(impact);
+                } else {
+                    fallbacks.incrementAndGet();
+                    single(item);
+                }
+            }
+        });
+    }
+
+    private static void local(Item item) {
+        if (item.result.isDone()) return;
+        localFallbacks.incrementAndGet();
+        MessageAnalyzer.MessageImpact impact = LocalSentimentAnalyzer.analyze(item.message).impact();
+        impact.route = "local (surcharge)";
+        item.result.complete(impact);
+    }
+
+    // Scheduler queue full, circuit open or rate limited upstream
+    private static boolean isOverload(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof RejectedExecutionException || t instanceof CircuitBreaker.OpenException) return true;
+            if (t instanceof IOException && String.valueOf(t.getMessage()).startsWith("OpenAI HTTP 429")) return true;
+        }
+        return false;
+    }
+
+    private static void single(Item item) {
+        if (item.result.isDone()) return;
+        MessageAnalyzer.analyzeSingleAsync(item.message, item.currentMood, item.currentStress, item.token)
+                .whenComplete((impact, ex) -> {
+                    if (ex != null) item.result.completeExceptionally(ex);
+                    else item.result.complete(impact);
+                });
+    }
+}
@@ -0,0 +1,258 @@
+package net.frealac.iamod.ai.brain;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed cache of MessageAnalyzer impacts.
+ *
+ * KEY: normalized message + mood bucket + stress bucket.
+ * The buckets are the bands the analysis prompt reacts to (see MessageAnalyzer). The prompt also
+ * quotes the exact mood and stress (%.2f), so a hit replays an answer given in a close state,
+ * not to the identical prompt: the instructions that change the analysis are the same.
+ *
+ * - LRU eviction (access-ordered LinkedHashMap), bounded size
+ * - TTL per entry
+ * - Hit / miss / eviction counters
+ * - Optional persistence to the world folder (loaded on server start, saved on stop)
+ *
+ * Only successful AI analyses are stored: neutral fallbacks after an error never enter the cache.
+ */
+public final class AnalysisCache {
+
+    private static final int MAX_MESSAGE_LENGTH = 160;  // Longer messages practically never repeat
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern REPEATED_CHARS = Pattern.compile("(.)\\1{2,}");
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private static final LinkedHashMap<String, Entry> ENTRIES = new LinkedHashMap<>(256, 0.75f, true);
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicLong expirations = new AtomicLong();
+
+    private AnalysisCache() {
+    }
+
+    /**
+     * Cached impact for this message in this emotional state, or null on miss.
+     */
+    public static MessageAnalyzer.MessageImpact get(String message, double currentMood, double currentStress) {
+        String key = key(message, currentMood, currentStress);
+        if (key == null) return null;
+
+        long now = System.currentTimeMillis();
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && isExpired(entry, now)) {
+                ENTRIES.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return copy(entry.impact);
+        }
+    }
+
+    /**
+     * Store a successful analysis.
+     */
+    public static void put(String message, double currentMood, double currentStress, MessageAnalyzer.MessageImpact impact) {
+        String key = key(message, currentMood, currentStress);
+        if (key == null || impact == null) return;
+
+        synchronized (ENTRIES) {
+            ENTRIES.put(key, new Entry(copy(impact), System.currentTimeMillis()));
+            trimToSize();
+        }
+    }
+
+    /**
+     * Cache key, or null if the message is not worth caching.
+     */
+    static String key(String message, double currentMood, double currentStress) {
+        String normalized = normalize(message);
+        if (normalized == null) return null;
+        return normalized + '|' + moodBucket(currentMood) + '|' + stressBucket(currentStress);
+    }
+
+    /**
+     * Lowercase, strip accents, collapse whitespace and runs of 3+ identical chars ("merciiiii" -> "mercii").
+     * Emoji and punctuation are kept: they change the meaning.
+     */
+    static String normalize(String message) {
+        if (message == null) return null;
+        String s = message.strip();
+        if (s.isEmpty() || s.length() > MAX_MESSAGE_LENGTH) return null;
+        s = Normalizer.normalize(s.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        s = DIACRITICS.matcher(s).replaceAll("");
+        s = WHITESPACE.matcher(s).replaceAll(" ");
+        s = REPEATED_CHARS.matcher(s).replaceAll("$1$1");
+        return s;
+    }
+
+    // Same bands as MessageAnalyzer mood-congruent prompt
+    private static int moodBucket(double mood) {
+        if (mood < -0.5) return 0;
+        if (mood < -0.2) return 1;
+        if (mood > 0.5) return 3;
+        return 2;
+    }
+
+    private static int stressBucket(double stress) {
+        return stress > 0.7 ? 1 : 0;
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        long h = hits.get();
+        long m = misses.get();
+        double ratio = h + m == 0 ? 0 : 100.0 * h / (h + m);
+        int size;
+        synchronized (ENTRIES) {
+            size = ENTRIES.size();
+        }
+        return String.format("Analysis cache: %d/%d entries, hits=%d misses=%d (%.1f%%), evicted=%d expired=%d",
+                size, maxSize(), h, m, ratio, evictions.get(), expirations.get());
+    }
+
+    // ==================== PERSISTENCE ====================
+
+    /**
+     * Load persisted entries (expired ones are skipped). Missing file is not an error.
+     */
+    public static void load(Path file) {
+        if (!Config.analysisCachePersist || !Files.exists(file)) return;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<StoredEntry> stored = GSON.fromJson(reader, new TypeToken<List<StoredEntry>>() {}.getType());
+            if (stored == null) return;
+            long now = System.currentTimeMillis();
+            int loaded = 0;
+            synchronized (ENTRIES) {
+                for (StoredEntry e : stored) {
+                    if (e == null || e.key == null || e.impact == null) continue;
+                    Entry entry = new Entry(e.impact, e.createdAt);
+                    if (isExpired(entry, now)) continue;
+                    ENTRIES.put(e.key, entry);
+                    loaded++;
+                }
+                trimToSize();
+            }
+            IAMOD.LOGGER.info("💾 Analysis cache loaded: {} entries", loaded);
+        } catch (Exception e) {
+            IAMOD.LOGGER.warn("Failed to load analysis cache from {}", file, e);
+        }
+    }
+
+    /**
+     * Save live entries, least recently used first (so reloading keeps the LRU order).
+     */
+    public static void save(Path file) {
+        if (!Config.analysisCachePersist) return;
+        List<StoredEntry> stored = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (ENTRIES) {
+            for (Map.Entry<String, Entry> e : ENTRIES.entrySet()) {
+                if (isExpired(e.getValue(), now)) continue;
+                stored.add(new StoredEntry(e.getKey(), e.getValue().impact, e.getValue().createdAt));
+            }
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(stored, writer);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            IAMOD.LOGGER.info("💾 Analysis cache saved: {} entries", stored.size());
+        } catch (IOException e) {
+            IAMOD.LOGGER.warn("Failed to save analysis cache to {}", file, e);
+        }
+    }
+
+    /**
+     * Drop everything (e.g. when switching worlds).
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    // ==================== INTERNALS ====================
+
+    private static void trimToSize() {
+        int max = maxSize();
+        var it = ENTRIES.entrySet().iterator();
+        while (ENTRIES.size() > max && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static boolean isExpired(Entry entry, long now) {
+        long ttlMs = TimeUnit.SECONDS.toMillis(Math.max(1, Config.analysisCacheTtlSeconds));
+        return now - entry.createdAt > ttlMs;
+    }
+
+    private static int maxSize() {
+        return Math.max(1, Config.analysisCacheSize);
+    }
+
+    // Callers may mutate the impact they get; never hand out the cached instance
+    private static MessageAnalyzer.MessageImpact copy(MessageAnalyzer.MessageImpact src) {
+        MessageAnalyzer.MessageImpact c = new MessageAnalyzer.MessageImpact();
+        c.positiveImpact = src.positiveImpact;
+        c.negativeImpact = src.negativeImpact;
+        c.affectionImpact = src.affectionImpact;
+        c.aggressionImpact = src.aggressionImpact;
+        c.overallSentiment = src.overallSentiment;
+        c.reasoning = src.reasoning;
+        c.confidence = src.confidence;
+        c.route = src.route;
+        return c;
+    }
+
+    private record Entry(MessageAnalyzer.MessageImpact impact, long createdAt) {}
+
+    private static final class StoredEntry {
+        String key;
+        MessageAnalyzer.MessageImpact impact;
+        long createdAt;
+
+        StoredEntry(String key, MessageAnalyzer.MessageImpact impact, long createdAt) {
+            this.key = key;
+            this.impact = impact;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -2,9 +2,13 @@ package net.frealac.iamod.ai.brain;
 
 import com.google.gson.*;
 import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.ChatMessage;
+import net.frealac.iamod.ai.openai.ChatRequestWriter;
+import net.frealac.iamod.ai.openai.LlmScheduler;
 import net.frealac.iamod.ai.openai.OpenAiClient;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * AI Service for individual brain modules.
@@ -24,7 +28,7 @@ public class BrainAIService {
     private final Gson gson;
 
     public BrainAIService() {
-        this.client = new OpenAiClient();
+        this.client = new OpenAiClient(LlmScheduler.Lane.REFLECTION);
         this.gson = new GsonBuilder().create();
     }
 
@@ -47,35 +51,19 @@ public class BrainAIService {
             return "AI processing disabled for " + brainModuleName;
         }
 
-        JsonObject payload = new JsonObject();
-
         // Use configured model for this brain (or override)
         String model = modelOverride != null ? modelOverride : BrainModelConfig.getModel(brainModuleName);
-        payload.addProperty("model", model);
-
-        JsonArray messages = new JsonArray();
-
-        // System prompt
-        JsonObject system = new JsonObject();
-        system.addProperty("role", "system");
-        system.addProperty("content", buildBrainSpecificPrompt(brainModuleName, context));
-        messages.add(system);
-
-        // User question
-        JsonObject user = new JsonObject();
-        user.addProperty("role", "user");
-        user.addProperty("content", question);
-        messages.add(user);
 
-        payload.add("messages", messages);
-        payload.addProperty("temperature", BrainModelConfig.getTemperature(brainModuleName));
-        payload.addProperty("max_tokens", BrainModelConfig.getMaxTokens(brainModuleName));
+        // System prompt, then the question; streamed straight into the request body
+        ChatRequestWriter.Body body = ChatRequestWriter.chat(model,
+            List.of(ChatMessage.system(buildBrainSpecificPrompt(brainModuleName, context)), ChatMessage.user(question)),
+            BrainModelConfig.getTemperature(brainModuleName), BrainModelConfig.getMaxTokens(brainModuleName), false, false);
 
         IAMOD.LOGGER.debug("🧠 {} calling AI with model {} (temp={}, tokens={})",
             brainModuleName, model, BrainModelConfig.getTemperature(brainModuleName),
             BrainModelConfig.getMaxTokens(brainModuleName));
 
-        String responseBody = client.sendChatRequest(payload);
+        String responseBody = client.sendChatRequest(body);
         return extractContent(responseBody);
     }
 
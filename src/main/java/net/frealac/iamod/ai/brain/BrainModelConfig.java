@@ -1,6 +1,7 @@
 package net.frealac.iamod.ai.brain;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -16,6 +17,10 @@ import java.util.Map;
  * - Speed: ~500ms response time
  * - Cost: $0.150 per 1M input tokens, $0.600 per 1M output tokens
  * - Perfect for real-time game interactions
+ *
+ * CASCADES: each brain has an ordered list of models, cheapest first. {@link ModelRouter} starts
+ * with the first one and escalates to the next on parse failure, low confidence or long input.
+ * A one-model cascade behaves like a fixed model.
  */
 public class BrainModelConfig {
 
@@ -63,9 +68,17 @@ public class BrainModelConfig {
             true                // Always uses AI
         ));
 
-        // MessageAnalyzer: gpt-4o-mini pour analyse mood-congruent
-        BRAIN_CONFIGS.put("MessageAnalyzer", new BrainConfig(
+        // ConversationSummary: gpt-4o-mini pour le résumé glissant des vieux échanges
+        BRAIN_CONFIGS.put("ConversationSummary", new BrainConfig(
             "gpt-4o-mini",      // Unified model
+            0.3,                // Temperature (fidèle)
+            300,                // Max tokens (résumé court)
+            true                // AI enabled
+        ));
+
+        // MessageAnalyzer: gpt-4o-mini pour analyse mood-congruent, gpt-4o si réponse illisible ou peu sûre
+        BRAIN_CONFIGS.put("MessageAnalyzer", new BrainConfig(
+            List.of("gpt-4o-mini", "gpt-4o"), // Cascade
             0.3,                // Temperature (précis)
             2000,               // Max tokens
             true                // AI enabled
@@ -76,13 +89,19 @@ public class BrainModelConfig {
      * Brain configuration data.
      */
     public static class BrainConfig {
-        public final String model;
+        public final String model;          // First model of the cascade
+        public final List<String> cascade;  // Cheapest/fastest first
         public final double temperature;
         public final int maxTokens;
         public final boolean aiEnabled;
 
         public BrainConfig(String model, double temperature, int maxTokens, boolean aiEnabled) {
-            this.model = model;
+            this(List.of(model), temperature, maxTokens, aiEnabled);
+        }
+
+        public BrainConfig(List<String> cascade, double temperature, int maxTokens, boolean aiEnabled) {
+            this.cascade = List.copyOf(cascade);
+            this.model = this.cascade.get(0);
             this.temperature = temperature;
             this.maxTokens = maxTokens;
             this.aiEnabled = aiEnabled;
@@ -104,6 +123,13 @@ public class BrainModelConfig {
         return getConfig(brainModuleName).model;
     }
 
+    /**
+     * Get the model cascade for a brain module (never empty).
+     */
+    public static List<String> getCascade(String brainModuleName) {
+        return getConfig(brainModuleName).cascade;
+    }
+
     /**
      * Get temperature for a brain module.
      */
@@ -129,9 +155,16 @@ public class BrainModelConfig {
      * Override model for a brain type (for testing or customization).
      */
     public static void setModel(String brainModuleName, String model) {
+        setCascade(brainModuleName, List.of(model));
+    }
+
+    /**
+     * Override the model cascade for a brain type.
+     */
+    public static void setCascade(String brainModuleName, List<String> cascade) {
         BrainConfig oldConfig = getConfig(brainModuleName);
         BRAIN_CONFIGS.put(brainModuleName, new BrainConfig(
-            model,
+            cascade,
             oldConfig.temperature,
             oldConfig.maxTokens,
             oldConfig.aiEnabled
@@ -144,7 +177,7 @@ public class BrainModelConfig {
     public static void setAiEnabled(String brainModuleName, boolean enabled) {
         BrainConfig oldConfig = getConfig(brainModuleName);
         BRAIN_CONFIGS.put(brainModuleName, new BrainConfig(
-            oldConfig.model,
+            oldConfig.cascade,
             oldConfig.temperature,
             oldConfig.maxTokens,
             enabled
@@ -163,7 +196,7 @@ public class BrainModelConfig {
             BrainConfig config = entry.getValue();
 
             sb.append(String.format("%s:\n", name));
-            sb.append(String.format("  Model: %s\n", config.model));
+            sb.append(String.format("  Model: %s\n", String.join(" → ", config.cascade)));
             sb.append(String.format("  Temperature: %.1f\n", config.temperature));
             sb.append(String.format("  Max Tokens: %d\n", config.maxTokens));
             sb.append(String.format("  AI Enabled: %s\n", config.aiEnabled ? "YES" : "NO (local only)"));
@@ -171,7 +204,7 @@ public class BrainModelConfig {
         }
 
         sb.append("OPTIMIZATION:\n");
-        sb.append("- MessageAnalyzer: gpt-3.5-turbo (ultra rapide, JSON strict)\n");
+        sb.append("- MessageAnalyzer: gpt-4o-mini, gpt-4o si réponse illisible, peu sûre ou message long\n");
         sb.append("- EmotionalBrain: gpt-3.5-turbo (analyse rapide émotions)\n");
         sb.append("- MemoryBrain: LOCAL only (pas d'appel IA = ultra rapide)\n");
         sb.append("- SocialBrain: LOCAL only (pas d'appel IA = ultra rapide)\n");
@@ -181,29 +214,31 @@ public class BrainModelConfig {
     }
 
     /**
-     * Alternative model options for different scenarios.
+     * Alternative model options for different scenarios, as cascades (first model tried first).
      */
     public enum ModelOption {
-        FASTEST("gpt-4o-mini", "Fastest & cheapest - best for games"),
-        BALANCED("gpt-4o", "Balanced speed & quality"),
-        QUALITY("gpt-4-turbo", "Highest quality, slower"),
-        LEGACY("gpt-3.5-turbo", "Legacy model, very fast");
+        FASTEST(List.of("gpt-4o-mini"), "Fastest & cheapest - best for games"),
+        BALANCED(List.of("gpt-4o-mini", "gpt-4o"), "Cheap first, escalates to gpt-4o when needed"),
+        QUALITY(List.of("gpt-4o", "gpt-4-turbo"), "Highest quality, slower"),
+        LEGACY(List.of("gpt-3.5-turbo", "gpt-4o-mini"), "Legacy model, very fast");
 
-        public final String modelName;
+        public final String modelName;      // First model of the cascade
+        public final List<String> cascade;
         public final String description;
 
-        ModelOption(String modelName, String description) {
-            this.modelName = modelName;
+        ModelOption(List<String> cascade, String description) {
+            this.cascade = cascade;
+            this.modelName = cascade.get(0);
             this.description = description;
         }
     }
 
     /**
-     * Apply a model preset to all brains.
+     * Apply a model preset (cascade) to all brains.
      */
     public static void applyPreset(ModelOption preset) {
         for (String brainName : BRAIN_CONFIGS.keySet()) {
-            setModel(brainName, preset.modelName);
+            setCascade(brainName, preset.cascade);
         }
     }
 }
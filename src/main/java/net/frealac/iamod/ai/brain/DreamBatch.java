@@ -0,0 +1,172 @@
+package net.frealac.iamod.ai.brain;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.frealac.iamod.ai.ChatMessage;
+import net.frealac.iamod.ai.memory.Memory;
+import net.frealac.iamod.ai.memory.MemoryType;
+import net.frealac.iamod.ai.memory.VillagerMemory;
+import net.frealac.iamod.ai.openai.ChatRequestWriter;
+import net.frealac.iamod.ai.openai.TokenEstimator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One request of the night-time "dream" pass: several villagers consolidate their recent memories at once.
+ *
+ * The scheduling side (which villagers, when, under which budget) lives in the server's DreamPass;
+ * this class only picks the pending memories, writes the request and reads the answer.
+ * - PENDING: non-reflection memories newer than the villager's watermark, importance >= MIN_IMPORTANCE
+ * - The oldest MAX_MEMORIES_PER_VILLAGER pending memories are sent; the watermark only moves past those,
+ *   so the newer ones wait for the next pass instead of being skipped
+ * - One JSON answer for the whole batch, reflections indexed by villager
+ */
+public final class DreamBatch {
+
+    public static final double MIN_IMPORTANCE = 0.5;
+    public static final int MIN_PENDING = 2;            // Fewer new memories: nothing worth dreaming about
+    private static final int MAX_MEMORIES_PER_VILLAGER = 12;
+    private static final int REFLECTIONS_PER_VILLAGER = 2;
+
+    private static final String SYSTEM_PROMPT = "Tu consolides pendant la nuit les souvenirs de plusieurs villageois, "
+            + "comme un rêve. Pour chacun, tire 1 ou 2 conclusions durables de ses souvenirs récents "
+            + "(sur les joueurs, le village, sa propre vie), à la 1re personne, en français, une phrase chacune.";
+
+    /**
+     * A villager of the batch and the memories it dreams about.
+     *
+     * @param villager entity UUID (key of the watermark)
+     * @param watermark newest timestamp among the memories sent: the next pass starts after it
+     */
+    public record Entry(UUID villager, String name, String profession, List<Memory> pending, long watermark) {
+    }
+
+    private DreamBatch() {
+    }
+
+    /**
+     * The entry of this villager, or null when it has fewer than MIN_PENDING pending memories.
+     */
+    public static Entry entry(UUID villager, String name, String profession, VillagerMemory memory, long since) {
+        if (memory == null) return null;
+        List<Memory> pending = new ArrayList<>();
+        for (Memory m : memory.getAllMemories()) {
+            if (m.getType() == MemoryType.REFLECTION || m.getTimestamp() <= since || m.getImportance() < MIN_IMPORTANCE) continue;
+            pending.add(m);
+        }
+        if (pending.size() < MIN_PENDING) return null;
+
+        pending.sort(Comparator.comparingLong(Memory::getTimestamp));
+        int sent = Math.min(pending.size(), MAX_MEMORIES_PER_VILLAGER);
+        // Never split memories sharing a timestamp: the watermark would skip the ones left out
+        while (sent < pending.size() && sent > 0 && pending.get(sent).getTimestamp() == pending.get(sent - 1).getTimestamp()) sent--;
+        while (sent == 0 || (sent < pending.size() && pending.get(sent).getTimestamp() == pending.get(0).getTimestamp())) sent++;
+        pending = new ArrayList<>(pending.subList(0, sent));
+        return new Entry(villager, name, profession, pending, pending.get(sent - 1).getTimestamp());
+    }
+
+    /**
+     * Request for the whole batch (MemoryBrain model and temperature, JSON answer).
+     */
+    public static ChatRequestWriter.Body buildRequest(List<Entry> entries) {
+        return ChatRequestWriter.chat(BrainModelConfig.getModel("MemoryBrain"),
+                List.of(ChatMessage.system(SYSTEM_PROMPT), ChatMessage.user(buildPrompt(entries))),
+                BrainModelConfig.getTemperature("MemoryBrain"), maxTokens(entries), false, true);
+    }
+
+    /**
+     * Tokens this batch may cost: estimated prompt plus the whole answer allowance.
+     */
+    public static int estimateTokens(List<Entry> entries) {
+        return TokenEstimator.estimate(SYSTEM_PROMPT) + TokenEstimator.estimate(buildPrompt(entries)) + maxTokens(entries);
+    }
+
+    /**
+     * Answer of a batch.
+     *
+     * @param reflections per villager index (0-based, order of the batch); missing or malformed villagers are absent
+     * @param totalTokens tokens billed upstream, -1 when the response has no usage block
+     */
+    public record Answer(Map<Integer, List<String>> reflections, long totalTokens) {
+    }
+
+    /**
+     * Read a chat-completion response body.
+     *
+     * @throws RuntimeException when the body is not a usable answer
+     */
+    public static Answer parseResponse(String body) {
+        JsonObject response = JsonParser.parseString(body).getAsJsonObject();
+        String content = response.getAsJsonArray("choices").get(0).getAsJsonObject()
+                .getAsJsonObject("message").get("content").getAsString();
+        JsonObject usage = response.has("usage") && response.get("usage").isJsonObject() ? response.getAsJsonObject("usage") : null;
+        long total = usage != null && usage.has("total_tokens") ? usage.get("total_tokens").getAsLong() : -1;
+        return new Answer(parse(content), total);
+    }
+
+    private static Map<Integer, List<String>> parse(String content) {
+        Map<Integer, List<String>> result = new HashMap<>();
+        JsonArray villagers = JsonParser.parseString(content).getAsJsonObject().getAsJsonArray("villageois");
+        if (villagers == null) return result;
+        for (JsonElement element : villagers) {
+            if (!element.isJsonObject()) continue;
+            JsonObject obj = element.getAsJsonObject();
+            if (!obj.has("index") || !obj.has("reflexions") || !obj.get("reflexions").isJsonArray()) continue;
+            List<String> reflections = new ArrayList<>();
+            for (JsonElement r : obj.getAsJsonArray("reflexions")) {
+                if (r.isJsonPrimitive() && !r.getAsString().isBlank()) reflections.add(r.getAsString().trim());
+                if (reflections.size() == REFLECTIONS_PER_VILLAGER) break;
+            }
+            if (!reflections.isEmpty()) result.put(obj.get("index").getAsInt() - 1, reflections);
+        }
+        return result;
+    }
+
+    /**
+     * Reflection memory of this villager; it is about a player when all its pending memories concern that one.
+     */
+    public static Memory toReflection(Entry entry, String reflection) {
+        String player = null;
+        String playerName = null;
+        for (Memory m : entry.pending()) {
+            if (m.getPlayerUuid() == null || (player != null && !player.equals(m.getPlayerUuid()))) {
+                player = null;
+                break;
+            }
+            player = m.getPlayerUuid();
+            playerName = m.getPlayerName();
+        }
+        Memory memory = new Memory(MemoryType.REFLECTION, reflection,
+                player != null ? UUID.fromString(player) : null, player != null ? playerName : "Rêve");
+        memory.setImportance(0.9); // Same weight as MemoryBrain reflections
+        return memory;
+    }
+
+    private static String buildPrompt(List<Entry> entries) {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            prompt.append("##### VILLAGEOIS ").append(i + 1).append(": ").append(entry.name());
+            if (entry.profession() != null && !entry.profession().isBlank()) prompt.append(" (").append(entry.profession()).append(")");
+            prompt.append(" #####\n");
+            for (Memory m : entry.pending()) {
+                prompt.append(m.toPromptString()).append("\n");
+            }
+            prompt.append("\n");
+        }
+        prompt.append("Réponds en JSON: {\"villageois\": [{\"index\": 1, \"reflexions\": [\"...\"]}, ...]}, ");
+        prompt.append("un élément par villageois, ").append(entries.size()).append(" au total.");
+        return prompt.toString();
+    }
+
+    private static int maxTokens(List<Entry> entries) {
+        return 40 + entries.size() * REFLECTIONS_PER_VILLAGER * 60;
+    }
+}
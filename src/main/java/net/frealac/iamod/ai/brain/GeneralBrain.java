@@ -1,8 +1,13 @@
 package net.frealac.iamod.ai.brain;
 
 import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.memory.Memory;
+import net.frealac.iamod.ai.memory.MemoryTextIndex;
+import net.frealac.iamod.ai.memory.TopKSelector;
 import net.frealac.iamod.common.story.VillagerStory;
 
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -24,9 +29,13 @@ import java.util.UUID;
  */
 public class GeneralBrain extends BrainModule {
 
+    // Constant answer guidelines: first layer of every context (see LayeredPromptBuilder)
+    private static final String RESPONSE_GUIDELINES = buildResponseGuidelines();
+
     private final EmotionalBrain emotionalBrain;
     private final MemoryBrain memoryBrain;
     private final SocialBrain socialBrain;
+    private final LayeredPromptBuilder promptBuilder = new LayeredPromptBuilder();
 
     private String lastDecision;
     private String lastReasoningProcess;
@@ -81,111 +90,206 @@ public class GeneralBrain extends BrainModule {
      */
     public String generateComprehensiveContext(UUID playerUuid, VillagerStory story,
                                                String playerMessage, String currentGoalsState) {
+        return generateComprehensiveContext("", playerUuid, story, playerMessage, currentGoalsState);
+    }
 
-        IAMOD.LOGGER.info("🧠 GeneralBrain: Generating comprehensive context for player {}", playerUuid);
+    /**
+     * Same as above, with a caller-specific static prefix (e.g. the roleplay rules of the brain service).
+     *
+     * ORDER (prompt caching): static rules -> identity (cached per story) -> volatile state.
+     * Nothing that changes between two messages may appear before the volatile tail.
+     */
+    public String generateComprehensiveContext(String staticPrefix, UUID playerUuid, VillagerStory story,
+                                               String playerMessage, String currentGoalsState) {
+        return generateComprehensiveContext(staticPrefix, prepareContext(playerUuid, story), story,
+            playerMessage, currentGoalsState);
+    }
+
+    /**
+     * Finish a context from a draft: only the message-dependent parts (memory relevance,
+     * situation, player message) are computed here.
+     */
+    public String generateComprehensiveContext(String staticPrefix, ContextDraft draft, VillagerStory story,
+                                               String playerMessage, String currentGoalsState) {
+
+        IAMOD.LOGGER.info("🧠 GeneralBrain: Generating comprehensive context for player {}", draft.playerUuid);
 
         StringBuilder context = new StringBuilder();
+        context.append(draft.emotionalSection);
 
-        // 1. IDENTITY (qui suis-je ?)
-        context.append("=== QUI JE SUIS ===\n");
-        String name = (story.nameGiven != null ? story.nameGiven : "Villageois") +
-                     (story.nameFamily != null ? (" " + story.nameFamily) : "");
-        context.append("Nom: ").append(name).append("\n");
-        context.append("Âge: ").append(story.ageYears > 0 ? (story.ageYears + " ans") : "adulte").append("\n");
-        context.append("Profession: ").append(story.profession != null ? story.profession : "habitant").append("\n");
-
-        if (story.traits != null && !story.traits.isEmpty()) {
-            String traits = String.join(", ", story.traits.subList(0, Math.min(5, story.traits.size())));
-            context.append("Traits de personnalité: ").append(traits).append("\n");
+        // 2. MEMORIES (qu'est-ce que je me souviens ?)
+        // STANFORD GENERATIVE AGENTS: Use retrieval scoring to get most relevant memories
+        context.append("=== MES SOUVENIRS AVEC CE JOUEUR ===\n");
+        if (memoryBrain != null) {
+            context.append(draft.memorySummary).append("\n");
+            context.append("\nSouvenirs les plus pertinents (retrieval scoring):\n");
+            context.append(getRelevantMemoriesForPrompt(draft.memories, draft.memoryIndex, playerMessage)).append("\n");
+        } else {
+            context.append("Aucun souvenir particulier.\n");
         }
+        context.append("\n");
 
+        context.append(draft.relationshipSection);
+
+        // 4. CURRENT SITUATION (que suis-je en train de faire ?)
+        context.append("=== MA SITUATION ACTUELLE ===\n");
+        context.append(currentGoalsState).append("\n");
         context.append("\n");
 
-        // 2. EMOTIONAL STATE (comment je me sens ?)
-        context.append("=== COMMENT JE ME SENS ===\n");
+        // 5. PLAYER MESSAGE (qu'est-ce que le joueur a dit ?)
+        context.append("=== CE QUE LE JOUEUR VIENT DE ME DIRE ===\n");
+        context.append("\"").append(playerMessage).append("\"\n");
+
+        String fullContext = promptBuilder.build(staticPrefix + RESPONSE_GUIDELINES, story, context.toString());
+        IAMOD.LOGGER.debug("🧠 GeneralBrain: Generated context ({} chars)", fullContext.length());
+
+        return fullContext;
+    }
+
+    /**
+     * Everything of the context that does not depend on the player's message:
+     * emotional state, memory summary and candidates, relationship, identity layer.
+     *
+     * Built on the server thread when the dialog opens (see DialogPrecompute); the draft only holds
+     * strings and immutable memory snapshots, and is only reused while {@link #stateStamp(UUID)} still matches.
+     */
+    public ContextDraft prepareContext(UUID playerUuid, VillagerStory story) {
+        int stamp = stateStamp(playerUuid);
+
+        // 1. EMOTIONAL STATE (comment je me sens ?)
+        StringBuilder emotional = new StringBuilder();
+        emotional.append("=== COMMENT JE ME SENS ===\n");
         if (emotionalBrain != null) {
             double mood = emotionalBrain.getCurrentMood();
             double stress = emotionalBrain.getCurrentStress();
 
-            context.append(emotionalBrain.getEmotionalStateForPrompt()).append("\n");
+            emotional.append(emotionalBrain.getEmotionalStateForPrompt()).append("\n");
 
             // EXPLICIT EMOTIONAL CONTEXT for authentic responses
-            context.append("\n🎭 ÉTAT ÉMOTIONNEL RÉEL:\n");
+            emotional.append("\n🎭 ÉTAT ÉMOTIONNEL RÉEL:\n");
             if (mood < -0.5) {
-                context.append("JE SUIS EN COLÈRE/TRISTE. ");
-                context.append("Je peux être hostile, sarcastique, ou refuser de coopérer. ");
-                context.append("C'est NORMAL et HUMAIN. Je ne suis pas un robot qui sourit toujours.\n");
+                emotional.append("JE SUIS EN COLÈRE/TRISTE. ");
+                emotional.append("Je peux être hostile, sarcastique, ou refuser de coopérer. ");
+                emotional.append("C'est NORMAL et HUMAIN. Je ne suis pas un robot qui sourit toujours.\n");
             } else if (mood < -0.2) {
-                context.append("Je suis irrité. Je peux être brusque ou distant.\n");
+                emotional.append("Je suis irrité. Je peux être brusque ou distant.\n");
             } else if (mood > 0.5) {
-                context.append("Je suis de très bonne humeur! Je suis ouvert et amical.\n");
+                emotional.append("Je suis de très bonne humeur! Je suis ouvert et amical.\n");
             }
 
             if (stress > 0.7) {
-                context.append("Je suis TRÈS STRESSÉ. Je peux être nerveux, sur la défensive.\n");
+                emotional.append("Je suis TRÈS STRESSÉ. Je peux être nerveux, sur la défensive.\n");
             }
 
-            context.append("\n");
+            emotional.append("\n");
         } else {
-            context.append("État émotionnel normal.\n");
+            emotional.append("État émotionnel normal.\n");
         }
-        context.append("\n");
-
-        // 3. MEMORIES (qu'est-ce que je me souviens ?)
-        // STANFORD GENERATIVE AGENTS: Use retrieval scoring to get most relevant memories
-        context.append("=== MES SOUVENIRS AVEC CE JOUEUR ===\n");
-        if (memoryBrain != null) {
-            context.append(memoryBrain.getMemorySummaryForPrompt(playerUuid)).append("\n");
-            context.append("\nSouvenirs les plus pertinents (retrieval scoring):\n");
-            context.append(getRelevantMemoriesForPrompt(playerUuid, playerMessage)).append("\n");
-        } else {
-            context.append("Aucun souvenir particulier.\n");
+        emotional.append("\n");
+
+        // 2. MEMORIES: summary and candidates; relevance to the message is scored later
+        String memorySummary = "";
+        List<Memory> memories = List.of();
+        MemoryTextIndex memoryIndex = MemoryTextIndex.EMPTY;
+        if (memoryBrain != null && playerUuid != null) {
+            memorySummary = memoryBrain.getMemorySummaryForPrompt(playerUuid);
+            memories = List.copyOf(memoryBrain.getMemoriesWithPlayer(playerUuid));
+            memoryIndex = memoryBrain.getMemoryTextIndex();
         }
-        context.append("\n");
 
-        // 4. RELATIONSHIP (quelle est ma relation avec ce joueur ?)
-        context.append("=== MA RELATION AVEC CE JOUEUR ===\n");
+        // 3. RELATIONSHIP (quelle est ma relation avec ce joueur ?)
+        StringBuilder relationship = new StringBuilder();
+        relationship.append("=== MA RELATION AVEC CE JOUEUR ===\n");
         if (socialBrain != null) {
-            context.append(socialBrain.getSocialContextForPrompt(playerUuid)).append("\n");
+            relationship.append(socialBrain.getSocialContextForPrompt(playerUuid)).append("\n");
 
             SocialBrain.RelationshipData rel = socialBrain.getRelationship(playerUuid);
-            context.append(String.format("Niveau de confiance: %.0f%%, Familiarité: %.0f%%\n",
+            relationship.append(String.format("Niveau de confiance: %.0f%%, Familiarité: %.0f%%\n",
                 rel.trustLevel * 100, rel.intimacy * 100));
         } else {
-            context.append("Première rencontre.\n");
+            relationship.append("Première rencontre.\n");
         }
-        context.append("\n");
+        relationship.append("\n");
 
-        // 5. CURRENT SITUATION (que suis-je en train de faire ?)
-        context.append("=== MA SITUATION ACTUELLE ===\n");
-        context.append(currentGoalsState).append("\n");
-        context.append("\n");
+        promptBuilder.prepareIdentity(story);
 
-        // 6. PLAYER MESSAGE (qu'est-ce que le joueur a dit ?)
-        context.append("=== CE QUE LE JOUEUR VIENT DE ME DIRE ===\n");
-        context.append("\"").append(playerMessage).append("\"\n");
-        context.append("\n");
+        return new ContextDraft(playerUuid, stamp, emotional.toString(), memorySummary, memories, memoryIndex,
+            relationship.toString());
+    }
 
-        // 7. INSTRUCTIONS (comment dois-je répondre ?)
-        context.append("=== COMMENT JE DOIS RÉPONDRE ===\n");
-        context.append("Je suis une PERSONNE RÉELLE avec des émotions, des souvenirs et des relations.\n");
-        context.append("Ma réponse doit être basée sur:\n");
-        context.append("1. Mon état émotionnel actuel (humeur, stress)\n");
-        context.append("2. Mes souvenirs de cette personne\n");
-        context.append("3. Ma relation avec cette personne (confiance, familiarité)\n");
-        context.append("4. Ma personnalité et mes valeurs\n");
-        context.append("\n🎭 AUTHENTICITÉ ÉMOTIONNELLE:\n");
-        context.append("- Si je suis en colère, JE PEUX être hostile, sarcastique, insultant\n");
-        context.append("- Si on m'a fait du mal, JE PEUX rejeter des excuses ou des compliments\n");
-        context.append("- Si je me méfie, JE PEUX refuser de coopérer\n");
-        context.append("- Je peux accepter, refuser, négocier - comme une vraie personne\n");
-        context.append("- Je ne suis PAS un robot qui obéit toujours ou qui reste poli\n");
-        context.append("- Mes ÉMOTIONS sont RÉELLES et influencent mes réponses\n");
-
-        String fullContext = context.toString();
-        IAMOD.LOGGER.debug("🧠 GeneralBrain: Generated context ({} chars)", fullContext.length());
+    /**
+     * Cheap fingerprint of the brain state a draft depends on (mood, stress, memories, relationship).
+     * Memories are fingerprinted by their modification count: at the memory cap the count stays the same.
+     */
+    public int stateStamp(UUID playerUuid) {
+        double mood = emotionalBrain != null ? emotionalBrain.getCurrentMood() : 0;
+        double stress = emotionalBrain != null ? emotionalBrain.getCurrentStress() : 0;
+        int memoryVersion = memoryBrain != null ? memoryBrain.getMemoryVersion() : 0;
+        if (socialBrain == null || playerUuid == null) {
+            return Objects.hash(mood, stress, memoryVersion);
+        }
+        SocialBrain.RelationshipData rel = socialBrain.getRelationship(playerUuid);
+        return Objects.hash(mood, stress, memoryVersion, rel.trustLevel, rel.trustDamage, rel.intimacy);
+    }
 
-        return fullContext;
+    /**
+     * Message-independent part of a context, built by {@link #prepareContext(UUID, VillagerStory)}.
+     */
+    public static final class ContextDraft {
+        final UUID playerUuid;
+        final int stateStamp;
+        final long createdAtMs = System.currentTimeMillis();
+        final String emotionalSection;
+        final String memorySummary;
+        final List<Memory> memories;
+        final MemoryTextIndex memoryIndex;
+        final String relationshipSection;
+
+        ContextDraft(UUID playerUuid, int stateStamp, String emotionalSection, String memorySummary,
+                     List<Memory> memories,
+                     MemoryTextIndex memoryIndex, String relationshipSection) {
+            this.playerUuid = playerUuid;
+            this.stateStamp = stateStamp;
+            this.emotionalSection = emotionalSection;
+            this.memorySummary = memorySummary;
+            this.memories = memories;
+            this.memoryIndex = memoryIndex;
+            this.relationshipSection = relationshipSection;
+        }
+
+        public UUID getPlayerUuid() {
+            return playerUuid;
+        }
+
+        public int getStateStamp() {
+            return stateStamp;
+        }
+
+        public long getCreatedAtMs() {
+            return createdAtMs;
+        }
+    }
+
+    /**
+     * How to answer: identical for every villager and every message, computed once.
+     */
+    private static String buildResponseGuidelines() {
+        StringBuilder guidelines = new StringBuilder();
+        guidelines.append("=== COMMENT JE DOIS RÉPONDRE ===\n");
+        guidelines.append("Je suis une PERSONNE RÉELLE avec des émotions, des souvenirs et des relations.\n");
+        guidelines.append("Ma réponse doit être basée sur:\n");
+        guidelines.append("1. Mon état émotionnel actuel (humeur, stress)\n");
+        guidelines.append("2. Mes souvenirs de cette personne\n");
+        guidelines.append("3. Ma relation avec cette personne (confiance, familiarité)\n");
+        guidelines.append("4. Ma personnalité et mes valeurs\n");
+        guidelines.append("\n🎭 AUTHENTICITÉ ÉMOTIONNELLE:\n");
+        guidelines.append("- Si je suis en colère, JE PEUX être hostile, sarcastique, insultant\n");
+        guidelines.append("- Si on m'a fait du mal, JE PEUX rejeter des excuses ou des compliments\n");
+        guidelines.append("- Si je me méfie, JE PEUX refuser de coopérer\n");
+        guidelines.append("- Je peux accepter, refuser, négocier - comme une vraie personne\n");
+        guidelines.append("- Je ne suis PAS un robot qui obéit toujours ou qui reste poli\n");
+        guidelines.append("- Mes ÉMOTIONS sont RÉELLES et influencent mes réponses\n\n");
+        return guidelines.toString();
     }
 
     /**
@@ -194,62 +298,36 @@ public class GeneralBrain extends BrainModule {
      * Retrieval score combines:
      * - Recency: How recent is the memory? (exponential decay)
      * - Importance: How important/memorable is it?
-     * - Relevance: How relevant to current query?
+     * - Relevance: How relevant to current query? (BM25 keywords + n-gram embeddings, see MemoryTextIndex)
      *
-     * @param playerUuid Player to get memories about
+     * @param memories Memories about the player (snapshot taken by prepareContext)
+     * @param memoryIndex Keyword index snapshot taken with them
      * @param query Current context/query for relevance calculation
      * @return Formatted string with top relevant memories
      */
-    private String getRelevantMemoriesForPrompt(UUID playerUuid, String query) {
-        if (memoryBrain == null || playerUuid == null) {
-            return "Aucun souvenir.";
-        }
-
-        java.util.List<net.frealac.iamod.ai.memory.Memory> memories =
-            memoryBrain.getMemoriesWithPlayer(playerUuid);
-
+    private String getRelevantMemoriesForPrompt(List<Memory> memories,
+                                                MemoryTextIndex memoryIndex, String query) {
         if (memories.isEmpty()) {
             return "Aucun souvenir avec ce joueur.";
         }
 
-        // Calculate retrieval score for each memory
+        // Calculate retrieval score for each memory once
         long currentTime = System.currentTimeMillis();
-        java.util.List<ScoredMemory> scoredMemories = new java.util.ArrayList<>();
-
-        for (net.frealac.iamod.ai.memory.Memory memory : memories) {
-            double score = memory.getRetrievalScore(query, currentTime);
-            scoredMemories.add(new ScoredMemory(memory, score));
+        double[] scores = memoryIndex.relevance(query, memories);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = memories.get(i).getRetrievalScore(scores[i], currentTime);
         }
 
-        // Sort by score (highest first)
-        scoredMemories.sort((a, b) -> Double.compare(b.score, a.score));
-
-        // Take top 10 most relevant memories
-        int limit = Math.min(10, scoredMemories.size());
+        // Take top 10 most relevant memories (highest first)
         StringBuilder result = new StringBuilder();
-
-        for (int i = 0; i < limit; i++) {
-            ScoredMemory sm = scoredMemories.get(i);
+        for (int i : TopKSelector.select(scores, scores.length, 10)) {
             result.append(String.format("- [score=%.2f] %s\n",
-                sm.score, sm.memory.toPromptString()));
+                scores[i], memories.get(i).toPromptString()));
         }
 
         return result.toString();
     }
 
-    /**
-     * Helper class to pair memories with their retrieval scores.
-     */
-    private static class ScoredMemory {
-        final net.frealac.iamod.ai.memory.Memory memory;
-        final double score;
-
-        ScoredMemory(net.frealac.iamod.ai.memory.Memory memory, double score) {
-            this.memory = memory;
-            this.score = score;
-        }
-    }
-
     /**
      * Analyze a player interaction and coordinate brain responses.
      */
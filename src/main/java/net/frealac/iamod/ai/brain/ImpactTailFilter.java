@@ -0,0 +1,95 @@
+package net.frealac.iamod.ai.brain;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits a streamed SINGLE-CALL reply into the visible text and the trailing impact block.
+ *
+ * The model ends its reply with MARKER + JSON. Deltas are forwarded downstream until the marker
+ * shows up; everything after it is swallowed (the full reply still carries it, see {@link #extractImpact}).
+ * Text that could be the start of the marker is held back until the next delta disambiguates it.
+ *
+ * Not thread-safe: SSE deltas arrive sequentially from one subscriber.
+ */
+public final class ImpactTailFilter implements Consumer<String> {
+
+    public static final String MARKER = "<<IMPACT>>";
+
+    private final Consumer<String> downstream;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean inTail = false;
+
+    public ImpactTailFilter(Consumer<String> downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void accept(String chunk) {
+        if (chunk == null || chunk.isEmpty()) return;
+        if (inTail) return;
+
+        pending.append(chunk);
+        int idx = pending.indexOf(MARKER);
+        if (idx >= 0) {
+            emit(pending.substring(0, idx));
+            pending.setLength(0);
+            inTail = true;
+            return;
+        }
+
+        // Forward everything except a suffix that may still turn into the marker
+        int keep = markerPrefixLength(pending);
+        emit(pending.substring(0, pending.length() - keep));
+        pending.delete(0, pending.length() - keep);
+    }
+
+    /**
+     * Forward text held back at the end of the stream (it was not the marker after all).
+     */
+    public void flush() {
+        if (!inTail && pending.length() > 0) {
+            emit(pending.toString());
+            pending.setLength(0);
+        }
+    }
+
+    /**
+     * Visible part of a full SINGLE-CALL reply (impact block removed).
+     */
+    public static String stripImpact(String fullReply) {
+        if (fullReply == null) return null;
+        int idx = fullReply.indexOf(MARKER);
+        return idx >= 0 ? fullReply.substring(0, idx).trim() : fullReply;
+    }
+
+    /**
+     * Impact JSON of a full SINGLE-CALL reply, or null if there is none.
+     */
+    public static String extractImpact(String fullReply) {
+        if (fullReply == null) return null;
+        int idx = fullReply.indexOf(MARKER);
+        return idx >= 0 ? fullReply.substring(idx + MARKER.length()).trim() : null;
+    }
+
+    private void emit(String text) {
+        if (!text.isEmpty()) downstream.accept(text);
+    }
+
+    /**
+     * Length of the longest suffix of the buffer that is a prefix of MARKER.
+     */
+    private static int markerPrefixLength(CharSequence buffer) {
+        int max = Math.min(buffer.length(), MARKER.length() - 1);
+        for (int len = max; len > 0; len--) {
+            boolean match = true;
+            for (int i = 0; i < len; i++) {
+                if (buffer.charAt(buffer.length() - len + i) != MARKER.charAt(i)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) return len;
+        }
+        return 0;
+    }
+}
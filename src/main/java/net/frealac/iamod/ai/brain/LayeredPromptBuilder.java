@@ -0,0 +1,125 @@
+package net.frealac.iamod.ai.brain;
+
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.openai.TokenEstimator;
+import net.frealac.iamod.common.story.VillagerStory;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assembles villager prompts so that their beginning stays byte-identical between requests.
+ *
+ * Providers cache the longest common PREFIX of recent prompts: anything volatile placed early
+ * (mood, retrieval scores, goals) makes every prompt unique and nothing is reused. Layers:
+ * 1. STATIC: persona and rules, identical for every villager (precomputed constants)
+ * 2. IDENTITY: who this villager is, rebuilt only when the story fingerprint changes
+ * 3. VOLATILE TAIL: emotions, memories, relationship, situation, last message
+ *
+ * One builder per villager (owned by its GeneralBrain). Reuse is estimated locally and,
+ * when the response carries usage details, confirmed with the upstream cached token count.
+ */
+public final class LayeredPromptBuilder {
+
+    // Static layers already sent at least once in this process
+    private static final Set<String> SENT_STATIC_LAYERS = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicLong prompts = new AtomicLong();
+    private static final AtomicLong promptTokens = new AtomicLong();
+    private static final AtomicLong reusedTokens = new AtomicLong();
+    private static final AtomicLong upstreamPromptTokens = new AtomicLong();
+    private static final AtomicLong upstreamCachedTokens = new AtomicLong();
+
+    private String identityLayer;
+    private int identityFingerprint;
+    private final Set<String> identitySentWith = new HashSet<>();
+
+    /**
+     * Build the full prompt: static layer, then this villager's identity, then the volatile tail.
+     */
+    public synchronized String build(String staticLayer, VillagerStory story, String volatileTail) {
+        prepareIdentity(story);
+
+        boolean staticReused = !SENT_STATIC_LAYERS.add(staticLayer);
+        // The identity is only a cached prefix when it followed this very static layer before
+        boolean identityReused = staticReused && !identitySentWith.add(staticLayer);
+        if (!staticReused) identitySentWith.add(staticLayer);
+
+        String prompt = staticLayer + identityLayer + volatileTail;
+
+        int total = TokenEstimator.estimate(prompt);
+        int reused = (staticReused ? TokenEstimator.estimate(staticLayer) : 0)
+                + (identityReused ? TokenEstimator.estimate(identityLayer) : 0);
+        prompts.incrementAndGet();
+        promptTokens.addAndGet(total);
+        reusedTokens.addAndGet(reused);
+        IAMOD.LOGGER.debug("♻️ Prompt prefix: ~{}/{} tokens reusable (static={}, identity={})",
+                reused, total, staticReused, identityReused);
+
+        return prompt;
+    }
+
+    /**
+     * Rebuild the identity layer if the story changed since the last prompt (no-op otherwise).
+     */
+    public synchronized void prepareIdentity(VillagerStory story) {
+        int fingerprint = fingerprint(story);
+        if (identityLayer == null || fingerprint != identityFingerprint) {
+            identityLayer = buildIdentityLayer(story);
+            identityFingerprint = fingerprint;
+            identitySentWith.clear();
+        }
+    }
+
+    /**
+     * Identity layer (QUI JE SUIS) for this story.
+     */
+    static String buildIdentityLayer(VillagerStory story) {
+        StringBuilder identity = new StringBuilder();
+        identity.append("=== QUI JE SUIS ===\n");
+        String name = (story.nameGiven != null ? story.nameGiven : "Villageois") +
+                     (story.nameFamily != null ? (" " + story.nameFamily) : "");
+        identity.append("Nom: ").append(name).append("\n");
+        identity.append("Âge: ").append(story.ageYears > 0 ? (story.ageYears + " ans") : "adulte").append("\n");
+        identity.append("Profession: ").append(story.profession != null ? story.profession : "habitant").append("\n");
+
+        if (story.traits != null && !story.traits.isEmpty()) {
+            String traits = String.join(", ", story.traits.subList(0, Math.min(5, story.traits.size())));
+            identity.append("Traits de personnalité: ").append(traits).append("\n");
+        }
+
+        identity.append("\n");
+        return identity.toString();
+    }
+
+    /**
+     * Hash of every story field the identity layer reads.
+     */
+    static int fingerprint(VillagerStory story) {
+        return Objects.hash(story.nameGiven, story.nameFamily, story.ageYears, story.profession,
+                story.traits != null ? story.traits.subList(0, Math.min(5, story.traits.size())) : null);
+    }
+
+    /**
+     * Record the usage block of a response (prompt_tokens and prompt_tokens_details.cached_tokens).
+     */
+    public static void recordUpstreamUsage(long promptTokenCount, long cachedTokenCount) {
+        upstreamPromptTokens.addAndGet(promptTokenCount);
+        upstreamCachedTokens.addAndGet(cachedTokenCount);
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        long total = promptTokens.get();
+        long reused = reusedTokens.get();
+        long upstreamTotal = upstreamPromptTokens.get();
+        return String.format("Prompt prefix: ~%d/%d tokens reusable (%.0f%%) over %d prompts, upstream cached=%d/%d",
+                reused, total, total == 0 ? 0.0 : 100.0 * reused / total, prompts.get(),
+                upstreamCachedTokens.get(), upstreamTotal);
+    }
+}
@@ -0,0 +1,345 @@
+package net.frealac.iamod.ai.brain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * First-tier message analyzer: local, deterministic, no network (French and English).
+ *
+ * Most chat lines ("bonjour", "merci", insults) need no language model to be scored. This analyzer
+ * scores a message in microseconds on the server thread and says how sure it is:
+ * - LEXICON: accent-free lowercase words and a few two-word phrases, each with a valence (-1..1),
+ *   an aggression and an affection weight
+ * - NEGATION: "ne/pas/jamais/not/never..." flips the valence of the next sentiment words
+ *   ("pas mal" is positive) and mostly cancels their aggression ("tu n'es pas idiot")
+ * - INTENSIFIERS / DIMINISHERS: "très, vraiment, so, really" x1.5, "un peu, plutôt, kinda" x0.6
+ * - EMPHASIS: exclamation marks and shouted words (CAPS) raise the magnitude and the aggression
+ * - CONFIDENCE: share of meaningful words the lexicon knows, lowered by mixed polarity and negation
+ *
+ * MessageAnalyzer escalates to the LLM below analysisLocalConfidence; when both tiers ran,
+ * their agreement is recorded per confidence bucket to tune that threshold.
+ */
+public final class LocalSentimentAnalyzer {
+
+    private static final int NEGATION_SCOPE = 3;       // Words after a negator that it applies to
+    private static final double NEGATED_VALENCE = -0.6; // "pas content" is less negative than "triste"
+    private static final double NEGATED_AGGRESSION = 0.2;
+    private static final double AGREEMENT_DEAD_ZONE = 0.2;
+    private static final int BUCKETS = 5;
+
+    private record Entry(double valence, double aggression, double affection) {}
+
+    /**
+     * Local score of one message: the impact and how much it can be trusted (0-1).
+     */
+    public record Result(MessageAnalyzer.MessageImpact impact, double confidence) {}
+
+    private static final Map<String, Entry> WORDS = new HashMap<>();
+    private static final Map<String, Entry> PHRASES = new HashMap<>();
+    private static final Set<String> NEGATORS = Set.of(
+            "ne", "n", "pas", "jamais", "rien", "aucun", "aucune", "guere",
+            "not", "never", "nothing", "dont", "don", "didnt", "doesnt", "isnt", "aren", "wasn", "cant", "cannot", "wont");
+    private static final Map<String, Double> MODIFIERS = new HashMap<>();
+    private static final Set<String> STOPWORDS = Set.of(
+            "je", "j", "tu", "il", "elle", "on", "nous", "vous", "ils", "elles", "le", "la", "les", "l", "un", "une",
+            "des", "de", "du", "d", "a", "au", "aux", "et", "ou", "mais", "que", "qu", "qui", "quoi", "est", "es", "suis",
+            "sont", "etre", "ce", "c", "cet", "cette", "ca", "ton", "ta", "tes", "mon", "ma", "mes", "son", "sa", "ses",
+            "me", "m", "te", "t", "se", "s", "en", "y", "pour", "par", "avec", "sur", "dans", "comment", "vas", "va",
+            "the", "an", "and", "or", "but", "you", "your", "i", "my", "it", "is", "are", "am", "be", "to", "of", "in",
+            "for", "with", "that", "this", "what", "do", "does", "how", "re");
+
+    private static final AtomicLong localDecisions = new AtomicLong();
+    private static final AtomicLong escalations = new AtomicLong();
+    private static final AtomicLongArray compared = new AtomicLongArray(BUCKETS);
+    private static final AtomicLongArray agreed = new AtomicLongArray(BUCKETS);
+    private static final AtomicLong absDeltaMillis = new AtomicLong();
+
+    static {
+        // French, positive
+        positive(0.3, 0, "bonjour", "salut", "coucou", "bonsoir", "bienvenue");
+        positive(0.3, 0, "desole", "desolee", "pardon", "excuse", "excuses", "svp", "plait");
+        positive(0.6, 0.1, "merci", "remercie", "sympa", "gentil", "gentille", "aimable", "chouette", "top", "cool");
+        positive(0.7, 0.1, "bravo", "parfait", "parfaite", "super", "content", "contente", "heureux", "heureuse",
+                "ravi", "ravie", "felicitations", "beau", "belle", "intelligent", "intelligente", "courageux", "courageuse");
+        positive(0.85, 0.1, "genial", "geniale", "excellent", "excellente", "magnifique", "formidable", "merveilleux");
+        positive(0.4, 0, "bien", "bon", "bonne", "plaisir", "aider", "aide", "sage");
+        positive(0.5, 0.4, "ami", "amie", "amis", "cher", "chere", "confiance", "cadeau");
+        positive(0.8, 0.7, "aime", "adore", "adorable", "bisous", "bisou", "calin", "coeur");
+        // French, negative
+        negative(-0.4, 0, "mal", "triste", "ennuyeux", "ennuyeuse", "bof");
+        negative(-0.6, 0.3, "nul", "nulle", "mechant", "mechante", "horrible", "inutile", "moche", "laid", "laide", "bete");
+        negative(-0.75, 0.6, "idiot", "idiote", "stupide", "menteur", "menteuse", "voleur", "voleuse", "pathetique",
+                "pourri", "pourrie", "degage", "merde", "deteste");
+        negative(-0.85, 0.75, "imbecile", "debile", "cretin", "cretine", "abruti", "abrutie", "hais", "haine");
+        negative(-0.95, 0.9, "con", "conne", "connard", "connasse", "salaud", "salope", "encule", "batard",
+                "crever", "creve", "tuer", "tue", "mort");
+        // English, positive
+        positive(0.3, 0, "hello", "hi", "hey", "welcome", "sorry", "please");
+        positive(0.6, 0.1, "thanks", "thank", "thx", "nice", "kind", "glad", "happy");
+        positive(0.75, 0.1, "great", "perfect", "beautiful", "smart", "brave");
+        positive(0.85, 0.1, "awesome", "amazing", "wonderful", "fantastic", "brilliant");
+        positive(0.4, 0, "good", "help");
+        positive(0.15, 0, "ok", "okay", "fine", "accord");
+        positive(0.5, 0.4, "friend", "friends", "dear", "gift", "trust");
+        positive(0.8, 0.7, "love", "adore", "hug", "hugs", "sweet");
+        // English, negative
+        negative(-0.5, 0.1, "bad", "sad", "boring", "annoying");
+        negative(-0.7, 0.4, "terrible", "awful", "worst", "ugly", "useless", "liar", "thief", "loser");
+        negative(-0.8, 0.65, "stupid", "dumb", "moron", "shit", "hate", "pathetic");
+        negative(-0.95, 0.9, "fuck", "fucking", "bitch", "bastard", "asshole", "kill", "die", "dead");
+        // Neutral but known: a message made of these is confidently neutral
+        known("oui", "non", "ouais", "yes", "no", "yeah", "nope", "peut", "etre", "maybe", "quoi", "hein", "hmm",
+                "beaucoup", "much", "lot", "tout", "toi", "moi");
+
+        phrase(-0.8, 0.8, 0, "ta gueule", "ferme la", "fous moi", "shut up", "fuck off", "fuck you");
+        phrase(-0.6, 0.6, 0, "tais toi", "get lost", "go away", "casse toi");
+        phrase(0.75, 0.1, 0, "bien joue", "well done", "good job", "pas mal");
+        phrase(0.8, 0.1, 0.7, "je t aime", "love you", "miss you", "tu me manques");
+
+        for (String w : new String[]{"tres", "vraiment", "tellement", "trop", "hyper", "si", "grave", "carrement",
+                "vachement", "very", "really", "so", "totally", "extremely", "super"}) {
+            MODIFIERS.put(w, 1.5);
+        }
+        for (String w : new String[]{"peu", "plutot", "assez", "presque", "slightly", "bit", "kinda", "somewhat"}) {
+            MODIFIERS.put(w, 0.6);
+        }
+    }
+
+    private LocalSentimentAnalyzer() {
+    }
+
+    /**
+     * Score a message. Pure function of the text; safe from any thread.
+     */
+    public static Result analyze(String message) {
+        MessageAnalyzer.MessageImpact impact = new MessageAnalyzer.MessageImpact();
+        if (message == null || message.isBlank()) return new Result(impact, 1.0);
+
+        String[] tokens = new String[message.length() / 2 + 1];
+        boolean[] shouted = new boolean[tokens.length];
+        int count = tokenize(message, tokens, shouted);
+
+        double positive = 0, negative = 0, aggression = 0, affection = 0;
+        int meaningful = 0, known = 0, negatedHits = 0;
+        int negationLeft = 0;
+        double modifier = 1.0;
+        StringBuilder matched = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            String token = tokens[i];
+            boolean stop = STOPWORDS.contains(token);
+
+            // Phrases first: they carry their own polarity ("pas mal", "ta gueule")
+            Entry entry = null;
+            int span = 1;
+            if (i + 2 < count) entry = PHRASES.get(token + " " + tokens[i + 1] + " " + tokens[i + 2]);
+            if (entry != null) span = 3;
+            if (entry == null && i + 1 < count) {
+                entry = PHRASES.get(token + " " + tokens[i + 1]);
+                if (entry != null) span = 2;
+            }
+
+            if (entry == null) {
+                if (NEGATORS.contains(token)) {
+                    // "pas" after "ne" is the same negation: the scope restarts, nothing adds up
+                    negationLeft = NEGATION_SCOPE;
+                    meaningful++;
+                    known++;
+                    continue;
+                }
+                Double mod = MODIFIERS.get(token);
+                if (mod != null && nextSentiment(tokens, i + 1, count)) {
+                    // Applies to the next sentiment word ("vraiment un idiot")
+                    modifier *= mod;
+                    meaningful++;
+                    known++;
+                    continue;
+                }
+                // A dangling modifier is read as a word: "Super !" is positive, "C'est trop !" is unknown
+                entry = WORDS.get(token);
+            }
+
+            if (entry == null) {
+                if (!stop) meaningful++;
+                if (negationLeft > 0) negationLeft--;
+                continue;
+            }
+
+            meaningful++;
+            known++;
+            double valence = entry.valence * modifier;
+            double aggr = entry.aggression * modifier;
+            double aff = entry.affection * modifier;
+            if (shouted[i]) {
+                valence *= 1.3;
+                aggr = Math.max(aggr, valence < 0 ? 0.5 : 0.0) * 1.3;
+            }
+            if (negationLeft > 0 && span == 1 && entry.valence != 0) {
+                valence *= NEGATED_VALENCE;
+                aggr *= NEGATED_AGGRESSION;
+                aff = 0;
+                negatedHits++;
+                negationLeft = 0;
+            }
+            if (valence > 0) positive += valence;
+            if (valence < 0) negative -= valence;
+            aggression = Math.max(aggression, aggr);
+            affection = Math.max(affection, aff);
+            if (entry.valence != 0) {
+                if (matched.length() > 0) matched.append(", ");
+                for (int k = 0; k < span; k++) matched.append(k > 0 ? " " : "").append(tokens[i + k]);
+            }
+
+            modifier = 1.0;
+            i += span - 1;
+        }
+
+        double emphasis = 1.0 + 0.1 * Math.min(3, countChar(message, '!'));
+        positive = clamp(positive * emphasis, 0, 1);
+        negative = clamp(negative * emphasis, 0, 1);
+        aggression = clamp(aggression * (negative > 0 ? emphasis : 1.0), 0, 1);
+
+        impact.positiveImpact = positive;
+        impact.negativeImpact = negative;
+        impact.affectionImpact = clamp(affection, 0, 1);
+        impact.aggressionImpact = aggression;
+        impact.overallSentiment = clamp(positive - negative, -1, 1);
+        impact.reasoning = matched.length() > 0 ? "Analyse locale: " + matched : "Analyse locale: neutre";
+
+        double confidence;
+        if (meaningful == 0) {
+            // Only stopwords, punctuation or emojis: nothing to read, let the LLM decide if it matters
+            confidence = count == 0 ? 0.3 : 0.8;
+        } else {
+            confidence = 0.3 + 0.7 * ((double) known / meaningful);
+            if (positive > 0 && negative > 0) confidence -= 0.3; // Mixed: sarcasm, contrast, "merci... connard"
+            if (negatedHits > 0) confidence -= 0.15;
+            if (message.indexOf('?') >= 0 && impact.overallSentiment != 0) confidence -= 0.1;
+        }
+        return new Result(impact, clamp(confidence, 0, 1));
+    }
+
+    /**
+     * The local result was used as is.
+     */
+    static void recordLocalDecision() {
+        localDecisions.incrementAndGet();
+    }
+
+    /**
+     * The LLM was asked because the local confidence was too low.
+     */
+    static void recordEscalation() {
+        escalations.incrementAndGet();
+    }
+
+    /**
+     * Both tiers scored the same message: same sign (with a dead zone around neutral) counts as agreement.
+     */
+    static void recordAgreement(Result local, MessageAnalyzer.MessageImpact llm) {
+        int bucket = Math.min(BUCKETS - 1, (int) (local.confidence() * BUCKETS));
+        compared.incrementAndGet(bucket);
+        if (polarity(local.impact().overallSentiment) == polarity(llm.overallSentiment)) {
+            agreed.incrementAndGet(bucket);
+        }
+        absDeltaMillis.addAndGet(Math.round(1000 * Math.abs(local.impact().overallSentiment - llm.overallSentiment)));
+    }
+
+    /**
+     * Human-readable metrics: how many analyses stayed local, and agreement with the LLM per confidence bucket.
+     */
+    public static String getStats() {
+        long total = 0, ok = 0;
+        StringBuilder buckets = new StringBuilder();
+        for (int b = 0; b < BUCKETS; b++) {
+            long n = compared.get(b);
+            total += n;
+            ok += agreed.get(b);
+            if (n == 0) continue;
+            buckets.append(String.format(" [%.1f-%.1f]=%d/%d", (double) b / BUCKETS, (double) (b + 1) / BUCKETS, agreed.get(b), n));
+        }
+        return String.format("Local sentiment: %d local, %d escalated; agreement with LLM %d/%d (mean |Δ|=%.2f)%s",
+                localDecisions.get(), escalations.get(), ok, total,
+                total == 0 ? 0.0 : absDeltaMillis.get() / 1000.0 / total, buckets);
+    }
+
+    // Lowercase accent-free words; apostrophes and hyphens split ("t'aime" -> "t", "aime")
+    private static int tokenize(String message, String[] tokens, boolean[] shouted) {
+        int count = 0;
+        StringBuilder word = new StringBuilder();
+        int upper = 0;
+        for (int i = 0, n = message.length(); i <= n; i++) {
+            char c = i < n ? message.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (Character.isUpperCase(c)) upper++;
+                word.append(fold(Character.toLowerCase(c)));
+                continue;
+            }
+            if (word.length() > 0 && count < tokens.length) {
+                tokens[count] = word.toString();
+                shouted[count] = word.length() >= 3 && upper == word.length();
+                count++;
+            }
+            word.setLength(0);
+            upper = 0;
+        }
+        return count;
+    }
+
+    // Accent folding for French letters (no Normalizer allocation per word)
+    private static char fold(char c) {
+        switch (c) {
+            case 'à': case 'â': case 'ä': return 'a';
+            case 'é': case 'è': case 'ê': case 'ë': return 'e';
+            case 'î': case 'ï': return 'i';
+            case 'ô': case 'ö': return 'o';
+            case 'ù': case 'û': case 'ü': return 'u';
+            case 'ç': return 'c';
+            case 'œ': return 'o';
+            default: return c;
+        }
+    }
+
+    // Next non-stopword token carries sentiment (or is another modifier / a negator)
+    private static boolean nextSentiment(String[] tokens, int from, int count) {
+        for (int i = from; i < count; i++) {
+            if (STOPWORDS.contains(tokens[i])) continue;
+            Entry e = WORDS.get(tokens[i]);
+            return (e != null && e.valence != 0) || MODIFIERS.containsKey(tokens[i]) || NEGATORS.contains(tokens[i]);
+        }
+        return false;
+    }
+
+    private static int polarity(double sentiment) {
+        return sentiment > AGREEMENT_DEAD_ZONE ? 1 : sentiment < -AGREEMENT_DEAD_ZONE ? -1 : 0;
+    }
+
+    private static int countChar(String s, char c) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) == c) n++;
+        return n;
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private static void positive(double valence, double affection, String... words) {
+        for (String w : words) WORDS.put(w, new Entry(valence, 0, affection));
+    }
+
+    private static void negative(double valence, double aggression, String... words) {
+        for (String w : words) WORDS.put(w, new Entry(valence, aggression, 0));
+    }
+
+    private static void known(String... words) {
+        for (String w : words) WORDS.putIfAbsent(w, new Entry(0, 0, 0));
+    }
+
+    private static void phrase(double valence, double aggression, double affection, String... phrases) {
+        for (String p : phrases) PHRASES.put(p, new Entry(valence, aggression, affection));
+    }
+}
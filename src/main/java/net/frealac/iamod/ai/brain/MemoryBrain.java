@@ -2,6 +2,8 @@ package net.frealac.iamod.ai.brain;
 
 import net.frealac.iamod.IAMOD;
 import net.frealac.iamod.ai.memory.Memory;
+import net.frealac.iamod.ai.memory.MemoryTextIndex;
+import net.frealac.iamod.ai.memory.TopKSelector;
 import net.frealac.iamod.ai.memory.VillagerMemory;
 
 import java.util.List;
@@ -94,51 +96,45 @@ public class MemoryBrain extends BrainModule {
         if (shouldReflect) {
             IAMOD.LOGGER.info("🧠💭 MemoryBrain: Triggering reflection (memories={}, hours={})",
                 memoriesSinceLastReflection, timeSinceLastReflection / (1000.0 * 60.0 * 60.0));
-            generateReflections();
+            ReflectionWorker.request(this, currentPlayerUuid);
             memoriesSinceLastReflection = 0;
             lastReflectionTime = currentTime;
         }
     }
 
     /**
-     * STANFORD GENERATIVE AGENTS: Generate reflections from recent memories
+     * STANFORD GENERATIVE AGENTS: Prompt for reflections on recent memories with a player
+     * (sent by {@link ReflectionWorker}, off this thread)
      *
      * Process:
      * 1. Retrieve recent high-importance memories (last 20)
      * 2. Send to LLM (gpt-4o-mini) for synthesis
      * 3. LLM generates high-level conclusions
-     * 4. Store reflections as new memories
+     * 4. Store reflections as new memories ({@link #applyReflections}, back on the server thread)
      *
      * Example:
      * Memories: "Player helped me 3 times", "Player gave me bread", "Player protected me"
      * Reflection: "This player is trustworthy and kind - they consistently help me"
+     *
+     * @return the prompt, or null when there is nothing to reflect on
      */
-    private void generateReflections() {
-        if (currentPlayerUuid == null) {
+    String buildReflectionPrompt(UUID playerUuid) {
+        if (playerUuid == null) {
             IAMOD.LOGGER.warn("🧠 MemoryBrain: Cannot generate reflection without player context");
-            return;
+            return null;
         }
 
         // Get recent important memories with player
-        List<Memory> recentMemories = memorySystem.getMemoriesWithPlayer(currentPlayerUuid);
+        List<Memory> recentMemories = memorySystem.getMemoriesWithPlayer(playerUuid);
         if (recentMemories.isEmpty()) {
             IAMOD.LOGGER.debug("🧠 MemoryBrain: No memories to reflect on");
-            return;
+            return null;
         }
 
-        // Sort by importance * recency to get most significant recent memories
-        recentMemories.sort((m1, m2) -> {
-            double score1 = m1.getWeightedImportance();
-            double score2 = m2.getWeightedImportance();
-            return Double.compare(score2, score1); // Descending
-        });
-
-        // Take top 20 most significant memories
-        List<Memory> topMemories = recentMemories.stream()
-            .limit(20)
-            .toList();
+        // Take top 20 most significant memories (importance * strength * recency)
+        List<Memory> topMemories = TopKSelector.top(recentMemories, 20, Memory::getWeightedImportance);
 
-        IAMOD.LOGGER.info("🧠💭 MemoryBrain: Generating reflection from {} memories", topMemories.size());
+        IAMOD.LOGGER.info("🧠💭 MemoryBrain: Queuing reflection from {} memories", topMemories.size());
 
         // Build reflection prompt
         StringBuilder reflectionPrompt = new StringBuilder();
@@ -163,63 +159,31 @@ public class MemoryBrain extends BrainModule {
 
         reflectionPrompt.append("Generate 1-3 reflections as a JSON array:\n");
         reflectionPrompt.append("[\"reflection 1\", \"reflection 2\", \"reflection 3\"]\n");
+        return reflectionPrompt.toString();
+    }
 
-        // Call LLM to generate reflections
-        try {
-            // Build OpenAI request payload
-            com.google.gson.JsonObject payload = new com.google.gson.JsonObject();
-            com.google.gson.JsonArray messages = new com.google.gson.JsonArray();
-
-            // System message
-            com.google.gson.JsonObject systemMsg = new com.google.gson.JsonObject();
-            systemMsg.addProperty("role", "system");
-            systemMsg.addProperty("content", "You are a memory reflection system. Synthesize memories into high-level conclusions.");
-            messages.add(systemMsg);
-
-            // User message with reflection prompt
-            com.google.gson.JsonObject userMsg = new com.google.gson.JsonObject();
-            userMsg.addProperty("role", "user");
-            userMsg.addProperty("content", reflectionPrompt.toString());
-            messages.add(userMsg);
-
-            payload.add("messages", messages);
-            payload.addProperty("model", BrainModelConfig.getModel("MemoryBrain"));
-            payload.addProperty("temperature", BrainModelConfig.getTemperature("MemoryBrain"));
-            payload.addProperty("max_tokens", BrainModelConfig.getMaxTokens("MemoryBrain"));
-
-            // Call OpenAI
-            net.frealac.iamod.ai.openai.OpenAiClient client = new net.frealac.iamod.ai.openai.OpenAiClient();
-            String responseBody = client.sendChatRequest(payload);
-
-            // Extract content from response
-            String reflectionResponse = extractContentFromResponse(responseBody);
-
-            // Parse reflections from response
-            List<String> reflections = parseReflectionsFromResponse(reflectionResponse);
-
-            // Store each reflection as a new high-importance memory
-            for (String reflection : reflections) {
-                Memory reflectionMemory = new Memory(
-                    net.frealac.iamod.ai.memory.MemoryType.REFLECTION,
-                    reflection,
-                    currentPlayerUuid,
-                    "Reflection"
-                );
-                reflectionMemory.setImportance(0.9); // High importance for reflections
-                memorySystem.addMemory(reflectionMemory);
-
-                IAMOD.LOGGER.info("🧠💭 Generated reflection: {}", reflection);
-            }
-
-        } catch (Exception e) {
-            IAMOD.LOGGER.error("🧠 MemoryBrain: Failed to generate reflections", e);
+    /**
+     * Store each reflection as a new high-importance memory. Runs on the server thread.
+     */
+    void applyReflections(UUID playerUuid, List<String> reflections) {
+        for (String reflection : reflections) {
+            Memory reflectionMemory = new Memory(
+                net.frealac.iamod.ai.memory.MemoryType.REFLECTION,
+                reflection,
+                playerUuid,
+                "Reflection"
+            );
+            reflectionMemory.setImportance(0.9); // High importance for reflections
+            memorySystem.addMemory(reflectionMemory);
+
+            IAMOD.LOGGER.info("🧠💭 Generated reflection: {}", reflection);
         }
     }
 
     /**
      * Extract content from OpenAI response.
      */
-    private String extractContentFromResponse(String json) throws java.io.IOException {
+    static String extractContentFromResponse(String json) throws java.io.IOException {
         try {
             com.google.gson.JsonObject obj = com.google.gson.JsonParser.parseString(json).getAsJsonObject();
             com.google.gson.JsonArray choices = obj.getAsJsonArray("choices");
@@ -245,7 +209,7 @@ public class MemoryBrain extends BrainModule {
      * Parse reflections from LLM response.
      * Expects JSON array format: ["reflection 1", "reflection 2"]
      */
-    private List<String> parseReflectionsFromResponse(String response) {
+    static List<String> parseReflectionsFromResponse(String response) {
         try {
             // Simple JSON array parsing
             response = response.trim();
@@ -288,19 +252,20 @@ public class MemoryBrain extends BrainModule {
         return memorySystem.getMemoriesWithPlayer(playerUuid);
     }
 
+    /**
+     * Keyword index over all memories, for retrieval relevance.
+     */
+    public MemoryTextIndex getMemoryTextIndex() {
+        return memorySystem.getTextIndex();
+    }
+
     /**
      * Check if villager remembers being hit by this player.
      */
     public boolean remembersBeingHit(UUID playerUuid) {
         if (playerUuid == null) return false;
 
-        List<Memory> memories = memorySystem.getMemoriesWithPlayer(playerUuid);
-        for (Memory memory : memories) {
-            if (memory.getType() == net.frealac.iamod.ai.memory.MemoryType.WAS_HIT) {
-                return true;
-            }
-        }
-        return false;
+        return memorySystem.hasMemoryAboutPlayer(playerUuid, net.frealac.iamod.ai.memory.MemoryType.WAS_HIT);
     }
 
     /**
@@ -309,13 +274,7 @@ public class MemoryBrain extends BrainModule {
     public boolean remembersGiftFrom(UUID playerUuid) {
         if (playerUuid == null) return false;
 
-        List<Memory> memories = memorySystem.getMemoriesWithPlayer(playerUuid);
-        for (Memory memory : memories) {
-            if (memory.getType() == net.frealac.iamod.ai.memory.MemoryType.GIFT_RECEIVED) {
-                return true;
-            }
-        }
-        return false;
+        return memorySystem.hasMemoryAboutPlayer(playerUuid, net.frealac.iamod.ai.memory.MemoryType.GIFT_RECEIVED);
     }
 
     /**
@@ -333,12 +292,19 @@ public class MemoryBrain extends BrainModule {
         return memorySystem.getMemoryCount();
     }
 
+    /**
+     * Changes whenever the memories change (see VillagerMemory#getModificationCount).
+     */
+    public int getMemoryVersion() {
+        return memorySystem.getModificationCount();
+    }
+
     @Override
     public String getStateDescription() {
         return String.format(
             "Total memories: %d, Current player memories: %d, Current player sentiment: %.2f",
             memorySystem.getMemoryCount(),
-            currentPlayerUuid != null ? memorySystem.getMemoriesWithPlayer(currentPlayerUuid).size() : 0,
+            currentPlayerUuid != null ? memorySystem.countMemoriesAboutPlayer(currentPlayerUuid) : 0,
             currentPlayerUuid != null ? memorySystem.getSentimentTowardsPlayer(currentPlayerUuid) : 0.0
         );
     }
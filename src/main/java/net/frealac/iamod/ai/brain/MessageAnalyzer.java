@@ -1,24 +1,177 @@
 package net.frealac.iamod.ai.brain;
 
 import com.google.gson.*;
+import net.frealac.iamod.Config;
 import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.ChatMessage;
+import net.frealac.iamod.ai.memory.Memory;
+import net.frealac.iamod.ai.memory.MemoryType;
+import net.frealac.iamod.ai.memory.VillagerMemory;
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.ChatRequestWriter;
+import net.frealac.iamod.ai.openai.LlmScheduler;
 import net.frealac.iamod.ai.openai.OpenAiClient;
+import net.frealac.iamod.ai.openai.TokenEstimator;
+import net.frealac.iamod.common.story.VillagerStory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Analyzes player messages using AI to determine their emotional impact.
- * Uses gpt-3.5-turbo for FAST analysis with STRICT JSON format.
+ * Analyzes player messages using AI to determine their emotional impact, with STRICT JSON format.
  *
- * This is a REAL AI brain that understands context, not keyword matching!
+ * ROUTING, cheapest tier first:
+ * - LOCAL: obvious messages ("bonjour", "merci", insults) are scored by {@link LocalSentimentAnalyzer}, no network
+ * - CHEAP: otherwise the first model of the "MessageAnalyzer" cascade, picked by {@link ModelRouter} from the message size
+ * - FULL: an unreadable answer, or one below routingMinConfidence, is asked again to the next model of the cascade
+ * Repeated messages are answered by {@link AnalysisCache}; analyses arriving together share one request ({@link AnalysisBatcher}).
  */
 public class MessageAnalyzer {
 
-    private static final OpenAiClient client = new OpenAiClient();
+    private static final OpenAiClient client = new OpenAiClient(LlmScheduler.Lane.ANALYSIS);
     private static final Gson gson = new GsonBuilder().create();
 
-    // Model for message analysis (fast and cheap)
-    private static final String ANALYSIS_MODEL = "gpt-3.5-turbo";
+    // Models come from the "MessageAnalyzer" cascade (see BrainModelConfig / ModelRouter)
+    private static final String BRAIN = "MessageAnalyzer";
+
+    /**
+     * Analyze a message off the server thread.
+     * The returned future completes normally (neutral impact on failure), on a transport thread:
+     * callers must hop back to the server thread before touching brain, memory or psychology state.
+     *
+     * @param message The player's message
+     * @param currentMood Current villager mood (-1.0 to 1.0) for mood-congruent processing
+     * @param currentStress Current villager stress (0.0 to 1.0)
+     */
+    public static CompletableFuture<MessageImpact> analyzeMessageAsync(String message, double currentMood, double currentStress) {
+        return analyzeMessageAsync(message, currentMood, currentStress, CancellationToken.NONE);
+    }
+
+    /**
+     * Analyze a message off the server thread, tied to a conversation.
+     * If the token is cancelled (dialog closed) the HTTP exchange is aborted and the
+     * future completes with a CancellationException instead of a neutral impact.
+     */
+    public static CompletableFuture<MessageImpact> analyzeMessageAsync(String message, double currentMood, double currentStress,
+                                                                       CancellationToken token) {
+        if (message == null || message.isEmpty()) {
+            return CompletableFuture.completedFuture(new MessageImpact());
+        }
+
+        // First tier: confident local scoring answers without any network
+        MessageImpact local = analyzeLocally(message);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+
+        // Repeated short phrases ("merci", greetings, insults) resolve without a round trip
+        MessageImpact cached = AnalysisCache.get(message, currentMood, currentStress);
+        if (cached != null) {
+            IAMOD.LOGGER.debug("🧠 MessageAnalyzer: cache hit");
+            cached.route = "cache";
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Analyses arriving together are packed into one request
+        if (Config.analysisBatchWindowMs > 0) {
+            return AnalysisBatcher.submit(message, currentMood, currentStress, token);
+        }
+        return analyzeSingleAsync(message, currentMood, currentStress, token);
+    }
+
+    /**
+     * First tier (see {@link LocalSentimentAnalyzer}): the local impact when it is confident enough,
+     * null when the message has to go to the LLM.
+     */
+    public static MessageImpact analyzeLocally(String message) {
+        if (!Config.analysisLocalTier || message == null || message.isEmpty()) return null;
+        LocalSentimentAnalyzer.Result local = LocalSentimentAnalyzer.analyze(message);
+        if (local.confidence() < Config.analysisLocalConfidence) {
+            LocalSentimentAnalyzer.recordEscalation();
+            return null;
+        }
+        LocalSentimentAnalyzer.recordLocalDecision();
+        IAMOD.LOGGER.debug("🧠 MessageAnalyzer: local tier (confidence {}): sentiment={}",
+            local.confidence(), local.impact().overallSentiment);
+        MessageImpact impact = local.impact();
+        impact.route = "local";
+        return impact;
+    }
+
+    /**
+     * An impact answered by the LLM: cache it and compare it with the local tier.
+     */
+    static void recordLlmImpact(String message, double currentMood, double currentStress, MessageImpact impact) {
+        AnalysisCache.put(message, currentMood, currentStress, impact);
+        LocalSentimentAnalyzer.recordAgreement(LocalSentimentAnalyzer.analyze(message), impact);
+    }
+
+    /**
+     * One analysis (no cache lookup, no batching), along the model cascade:
+     * an unreadable or unsure answer is asked again to the next model.
+     */
+    static CompletableFuture<MessageImpact> analyzeSingleAsync(String message, double currentMood, double currentStress,
+                                                               CancellationToken token) {
+        IAMOD.LOGGER.debug("🧠 MessageAnalyzer: Analyzing with AI...");
+        ModelRouter.Route route = ModelRouter.route(BRAIN, TokenEstimator.estimate(message));
+        return attempt(route, message, currentMood, currentStress, token, null)
+                .exceptionally(ex -> {
+                    if (CancellationToken.isCancellation(ex)) {
+                        throw new CompletionException(CancellationToken.cancelledException());
+                    }
+                    IAMOD.LOGGER.error("Failed to analyze message with AI", ex);
+                    return new MessageImpact(); // Fallback to neutral
+                });
+    }
+
+    // One step of the cascade; best = unsure answer of a previous step (labelled with the route that gave it),
+    // used if nothing better comes, including when this step fails
+    private static CompletableFuture<MessageImpact> attempt(ModelRouter.Route route, String message,
+                                                            double currentMood, double currentStress,
+                                                            CancellationToken token, MessageImpact best) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<MessageImpact> result = client.sendChatRequestAsync(buildAnalysisPayload(route.model(), message, currentMood, currentStress), token)
+                .whenComplete((body, ex) -> {
+                    if (ex != null && !CancellationToken.isCancellation(ex)) {
+                        ModelRouter.recordCall(route, elapsedMs(startNanos), null, false);
+                    }
+                })
+                .thenCompose(responseBody -> {
+                    JsonObject response = parseResponse(responseBody);
+                    MessageImpact impact = response != null ? tryParseImpact(extractContentOrNull(response)) : null;
+                    ModelRouter.recordCall(route, elapsedMs(startNanos), response, impact != null);
+
+                    String why = impact == null ? "parse"
+                            : impact.confidence < Config.routingMinConfidence ? "confiance" : null;
+                    if (impact != null) impact.route = route.describe();
+                    ModelRouter.Route next = why != null ? ModelRouter.escalate(route, why) : null;
+                    if (next != null) {
+                        return attempt(next, message, currentMood, currentStress, token, impact != null ? impact : best);
+                    }
+
+                    if (impact == null) impact = best;
+                    if (impact == null) return CompletableFuture.completedFuture(new MessageImpact());
+                    recordLlmImpact(message, currentMood, currentStress, impact);
+                    return CompletableFuture.completedFuture(impact);
+                });
+        if (best == null) return result;
+
+        return result.exceptionally(ex -> {
+            if (CancellationToken.isCancellation(ex)) {
+                throw new CompletionException(CancellationToken.cancelledException());
+            }
+            IAMOD.LOGGER.warn("🧠 MessageAnalyzer: escalation failed, keeping the answer of {}", best.route, ex);
+            recordLlmImpact(message, currentMood, currentStress, best);
+            return best;
+        });
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
+    }
 
     /**
      * Analyze a message using AI to determine its emotional impact.
@@ -35,34 +188,20 @@ public class MessageAnalyzer {
             return new MessageImpact();
         }
 
-        try {
-            JsonObject payload = new JsonObject();
-            payload.addProperty("model", ANALYSIS_MODEL);
-
-            JsonArray messages = new JsonArray();
-
-            // System prompt for analysis WITH mood-congruent context
-            JsonObject system = new JsonObject();
-            system.addProperty("role", "system");
-            system.addProperty("content", buildAnalysisPrompt(currentMood, currentStress));
-            messages.add(system);
-
-            // User message to analyze
-            JsonObject user = new JsonObject();
-            user.addProperty("role", "user");
-            user.addProperty("content", message);
-            messages.add(user);
-
-            payload.add("messages", messages);
+        MessageImpact local = analyzeLocally(message);
+        if (local != null) {
+            return local;
+        }
 
-            // Use config from BrainModelConfig
-            payload.addProperty("temperature", BrainModelConfig.getTemperature("MessageAnalyzer"));
-            payload.addProperty("max_tokens", BrainModelConfig.getMaxTokens("MessageAnalyzer"));
+        MessageImpact cached = AnalysisCache.get(message, currentMood, currentStress);
+        if (cached != null) {
+            cached.route = "cache";
+            return cached;
+        }
 
-            // STRICT JSON mode
-            JsonObject responseFormat = new JsonObject();
-            responseFormat.addProperty("type", "json_object");
-            payload.add("response_format", responseFormat);
+        try {
+            ChatRequestWriter.Body payload = buildAnalysisPayload(
+                ModelRouter.route(BRAIN, TokenEstimator.estimate(message)).model(), message, currentMood, currentStress);
 
             IAMOD.LOGGER.debug("🧠 MessageAnalyzer: Analyzing with AI...");
 
@@ -70,7 +209,7 @@ public class MessageAnalyzer {
             String content = extractContent(responseBody);
 
             // Parse JSON response
-            return parseImpact(content);
+            return parseAndCache(content, message, currentMood, currentStress);
 
         } catch (Exception e) {
             IAMOD.LOGGER.error("Failed to analyze message with AI", e);
@@ -78,6 +217,76 @@ public class MessageAnalyzer {
         }
     }
 
+    /**
+     * Analyze several independent messages in ONE request.
+     * The list holds one impact per item, in order; null where the answer is missing or malformed.
+     */
+    static CompletableFuture<List<MessageImpact>> analyzeBatchAsync(List<AnalysisBatcher.Item> items) {
+        // Routed on the longest message; items left unanswered go through the single-analysis cascade
+        int longest = 0;
+        for (AnalysisBatcher.Item item : items) longest = Math.max(longest, TokenEstimator.estimate(item.message()));
+        ModelRouter.Route route = ModelRouter.route(BRAIN, longest);
+        long startNanos = System.nanoTime();
+        return client.sendChatRequestAsync(buildBatchAnalysisPayload(route.model(), items), CancellationToken.NONE)
+                .whenComplete((body, ex) -> {
+                    if (ex != null) ModelRouter.recordCall(route, elapsedMs(startNanos), null, false);
+                })
+                .thenApply(responseBody -> {
+                    List<MessageImpact> impacts = new ArrayList<>(items.size());
+                    JsonObject response = parseResponse(responseBody);
+                    try {
+                        JsonArray results = JsonParser.parseString(extractContentOrNull(response))
+                                .getAsJsonObject().getAsJsonArray("results");
+                        for (int i = 0; i < items.size(); i++) {
+                            boolean present = results != null && i < results.size() && results.get(i).isJsonObject();
+                            MessageImpact impact = present ? tryParseImpact(results.get(i).toString()) : null;
+                            if (impact != null) impact.route = route.describe() + " ×" + items.size();
+                            impacts.add(impact);
+                        }
+                    } catch (Exception e) {
+                        IAMOD.LOGGER.error("Failed to parse batched impact JSON", e);
+                        while (impacts.size() < items.size()) impacts.add(null);
+                    }
+                    ModelRouter.recordCall(route, elapsedMs(startNanos), response, !impacts.contains(null));
+                    return impacts;
+                });
+    }
+
+    /**
+     * Build one payload for a batch: each message comes with its own villager's emotional state.
+     */
+    private static ChatRequestWriter.Body buildBatchAnalysisPayload(String model, List<AnalysisBatcher.Item> items) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("Tu es un analyseur d'émotions. Analyse CHAQUE message indépendamment et réponds en JSON STRICT.\n");
+        prompt.append("Chaque message s'adresse à un villageois différent: applique le biais émotionnel de CE villageois.\n\n");
+
+        for (int i = 0; i < items.size(); i++) {
+            AnalysisBatcher.Item item = items.get(i);
+            prompt.append("##### MESSAGE ").append(i + 1).append(" #####\n");
+            appendMoodContext(prompt, item.currentMood(), item.currentStress());
+            prompt.append("Message du joueur: ").append(new JsonPrimitive(item.message())).append("\n\n");
+        }
+
+        appendImpactSchema(prompt);
+        prompt.append("\n\nRéponds avec {\"results\": [...]}: un objet au format ci-dessus par message, ");
+        prompt.append("dans le même ordre, exactement ").append(items.size()).append(" éléments.");
+
+        return ChatRequestWriter.chat(model, List.of(ChatMessage.system(prompt.toString())),
+                BrainModelConfig.getTemperature("MessageAnalyzer"),
+                BrainModelConfig.getMaxTokens("MessageAnalyzer") * items.size(), false, true);
+    }
+
+    /**
+     * Build the chat-completions payload for one analysis (STRICT JSON mode).
+     */
+    private static ChatRequestWriter.Body buildAnalysisPayload(String model, String message, double currentMood, double currentStress) {
+        // System prompt WITH mood-congruent context, then the message to analyze
+        return ChatRequestWriter.chat(model,
+                List.of(ChatMessage.system(buildAnalysisPrompt(currentMood, currentStress)), ChatMessage.user(message)),
+                BrainModelConfig.getTemperature("MessageAnalyzer"), BrainModelConfig.getMaxTokens("MessageAnalyzer"),
+                false, true);
+    }
+
     /**
      * Build analysis system prompt with MOOD-CONGRUENT PROCESSING.
      * SCIENTIFIC BASIS: Current emotional state biases interpretation of new events.
@@ -90,6 +299,55 @@ public class MessageAnalyzer {
 
         prompt.append("Tu es un analyseur d'émotions. Analyse le message du joueur et réponds en JSON STRICT.\n\n");
 
+        appendMoodContext(prompt, currentMood, currentStress);
+
+        prompt.append("=== INSTRUCTIONS D'ANALYSE ===\n");
+        prompt.append("Analyse le message EN TENANT COMPTE de l'état émotionnel actuel.\n");
+        prompt.append("Si le villageois est en colère, un compliment peut être perçu comme sarcastique.\n");
+        prompt.append("Si stressé, un message neutre peut sembler menaçant.\n\n");
+
+        appendImpactSchema(prompt);
+
+        return prompt.toString();
+    }
+
+    /**
+     * Instructions for SINGLE-CALL mode: the villager reply itself ends with the impact block,
+     * so no separate analysis request is needed. Sent as a trailing system message each turn.
+     *
+     * @param currentMood Current villager mood (-1.0 to 1.0) for mood-congruent processing
+     * @param currentStress Current villager stress (0.0 to 1.0)
+     */
+    public static String buildInlineImpactInstructions(double currentMood, double currentStress) {
+        StringBuilder prompt = new StringBuilder();
+
+        prompt.append("=== ANALYSE ÉMOTIONNELLE (INVISIBLE POUR LE JOUEUR) ===\n");
+        prompt.append("Réponds d'abord normalement au joueur, en restant dans ton personnage.\n");
+        prompt.append("Puis, tout à la fin, ajoute une ligne ").append(ImpactTailFilter.MARKER)
+              .append(" suivie d'un objet JSON compact (une seule ligne) décrivant l'impact du DERNIER message du joueur sur toi.\n");
+        prompt.append("N'écris rien après le JSON. Ne mentionne jamais cette analyse dans ta réponse.\n\n");
+
+        appendMoodContext(prompt, currentMood, currentStress);
+        appendImpactSchema(prompt);
+
+        return prompt.toString();
+    }
+
+    /**
+     * Parse the impact block produced in SINGLE-CALL mode.
+     * Returns null when the block is missing or malformed, so callers can fall back to a separate analysis.
+     */
+    public static MessageImpact parseInlineImpact(String jsonContent, String message) {
+        if (jsonContent == null || jsonContent.isBlank()) return null;
+        MessageImpact impact = tryParseImpact(jsonContent);
+        if (impact != null) {
+            impact.route = Config.openAiModel + " (inline)";
+            LocalSentimentAnalyzer.recordAgreement(LocalSentimentAnalyzer.analyze(message), impact);
+        }
+        return impact;
+    }
+
+    private static void appendMoodContext(StringBuilder prompt, double currentMood, double currentStress) {
         // MOOD-CONGRUENT PROCESSING CONTEXT
         prompt.append("=== ÉTAT ÉMOTIONNEL ACTUEL DU VILLAGEOIS ===\n");
         prompt.append(String.format("Humeur actuelle: %.2f ", currentMood));
@@ -114,18 +372,16 @@ public class MessageAnalyzer {
         } else {
             prompt.append("(Calme)\n\n");
         }
+    }
 
-        prompt.append("=== INSTRUCTIONS D'ANALYSE ===\n");
-        prompt.append("Analyse le message EN TENANT COMPTE de l'état émotionnel actuel.\n");
-        prompt.append("Si le villageois est en colère, un compliment peut être perçu comme sarcastique.\n");
-        prompt.append("Si stressé, un message neutre peut sembler menaçant.\n\n");
-
+    private static void appendImpactSchema(StringBuilder prompt) {
         prompt.append("Détecte:\n");
         prompt.append("- positiveImpact: 0.0 à 1.0 (compliments, gentillesse)\n");
         prompt.append("- negativeImpact: 0.0 à 1.0 (insultes, méchanceté)\n");
         prompt.append("- affectionImpact: 0.0 à 1.0 (amour, amitié, affection)\n");
         prompt.append("- aggressionImpact: 0.0 à 1.0 (violence, menaces, agression)\n");
-        prompt.append("- overallSentiment: -1.0 à 1.0 (sentiment global APRÈS biais émotionnel)\n\n");
+        prompt.append("- overallSentiment: -1.0 à 1.0 (sentiment global APRÈS biais émotionnel)\n");
+        prompt.append("- confidence: 0.0 à 1.0 (ta certitude: bas si ambigu, ironique ou hors contexte)\n\n");
 
         prompt.append("Format JSON:\n");
         prompt.append("{\n");
@@ -134,10 +390,9 @@ public class MessageAnalyzer {
         prompt.append("  \"affectionImpact\": 0.3,\n");
         prompt.append("  \"aggressionImpact\": 0.0,\n");
         prompt.append("  \"overallSentiment\": 0.8,\n");
+        prompt.append("  \"confidence\": 0.9,\n");
         prompt.append("  \"reasoning\": \"Message positif mais villageois en colère donc perçu comme sarcastique\"\n");
         prompt.append("}");
-
-        return prompt.toString();
     }
 
     /**
@@ -152,7 +407,14 @@ public class MessageAnalyzer {
      */
     private static String extractContent(String json) throws IOException {
         try {
-            JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
+            return extractContent(JsonParser.parseString(json).getAsJsonObject());
+        } catch (RuntimeException ex) {
+            throw new IOException("Cannot parse OpenAI response", ex);
+        }
+    }
+
+    private static String extractContent(JsonObject obj) throws IOException {
+        try {
             JsonArray choices = obj.getAsJsonArray("choices");
             if (choices == null || choices.isEmpty()) {
                 throw new IOException("OpenAI response without 'choices'");
@@ -173,9 +435,45 @@ public class MessageAnalyzer {
     }
 
     /**
-     * Parse impact from JSON response.
+     * Response body as JSON, or null if it is not a JSON object.
+     */
+    private static JsonObject parseResponse(String body) {
+        try {
+            return JsonParser.parseString(body).getAsJsonObject();
+        } catch (RuntimeException e) {
+            IAMOD.LOGGER.error("Cannot parse OpenAI response: {}", body, e);
+            return null;
+        }
+    }
+
+    /**
+     * Message content of a parsed response, or null when it has none.
      */
-    private static MessageImpact parseImpact(String jsonContent) {
+    private static String extractContentOrNull(JsonObject response) {
+        if (response == null) return null;
+        try {
+            return extractContent(response);
+        } catch (IOException e) {
+            IAMOD.LOGGER.error("Unusable OpenAI response: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parse impact from JSON response; only a successfully parsed impact is cached.
+     */
+    private static MessageImpact parseAndCache(String jsonContent, String message, double currentMood, double currentStress) {
+        MessageImpact impact = tryParseImpact(jsonContent);
+        if (impact == null) return new MessageImpact();
+        recordLlmImpact(message, currentMood, currentStress, impact);
+        return impact;
+    }
+
+    /**
+     * Parse impact from JSON, or null if it cannot be parsed.
+     */
+    private static MessageImpact tryParseImpact(String jsonContent) {
+        if (jsonContent == null) return null;
         try {
             JsonObject obj = JsonParser.parseString(jsonContent).getAsJsonObject();
 
@@ -186,6 +484,7 @@ public class MessageAnalyzer {
             impact.aggressionImpact = obj.has("aggressionImpact") ? obj.get("aggressionImpact").getAsDouble() : 0.0;
             impact.overallSentiment = obj.has("overallSentiment") ? obj.get("overallSentiment").getAsDouble() : 0.0;
             impact.reasoning = obj.has("reasoning") ? obj.get("reasoning").getAsString() : "";
+            impact.confidence = obj.has("confidence") ? obj.get("confidence").getAsDouble() : 1.0;
 
             IAMOD.LOGGER.info("🧠 AI Analysis: sentiment={}, positive={}, negative={}, affection={}, aggression={} ({})",
                 impact.overallSentiment, impact.positiveImpact, impact.negativeImpact,
@@ -195,7 +494,7 @@ public class MessageAnalyzer {
 
         } catch (Exception e) {
             IAMOD.LOGGER.error("Failed to parse impact JSON: {}", jsonContent, e);
-            return new MessageImpact();
+            return null;
         }
     }
 
@@ -292,6 +591,55 @@ public class MessageAnalyzer {
         }
     }
 
+    /**
+     * Apply an analyzed impact to the villager: brain signals, then an interaction memory
+     * whose type and emotional weight follow the impact. Must run on the server thread.
+     */
+    public static void applyImpact(MessageImpact impact, VillagerBrainSystem brainSystem, VillagerStory story,
+                                   String message, java.util.UUID playerUuid, String playerName) {
+        // 1. SEND SIGNALS to brain modules based on message impact
+        if (brainSystem != null) {
+            sendBrainSignals(impact, brainSystem, playerUuid);
+        }
+
+        // 2. Add interaction memory based on MESSAGE IMPACT
+        if (story == null) {
+            return;
+        }
+        if (story.interactionMemory == null) {
+            story.interactionMemory = new VillagerMemory();
+        }
+
+        String excerpt = message.substring(0, Math.min(50, message.length()));
+        MemoryType memoryType;
+        String description;
+        double emotionalImpact;
+
+        if (impact.affectionImpact > 0.3 || impact.positiveImpact > 0.3) {
+            memoryType = MemoryType.PLEASANT_CONVERSATION;
+            description = String.format("M'a dit via GUI: '%s' - C'était agréable", excerpt);
+            emotionalImpact = Math.max(impact.positiveImpact, impact.affectionImpact);
+            IAMOD.LOGGER.info("💚 Creating POSITIVE GUI memory (impact={})", emotionalImpact);
+        } else if (impact.aggressionImpact > 0.3 || impact.negativeImpact > 0.3) {
+            memoryType = MemoryType.WAS_INSULTED;
+            description = String.format("M'a dit via GUI: '%s' - C'était désagréable", excerpt);
+            emotionalImpact = -Math.max(impact.negativeImpact, impact.aggressionImpact);
+            IAMOD.LOGGER.info("💔 Creating NEGATIVE GUI memory (impact={})", emotionalImpact);
+        } else {
+            memoryType = MemoryType.GENERAL_INTERACTION;
+            description = String.format("A dit via GUI: '%s'", excerpt);
+            emotionalImpact = impact.overallSentiment * 0.5;
+            IAMOD.LOGGER.info("💬 Creating NEUTRAL GUI memory (impact={})", emotionalImpact);
+        }
+
+        // Create memory with AI-analyzed emotional impact
+        Memory memory = new Memory(memoryType, description, playerUuid, playerName);
+        memory.setEmotionalImpact(emotionalImpact);
+        story.interactionMemory.addMemory(memory);
+
+        IAMOD.LOGGER.info("✓ GUI Memory created, brain modules updated");
+    }
+
     /**
      * Result of AI message analysis.
      */
@@ -302,6 +650,8 @@ public class MessageAnalyzer {
         public double aggressionImpact = 0.0;    // 0.0 à 1.0
         public double overallSentiment = 0.0;    // -1.0 à 1.0
         public String reasoning = "";             // AI reasoning
+        public double confidence = 1.0;           // 0.0 à 1.0, as stated by the analyzer
+        public String route = "";                 // Who answered: "local", "cache", model (+ escalation reason)
 
         /**
          * Check if message has any impact.
@@ -0,0 +1,143 @@
+package net.frealac.iamod.ai.brain;
+
+import com.google.gson.JsonObject;
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routing policy over the model cascades of {@link BrainModelConfig}.
+ *
+ * - Start with the cheapest/fastest model of the brain's cascade
+ * - Long input (> routingLongInputTokens estimated) starts one step up: small models lose the thread
+ * - Escalate one step on parse failure or when the answer's own confidence is below routingMinConfidence
+ * - Transport errors are NOT escalated: a larger model does not fix an outage (see CircuitBreaker)
+ *
+ * Every call is recorded per route (brain + model): calls, failures, latency, tokens and estimated cost.
+ */
+public final class ModelRouter {
+
+    // USD per 1M tokens (input, output), public list prices; unknown models count as free
+    private static final Map<String, double[]> PRICES = Map.of(
+            "gpt-4o-mini", new double[]{0.15, 0.60},
+            "gpt-4o", new double[]{2.50, 10.00},
+            "gpt-4-turbo", new double[]{10.00, 30.00},
+            "gpt-3.5-turbo", new double[]{0.50, 1.50});
+
+    private static final ConcurrentHashMap<String, RouteStats> STATS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> ESCALATIONS = new ConcurrentHashMap<>();
+
+    /**
+     * One step of a brain's cascade, with the reason it was chosen ("" for the default first step).
+     */
+    public record Route(String brain, List<String> cascade, int step, String reason) {
+
+        public String model() {
+            return cascade.get(step);
+        }
+
+        public boolean canEscalate() {
+            return step + 1 < cascade.size();
+        }
+
+        public Route escalate(String why) {
+            return new Route(brain, cascade, step + 1, why);
+        }
+
+        /**
+         * Short label for logs and the debug HUD, e.g. "gpt-4o (parse)".
+         */
+        public String describe() {
+            return reason.isEmpty() ? model() : model() + " (" + reason + ")";
+        }
+    }
+
+    private static final class RouteStats {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong latencyMs = new AtomicLong();
+        final AtomicLong promptTokens = new AtomicLong();
+        final AtomicLong completionTokens = new AtomicLong();
+    }
+
+    private ModelRouter() {
+    }
+
+    /**
+     * First route for a request of this brain.
+     *
+     * @param inputTokens estimated tokens of the variable input (message, transcript...)
+     */
+    public static Route route(String brain, int inputTokens) {
+        List<String> cascade = BrainModelConfig.getCascade(brain);
+        if (cascade.size() > 1 && inputTokens > Config.routingLongInputTokens) {
+            recordEscalation(brain, "long");
+            return new Route(brain, cascade, 1, "long");
+        }
+        return new Route(brain, cascade, 0, "");
+    }
+
+    /**
+     * Next route after an unusable answer, or null at the end of the cascade.
+     */
+    public static Route escalate(Route route, String why) {
+        if (!route.canEscalate()) return null;
+        recordEscalation(route.brain(), why);
+        Route next = route.escalate(why);
+        IAMOD.LOGGER.debug("🔀 {}: {} -> {} ({})", route.brain(), route.model(), next.model(), why);
+        return next;
+    }
+
+    /**
+     * Record one finished call of this route.
+     *
+     * @param response parsed response body (its "usage" block gives the tokens), or null
+     * @param ok false when the answer was unusable or the call failed
+     */
+    public static void recordCall(Route route, long latencyMs, JsonObject response, boolean ok) {
+        RouteStats stats = STATS.computeIfAbsent(route.brain() + " " + route.model(), k -> new RouteStats());
+        stats.calls.incrementAndGet();
+        if (!ok) stats.failures.incrementAndGet();
+        stats.latencyMs.addAndGet(latencyMs);
+        if (response != null && response.has("usage") && response.get("usage").isJsonObject()) {
+            JsonObject usage = response.getAsJsonObject("usage");
+            if (usage.has("prompt_tokens")) stats.promptTokens.addAndGet(usage.get("prompt_tokens").getAsLong());
+            if (usage.has("completion_tokens")) stats.completionTokens.addAndGet(usage.get("completion_tokens").getAsLong());
+        }
+    }
+
+    /**
+     * Human-readable metrics per route, then escalations per reason.
+     */
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder("Routes:");
+        double totalCost = 0;
+        for (Map.Entry<String, RouteStats> e : new TreeMap<>(STATS).entrySet()) {
+            RouteStats s = e.getValue();
+            long calls = s.calls.get();
+            String model = e.getKey().substring(e.getKey().indexOf(' ') + 1);
+            double cost = cost(model, s.promptTokens.get(), s.completionTokens.get());
+            totalCost += cost;
+            sb.append(String.format("\n  %s: %d calls (%d errors), avg %dms, %d+%d tokens, ~$%.4f",
+                    e.getKey(), calls, s.failures.get(), calls == 0 ? 0 : s.latencyMs.get() / calls,
+                    s.promptTokens.get(), s.completionTokens.get(), cost));
+        }
+        sb.append(String.format("\n  Total ~$%.4f, escalations: %s", totalCost, new TreeMap<>(ESCALATIONS)));
+        return sb.toString();
+    }
+
+    private static void recordEscalation(String brain, String why) {
+        ESCALATIONS.computeIfAbsent(brain + "/" + why, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static double cost(String model, long promptTokens, long completionTokens) {
+        double[] price = PRICES.get(model);
+        if (price == null) return 0;
+        return (promptTokens * price[0] + completionTokens * price[1]) / 1_000_000.0;
+    }
+}
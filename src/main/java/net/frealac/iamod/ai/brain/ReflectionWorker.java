@@ -0,0 +1,246 @@
+package net.frealac.iamod.ai.brain;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.ChatMessage;
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.ChatRequestWriter;
+import net.frealac.iamod.ai.openai.LlmScheduler;
+import net.frealac.iamod.ai.openai.OpenAiClient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background worker for MemoryBrain reflections (Stanford Generative Agents).
+ *
+ * A reflection is one LLM call: it used to run inline in receiveSignal, on whichever thread broadcast
+ * the signal (usually the server thread). It is now a queued job:
+ * - DEBOUNCE: a job waits reflectionDebounceSeconds after the last trigger of its villager
+ *   (at most 4x that after the first one), so a burst of important events gives one reflection
+ * - COALESCING: triggers of a villager with a pending job only refresh its prompt snapshot
+ * - BOUNDED: at most reflectionMaxConcurrent calls in flight, one per villager, MAX_PENDING jobs queued
+ * - MAIN THREAD: the prompt is snapshotted by the caller (the thread that writes the memories);
+ *   the resulting memories are added through the server executor
+ */
+public final class ReflectionWorker {
+
+    private static final int MAX_PENDING = 128;
+    private static final int MAX_DELAY_FACTOR = 4;
+
+    private static final OpenAiClient CLIENT = new OpenAiClient(LlmScheduler.Lane.REFLECTION);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "iamod-reflection");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Object LOCK = new Object();
+    // Guarded by LOCK
+    private static final Map<MemoryBrain, Job> PENDING = new HashMap<>();
+    private static final ArrayDeque<Job> READY = new ArrayDeque<>();
+    private static final Set<MemoryBrain> RUNNING = new HashSet<>();
+    private static int generation;
+
+    // Server thread executor, null when no server is running (results are then applied on the worker)
+    private static volatile Executor mainThread;
+
+    private static final AtomicLong requested = new AtomicLong();
+    private static final AtomicLong coalesced = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong reflectionsStored = new AtomicLong();
+
+    private static final class Job {
+        final MemoryBrain brain;
+        final long firstTriggerMs;
+        final int generation;
+        UUID player;
+        String prompt;
+        ScheduledFuture<?> timer;
+
+        Job(MemoryBrain brain, UUID player, String prompt, long now, int generation) {
+            this.brain = brain;
+            this.player = player;
+            this.prompt = prompt;
+            this.firstTriggerMs = now;
+            this.generation = generation;
+        }
+    }
+
+    private ReflectionWorker() {
+    }
+
+    /**
+     * Set the executor memories are written on (the server), or null when the server stops.
+     */
+    public static void setMainThread(Executor executor) {
+        mainThread = executor;
+    }
+
+    /**
+     * Queue a reflection of this villager about this player. Called by the thread that owns the memories:
+     * the prompt is snapshotted here, the worker never reads the memory list.
+     */
+    public static void request(MemoryBrain brain, UUID player) {
+        String prompt = brain.buildReflectionPrompt(player);
+        if (prompt == null) return;
+        requested.incrementAndGet();
+
+        long now = System.currentTimeMillis();
+        long debounceMs = Math.max(0, Config.reflectionDebounceSeconds) * 1000L;
+        synchronized (LOCK) {
+            Job job = PENDING.get(brain);
+            if (job != null) {
+                coalesced.incrementAndGet();
+                job.player = player;
+                job.prompt = prompt;
+                long latest = job.firstTriggerMs + debounceMs * MAX_DELAY_FACTOR;
+                // Push the deadline back, never past the max delay; a fired timer is left alone
+                if (job.timer != null && job.timer.cancel(false)) {
+                    job.timer = schedule(job, Math.max(0, Math.min(debounceMs, latest - now)));
+                }
+                return;
+            }
+            if (PENDING.size() >= MAX_PENDING) {
+                dropped.incrementAndGet();
+                IAMOD.LOGGER.warn("🧠💭 Reflection queue full, dropping reflection request");
+                return;
+            }
+            job = new Job(brain, player, prompt, now, generation);
+            PENDING.put(brain, job);
+            job.timer = schedule(job, debounceMs);
+        }
+    }
+
+    /**
+     * Forget every queued job; calls in flight are discarded when they complete (server stopping).
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            for (Job job : PENDING.values()) {
+                if (job.timer != null) job.timer.cancel(false);
+            }
+            PENDING.clear();
+            READY.clear();
+            RUNNING.clear();
+            generation++;
+        }
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        int pending, ready, running;
+        synchronized (LOCK) {
+            pending = PENDING.size();
+            ready = READY.size();
+            running = RUNNING.size();
+        }
+        return String.format("Reflections: requested=%d coalesced=%d dropped=%d, completed=%d failed=%d, stored=%d, "
+                        + "pending=%d ready=%d running=%d",
+                requested.get(), coalesced.get(), dropped.get(), completed.get(), failed.get(), reflectionsStored.get(),
+                pending, ready, running);
+    }
+
+    // Caller holds LOCK
+    private static ScheduledFuture<?> schedule(Job job, long delayMs) {
+        return TIMER.schedule(() -> due(job), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void due(Job job) {
+        synchronized (LOCK) {
+            if (PENDING.get(job.brain) != job) return; // Cleared meanwhile
+            PENDING.remove(job.brain);
+            READY.add(job);
+        }
+        pump();
+    }
+
+    // Start ready jobs while slots are free, skipping villagers that already have a call in flight
+    private static void pump() {
+        List<Job> starting = new ArrayList<>();
+        synchronized (LOCK) {
+            int slots = Math.max(1, Config.reflectionMaxConcurrent) - RUNNING.size();
+            for (var it = READY.iterator(); it.hasNext() && slots > 0; ) {
+                Job job = it.next();
+                if (RUNNING.contains(job.brain)) continue;
+                it.remove();
+                RUNNING.add(job.brain);
+                slots--;
+                starting.add(job);
+            }
+        }
+        // Outside the lock: a request failing synchronously completes (and pumps again) right here
+        for (Job job : starting) start(job);
+    }
+
+    // The request is asynchronous, nothing blocks here
+    private static void start(Job job) {
+        String prompt;
+        UUID player;
+        synchronized (LOCK) {
+            prompt = job.prompt;
+            player = job.player;
+        }
+        ChatRequestWriter.Body body = ChatRequestWriter.chat(BrainModelConfig.getModel("MemoryBrain"),
+                List.of(ChatMessage.system("You are a memory reflection system. Synthesize memories into high-level conclusions."),
+                        ChatMessage.user(prompt)),
+                BrainModelConfig.getTemperature("MemoryBrain"), BrainModelConfig.getMaxTokens("MemoryBrain"), false, false);
+
+        CLIENT.sendChatRequestAsync(body, CancellationToken.NONE).handle((responseBody, ex) -> {
+            List<String> reflections = null;
+            if (ex == null) {
+                try {
+                    reflections = MemoryBrain.parseReflectionsFromResponse(MemoryBrain.extractContentFromResponse(responseBody));
+                } catch (Exception e) {
+                    ex = e;
+                }
+            }
+            if (ex != null) {
+                failed.incrementAndGet();
+                IAMOD.LOGGER.error("🧠 MemoryBrain: Failed to generate reflections", ex);
+            } else {
+                completed.incrementAndGet();
+                deliver(job, player, reflections);
+            }
+            finish(job);
+            return null;
+        });
+    }
+
+    private static void deliver(Job job, UUID player, List<String> reflections) {
+        Runnable apply = () -> {
+            synchronized (LOCK) {
+                if (job.generation != generation) return; // Server stopped meanwhile
+            }
+            job.brain.applyReflections(player, reflections);
+            reflectionsStored.addAndGet(reflections.size());
+        };
+        Executor main = mainThread;
+        if (main != null) main.execute(apply);
+        else apply.run();
+    }
+
+    private static void finish(Job job) {
+        synchronized (LOCK) {
+            if (job.generation == generation) RUNNING.remove(job.brain);
+        }
+        pump();
+    }
+}
@@ -63,6 +63,25 @@ public class VillagerBrainSystem {
      */
     public String processPlayerMessage(UUID playerUuid, String message,
                                        VillagerStory story, String currentGoalsState) {
+        return processPlayerMessage("", playerUuid, message, story, currentGoalsState);
+    }
+
+    /**
+     * Same as above; staticPrefix is placed first in the context, before the villager's identity
+     * and volatile state, so that it stays a cacheable prompt prefix.
+     */
+    public String processPlayerMessage(String staticPrefix, UUID playerUuid, String message,
+                                       VillagerStory story, String currentGoalsState) {
+        return processPlayerMessage(staticPrefix, null, playerUuid, message, story, currentGoalsState);
+    }
+
+    /**
+     * Same as above, reusing a draft prepared when the dialog opened (see DialogPrecompute).
+     * A null draft, or one prepared for another player, is rebuilt now.
+     * The caller checks freshness BEFORE this call: the signals below move the brain state.
+     */
+    public String processPlayerMessage(String staticPrefix, GeneralBrain.ContextDraft draft, UUID playerUuid,
+                                       String message, VillagerStory story, String currentGoalsState) {
 
         IAMOD.LOGGER.info("🧠 Brain System: Processing message from player {}", playerUuid);
 
@@ -80,8 +99,9 @@ public class VillagerBrainSystem {
             generalBrain.analyzePlayerInteraction(playerUuid, message);
 
             // 2. GeneralBrain generates comprehensive context from ALL brains
-            String comprehensiveContext = generalBrain.generateComprehensiveContext(
-                playerUuid, story, message, currentGoalsState);
+            String comprehensiveContext = draft != null && playerUuid.equals(draft.getPlayerUuid())
+                ? generalBrain.generateComprehensiveContext(staticPrefix, draft, story, message, currentGoalsState)
+                : generalBrain.generateComprehensiveContext(staticPrefix, playerUuid, story, message, currentGoalsState);
 
             IAMOD.LOGGER.debug("🧠 Brain System: Context generated ({} characters)",
                 comprehensiveContext.length());
@@ -29,6 +29,7 @@ public class VillagerDebugInfo {
     private String lastAiActivity; // Last AI activity timestamp
     private int conversationMessageCount; // Number of messages in conversation
     private String lastMemoryAction; // Last memory write action
+    private String lastModelRoute; // Who analyzed the last message (local tier or model of the cascade)
 
     public VillagerDebugInfo() {
         this.villagerName = "Villageois";
@@ -47,6 +48,7 @@ public class VillagerDebugInfo {
         this.lastAiActivity = "Jamais";
         this.conversationMessageCount = 0;
         this.lastMemoryAction = "Aucune";
+        this.lastModelRoute = "Aucune";
     }
 
     public VillagerDebugInfo(String villagerName, String currentAction, String currentGoal,
@@ -54,7 +56,7 @@ public class VillagerDebugInfo {
                             double sleepQuality, int memoryCount, double sentiment,
                             List<String> recentMemories, double distance,
                             boolean isAiProcessing, String lastAiActivity, int conversationMessageCount,
-                            String lastMemoryAction) {
+                            String lastMemoryAction, String lastModelRoute) {
         this.villagerName = villagerName;
         this.currentAction = currentAction;
         this.currentGoal = currentGoal;
@@ -71,6 +73,7 @@ public class VillagerDebugInfo {
         this.lastAiActivity = lastAiActivity;
         this.conversationMessageCount = conversationMessageCount;
         this.lastMemoryAction = lastMemoryAction;
+        this.lastModelRoute = lastModelRoute;
     }
 
     // Serialization for network packet
@@ -99,6 +102,7 @@ public class VillagerDebugInfo {
         buf.writeUtf(lastAiActivity);
         buf.writeInt(conversationMessageCount);
         buf.writeUtf(lastMemoryAction);
+        buf.writeUtf(lastModelRoute);
     }
 
     public static VillagerDebugInfo read(FriendlyByteBuf buf) {
@@ -127,12 +131,13 @@ public class VillagerDebugInfo {
         String lastAiActivity = buf.readUtf();
         int conversationMessageCount = buf.readInt();
         String lastMemoryAction = buf.readUtf();
+        String lastModelRoute = buf.readUtf();
 
         return new VillagerDebugInfo(villagerName, currentAction, currentGoal,
                                     targetPlayer, mood, stress, resilience, sleepQuality,
                                     memoryCount, sentiment, memories, distance,
                                     isAiProcessing, lastAiActivity, conversationMessageCount,
-                                    lastMemoryAction);
+                                    lastMemoryAction, lastModelRoute);
     }
 
     // Getters
@@ -152,6 +157,7 @@ public class VillagerDebugInfo {
     public String getLastAiActivity() { return lastAiActivity; }
     public int getConversationMessageCount() { return conversationMessageCount; }
     public String getLastMemoryAction() { return lastMemoryAction; }
+    public String getLastModelRoute() { return lastModelRoute; }
 
     // Setters
     public void setVillagerName(String name) { this.villagerName = name; }
@@ -202,6 +208,7 @@ public class VillagerDebugInfo {
         lines.add("§fDernière activité: §e" + lastAiActivity);
         lines.add("§fMessages conversation: §e" + conversationMessageCount);
         lines.add("§fDernière mémoire: §e" + lastMemoryAction);
+        lines.add("§fModèle analyse: §e" + lastModelRoute);
 
         if (!recentMemories.isEmpty()) {
             lines.add("§6--- SOUVENIRS RÉCENTS ---");
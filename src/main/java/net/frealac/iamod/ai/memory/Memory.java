@@ -21,6 +21,17 @@ public class Memory {
     @SerializedName("player_uuid")
     private String playerUuid; // UUID as string for serialization
 
+    // player_uuid parsed once (two longs); resolved lazily, also after deserialization
+    private transient UUID playerKey;
+    private transient boolean playerKeyResolved;
+
+    // Normalized description terms, computed once (see MemoryTextIndex)
+    private transient MemoryTextIndex.Terms terms;
+    private transient MemoryEmbedding.Vector embedding;
+
+    // VillagerMemory whose indexes cover this memory; told when an indexed field changes
+    private transient VillagerMemory owner;
+
     @SerializedName("player_name")
     private String playerName;
 
@@ -132,7 +143,22 @@ public class Memory {
      * Check if this memory is about a specific player.
      */
     public boolean isAboutPlayer(UUID uuid) {
-        return playerUuid != null && playerUuid.equals(uuid.toString());
+        return uuid != null && uuid.equals(getPlayerKey());
+    }
+
+    /**
+     * Player this memory is about, as a binary UUID (null when none or unparseable).
+     */
+    public UUID getPlayerKey() {
+        if (!playerKeyResolved) {
+            try {
+                playerKey = playerUuid != null ? UUID.fromString(playerUuid) : null;
+            } catch (IllegalArgumentException e) {
+                playerKey = null;
+            }
+            playerKeyResolved = true;
+        }
+        return playerKey;
     }
 
     /**
@@ -164,9 +190,17 @@ public class Memory {
      * @return Retrieval score [0, 1] normalized
      */
     public double getRetrievalScore(String query, long lastAccessTime) {
+        return getRetrievalScore(calculateRelevance(query), lastAccessTime);
+    }
+
+    /**
+     * Same as above with a relevance already computed (e.g. BM25 from {@link MemoryTextIndex}).
+     *
+     * @param relevance Relevance to the current query [0, 1]
+     */
+    public double getRetrievalScore(double relevance, long lastAccessTime) {
         double recency = calculateRecency(lastAccessTime);
         double importance = this.importance; // Already normalized [0, 1]
-        double relevance = calculateRelevance(query);
 
         // Combine with equal weights (α = 1 for all)
         double score = recency + importance + relevance;
@@ -187,38 +221,53 @@ public class Memory {
     }
 
     /**
-     * Calculate relevance score using word matching (simplified version).
-     * TODO: Upgrade to cosine similarity with embeddings for better results.
+     * Calculate relevance score: share of the query terms found in the description, blended with
+     * the cosine similarity of their embeddings. Retrieval over a whole villager uses {@link MemoryTextIndex} instead.
      *
      * SCIENTIFIC BASIS: Contextually relevant memories are more likely to be retrieved.
      */
     private double calculateRelevance(String query) {
-        if (query == null || query.isEmpty() || description == null || description.isEmpty()) {
-            return 0.0;
+        MemoryTextIndex.Terms queryTerms = MemoryTextIndex.tokenize(query);
+        String[] descTerms = getTerms().terms();
+        double similarity = Math.max(0.0, MemoryEmbedding.cosine(MemoryEmbedding.embed(query), getEmbedding()));
+        if (queryTerms.terms().length == 0 || descTerms.length == 0) {
+            return 0.5 * similarity;
         }
 
-        // Normalize strings
-        String queryLower = query.toLowerCase();
-        String descLower = description.toLowerCase();
-
-        // Split into words
-        String[] queryWords = queryLower.split("\\s+");
-        String[] descWords = descLower.split("\\s+");
-
-        // Count matching words
         int matches = 0;
-        for (String qWord : queryWords) {
-            if (qWord.length() < 3) continue; // Skip short words
-            for (String dWord : descWords) {
-                if (dWord.contains(qWord) || qWord.contains(dWord)) {
+        for (String qTerm : queryTerms.terms()) {
+            for (String dTerm : descTerms) {
+                if (dTerm.equals(qTerm)) {
                     matches++;
                     break;
                 }
             }
         }
+        return 0.5 * matches / queryTerms.terms().length + 0.5 * similarity;
+    }
 
-        // Normalize by query length
-        return Math.min(1.0, (double) matches / Math.max(1, queryWords.length));
+    /**
+     * Normalized terms of the description, tokenized on first use.
+     */
+    public MemoryTextIndex.Terms getTerms() {
+        MemoryTextIndex.Terms t = terms;
+        if (t == null) {
+            t = MemoryTextIndex.tokenize(description);
+            terms = t;
+        }
+        return t;
+    }
+
+    /**
+     * Embedding of the description, computed on first use.
+     */
+    public MemoryEmbedding.Vector getEmbedding() {
+        MemoryEmbedding.Vector e = embedding;
+        if (e == null) {
+            e = MemoryEmbedding.embed(description);
+            embedding = e;
+        }
+        return e;
     }
 
     /**
@@ -228,6 +277,19 @@ public class Memory {
         // Update timestamp to reflect recent access
         // This simulates "rehearsal" in memory consolidation
         this.timestamp = System.currentTimeMillis();
+        changed();
+    }
+
+    void attach(VillagerMemory owner) {
+        this.owner = owner;
+    }
+
+    // Description, player, timestamp, impact and importance feed the owner's indexes and sentiment aggregate
+    private void changed() {
+        VillagerMemory o = owner;
+        if (o != null) {
+            o.memoryChanged(this);
+        }
     }
 
     /**
@@ -260,6 +322,9 @@ public class Memory {
 
     public void setDescription(String description) {
         this.description = description;
+        this.terms = null;
+        this.embedding = null;
+        changed();
     }
 
     public long getTimestamp() {
@@ -268,6 +333,7 @@ public class Memory {
 
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
+        changed();
     }
 
     public String getPlayerUuid() {
@@ -276,6 +342,8 @@ public class Memory {
 
     public void setPlayerUuid(String playerUuid) {
         this.playerUuid = playerUuid;
+        this.playerKeyResolved = false;
+        changed();
     }
 
     public String getPlayerName() {
@@ -292,6 +360,7 @@ public class Memory {
 
     public void setEmotionalImpact(double emotionalImpact) {
         this.emotionalImpact = emotionalImpact;
+        changed();
     }
 
     public double getImportance() {
@@ -300,6 +369,7 @@ public class Memory {
 
     public void setImportance(double importance) {
         this.importance = importance;
+        changed();
     }
 
     public double getStrength() {
@@ -0,0 +1,94 @@
+package net.frealac.iamod.ai.memory;
+
+/**
+ * Offline text embeddings for memory retrieval: feature-hashed character n-grams, no network, no model.
+ *
+ * - VECTOR: char 3- and 4-grams of the normalized text (see {@link MemoryTextIndex#normalize}), each hashed
+ *   to one of DIM signed buckets, L2-normalized; close spellings and inflections share most of their grams
+ * - STORAGE: quantized to DIM signed bytes plus one float scale (DIM + 4 bytes per memory)
+ * - DOT: plain int loop unrolled by 4 with independent accumulators; the JIT auto-vectorizes it
+ *   (the incubator Vector API would need --add-modules on every launcher of the mod)
+ */
+public final class MemoryEmbedding {
+
+    public static final int DIM = 256; // Power of two: bucket = hash & (DIM - 1)
+    private static final int MIN_GRAM = 3;
+    private static final int MAX_GRAM = 4;
+
+    /**
+     * Quantized unit vector: component i is about values[i] * scale.
+     */
+    public record Vector(byte[] values, float scale) {
+        public static final Vector ZERO = new Vector(new byte[DIM], 0f);
+    }
+
+    private MemoryEmbedding() {
+    }
+
+    /**
+     * Embedding of a text (ZERO when it has no letters).
+     */
+    public static Vector embed(String text) {
+        String normalized = MemoryTextIndex.normalize(text);
+        if (normalized.isEmpty()) return Vector.ZERO;
+        String padded = " " + normalized + " ";
+
+        float[] v = new float[DIM];
+        for (int n = MIN_GRAM; n <= MAX_GRAM; n++) {
+            for (int i = 0; i + n <= padded.length(); i++) {
+                int h = hash(padded, i, n);
+                v[h & (DIM - 1)] += (h < 0) ? -1f : 1f;
+            }
+        }
+
+        double norm = 0;
+        float maxAbs = 0;
+        for (float x : v) {
+            norm += x * x;
+            maxAbs = Math.max(maxAbs, Math.abs(x));
+        }
+        if (norm == 0) return Vector.ZERO;
+
+        byte[] values = new byte[DIM];
+        for (int i = 0; i < DIM; i++) {
+            values[i] = (byte) Math.round(v[i] / maxAbs * 127f);
+        }
+        return new Vector(values, (float) (maxAbs / Math.sqrt(norm) / 127.0));
+    }
+
+    /**
+     * Cosine similarity of two embeddings [-1, 1] (0 when one is ZERO).
+     */
+    public static double cosine(Vector a, Vector b) {
+        return dot(a.values(), 0, b.values(), 0) * (double) a.scale() * b.scale();
+    }
+
+    /**
+     * Integer dot product of DIM bytes starting at aOffset and bOffset.
+     */
+    public static int dot(byte[] a, int aOffset, byte[] b, int bOffset) {
+        int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (int i = 0; i < DIM; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    // FNV-1a over the gram, then a murmur finalizer so low bits and the sign bit are well mixed
+    private static int hash(String s, int start, int length) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < start + length; i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
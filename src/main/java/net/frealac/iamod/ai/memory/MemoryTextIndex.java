@@ -0,0 +1,282 @@
+package net.frealac.iamod.ai.memory;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inverted keyword index over a villager's memory descriptions, for retrieval relevance (BM25),
+ * plus their packed embeddings for similarity (see {@link MemoryEmbedding}).
+ *
+ * Relevance used to lowercase and regex-split the query and every description on every retrieval,
+ * then compare all words pairwise. Now:
+ * - TOKENS: each description is normalized once (lowercase, no accents, words >= 3 letters,
+ *   cut to a 6-letter prefix so "cadeau"/"cadeaux" or "frappé"/"frapper" still match), cached on the Memory
+ * - POSTINGS: term -> (memory, count) pairs; scoring walks only the postings of the query terms
+ * - VECTORS: the memories' quantized embeddings side by side in one byte[] (DIM bytes per memory),
+ *   scanned for the candidates only; exact search, a villager holds at most a few dozen memories
+ * - IMMUTABLE: an index is never modified; VillagerMemory swaps in a new one on add (cheap append)
+ *   and on eviction (the last memory takes the evicted one's slot), so a prompt being built off-thread
+ *   keeps a consistent snapshot
+ */
+public final class MemoryTextIndex {
+
+    private static final int MIN_TERM_LENGTH = 3;  // Same cut as the old word matching
+    private static final int STEM_LENGTH = 6;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double KEYWORD_WEIGHT = 0.5; // Rest of the relevance: embedding similarity
+
+    public static final MemoryTextIndex EMPTY = new MemoryTextIndex(new Memory[0], Map.of(), 0, new byte[0], new float[0]);
+
+    /**
+     * Distinct terms of a text and how often each occurs.
+     */
+    public record Terms(String[] terms, int[] counts, int length) {
+        static final Terms NONE = new Terms(new String[0], new int[0], 0);
+    }
+
+    private final Memory[] docs;
+    private final Map<String, int[]> postings; // term -> [doc, count, doc, count, ...]
+    private final long totalLength;
+    private final byte[] vectors;  // doc i at [i * DIM, (i + 1) * DIM)
+    private final float[] scales;
+    private final Map<Memory, Integer> ids = new IdentityHashMap<>();
+
+    private MemoryTextIndex(Memory[] docs, Map<String, int[]> postings, long totalLength, byte[] vectors, float[] scales) {
+        this.docs = docs;
+        this.postings = postings;
+        this.totalLength = totalLength;
+        this.vectors = vectors;
+        this.scales = scales;
+        for (int i = 0; i < docs.length; i++) {
+            ids.put(docs[i], i);
+        }
+    }
+
+    /**
+     * Index of these memories.
+     */
+    public static MemoryTextIndex build(List<Memory> memories) {
+        Map<String, List<int[]>> lists = new HashMap<>();
+        Memory[] docs = memories.toArray(new Memory[0]);
+        byte[] vectors = new byte[docs.length * MemoryEmbedding.DIM];
+        float[] scales = new float[docs.length];
+        long totalLength = 0;
+        for (int doc = 0; doc < docs.length; doc++) {
+            MemoryEmbedding.Vector embedding = docs[doc].getEmbedding();
+            System.arraycopy(embedding.values(), 0, vectors, doc * MemoryEmbedding.DIM, MemoryEmbedding.DIM);
+            scales[doc] = embedding.scale();
+
+            Terms terms = docs[doc].getTerms();
+            totalLength += terms.length();
+            for (int t = 0; t < terms.terms().length; t++) {
+                lists.computeIfAbsent(terms.terms()[t], k -> new ArrayList<>()).add(new int[]{doc, terms.counts()[t]});
+            }
+        }
+        Map<String, int[]> postings = new HashMap<>();
+        for (Map.Entry<String, List<int[]>> e : lists.entrySet()) {
+            int[] flat = new int[e.getValue().size() * 2];
+            for (int i = 0; i < e.getValue().size(); i++) {
+                flat[2 * i] = e.getValue().get(i)[0];
+                flat[2 * i + 1] = e.getValue().get(i)[1];
+            }
+            postings.put(e.getKey(), flat);
+        }
+        return new MemoryTextIndex(docs, postings, totalLength, vectors, scales);
+    }
+
+    /**
+     * This index plus one memory (only the postings of its terms are copied, and the vector block).
+     */
+    public MemoryTextIndex with(Memory memory) {
+        int doc = docs.length;
+        Memory[] grown = Arrays.copyOf(docs, doc + 1);
+        grown[doc] = memory;
+        Terms terms = memory.getTerms();
+        Map<String, int[]> grownPostings = new HashMap<>(postings);
+        for (int t = 0; t < terms.terms().length; t++) {
+            int[] old = grownPostings.get(terms.terms()[t]);
+            int[] list = old == null ? new int[2] : Arrays.copyOf(old, old.length + 2);
+            list[list.length - 2] = doc;
+            list[list.length - 1] = terms.counts()[t];
+            grownPostings.put(terms.terms()[t], list);
+        }
+        MemoryEmbedding.Vector embedding = memory.getEmbedding();
+        byte[] grownVectors = Arrays.copyOf(vectors, vectors.length + MemoryEmbedding.DIM);
+        System.arraycopy(embedding.values(), 0, grownVectors, vectors.length, MemoryEmbedding.DIM);
+        float[] grownScales = Arrays.copyOf(scales, doc + 1);
+        grownScales[doc] = embedding.scale();
+        return new MemoryTextIndex(grown, grownPostings, totalLength + terms.length(), grownVectors, grownScales);
+    }
+
+    /**
+     * This index minus one memory: the last memory moves into its slot, so only the postings of
+     * the two memories' terms are copied, and two vector blocks.
+     */
+    public MemoryTextIndex without(Memory memory) {
+        Integer found = ids.get(memory);
+        if (found == null) return this;
+        int doc = found;
+        int last = docs.length - 1;
+
+        Memory[] shrunk = Arrays.copyOf(docs, last);
+        Map<String, int[]> shrunkPostings = new HashMap<>(postings);
+        Terms terms = memory.getTerms();
+        for (String term : terms.terms()) {
+            int[] list = shrunkPostings.get(term);
+            int[] kept = new int[list.length - 2];
+            for (int i = 0, k = 0; i < list.length; i += 2) {
+                if (list[i] == doc) continue;
+                kept[k++] = list[i];
+                kept[k++] = list[i + 1];
+            }
+            if (kept.length == 0) shrunkPostings.remove(term);
+            else shrunkPostings.put(term, kept);
+        }
+
+        byte[] shrunkVectors = Arrays.copyOf(vectors, last * MemoryEmbedding.DIM);
+        float[] shrunkScales = Arrays.copyOf(scales, last);
+        if (doc != last) {
+            shrunk[doc] = docs[last];
+            for (String term : docs[last].getTerms().terms()) {
+                int[] list = shrunkPostings.get(term).clone();
+                for (int i = 0; i < list.length; i += 2) {
+                    if (list[i] == last) list[i] = doc;
+                }
+                shrunkPostings.put(term, list);
+            }
+            System.arraycopy(vectors, last * MemoryEmbedding.DIM, shrunkVectors, doc * MemoryEmbedding.DIM, MemoryEmbedding.DIM);
+            shrunkScales[doc] = scales[last];
+        }
+        return new MemoryTextIndex(shrunk, shrunkPostings, totalLength - terms.length(), shrunkVectors, shrunkScales);
+    }
+
+    public int size() {
+        return docs.length;
+    }
+
+    /**
+     * Relevance of each candidate to the query [0, 1]: keyword match (BM25) blended with
+     * embedding similarity, so paraphrases and misspellings still count. Candidates not in this index score 0.
+     */
+    public double[] relevance(String query, List<Memory> candidates) {
+        double[] keyword = keywordRelevance(query, candidates);
+        double[] semantic = similarity(query, candidates);
+        for (int i = 0; i < keyword.length; i++) {
+            keyword[i] = KEYWORD_WEIGHT * keyword[i] + (1 - KEYWORD_WEIGHT) * Math.max(0.0, semantic[i]);
+        }
+        return keyword;
+    }
+
+    /**
+     * Cosine similarity [-1, 1] between the query embedding and each candidate's.
+     */
+    public double[] similarity(String query, List<Memory> candidates) {
+        double[] result = new double[candidates.size()];
+        MemoryEmbedding.Vector q = MemoryEmbedding.embed(query);
+        if (q.scale() == 0 || docs.length == 0) return result;
+
+        for (int i = 0; i < result.length; i++) {
+            Integer doc = ids.get(candidates.get(i));
+            if (doc == null) continue;
+            int dot = MemoryEmbedding.dot(vectors, doc * MemoryEmbedding.DIM, q.values(), 0);
+            result[i] = dot * (double) scales[doc] * q.scale();
+        }
+        return result;
+    }
+
+    /**
+     * BM25 relevance of each candidate to the query, normalized to [0, 1] by the best score the
+     * query terms known to this index could reach. Candidates not in this index score 0.
+     */
+    public double[] keywordRelevance(String query, List<Memory> candidates) {
+        double[] result = new double[candidates.size()];
+        Terms queryTerms = tokenize(query);
+        if (queryTerms.terms().length == 0 || docs.length == 0) return result;
+
+        double[] scores = new double[docs.length];
+        double avgLength = Math.max(1.0, (double) totalLength / docs.length);
+        double maxScore = 0.0;
+        for (String term : queryTerms.terms()) {
+            int[] list = postings.get(term);
+            if (list == null) continue; // Unknown to this villager: cannot match any memory
+            int df = list.length / 2;
+            double idf = Math.log(1.0 + (docs.length - df + 0.5) / (df + 0.5));
+            maxScore += idf * (K1 + 1);
+            for (int i = 0; i < list.length; i += 2) {
+                int doc = list[i];
+                double tf = list[i + 1];
+                double norm = K1 * (1 - B + B * docs[doc].getTerms().length() / avgLength);
+                scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        if (maxScore <= 0) return result;
+
+        for (int i = 0; i < result.length; i++) {
+            Integer doc = ids.get(candidates.get(i));
+            if (doc != null) result[i] = Math.min(1.0, scores[doc] / maxScore);
+        }
+        return result;
+    }
+
+    /**
+     * Lowercase text without accents, words separated by single spaces ("" for null).
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) return "";
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue; // Accent stripped by NFD
+            if (Character.isLetterOrDigit(c)) {
+                out.append(c);
+            } else if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') {
+                out.append(' ');
+            }
+        }
+        int end = out.length();
+        if (end > 0 && out.charAt(end - 1) == ' ') out.setLength(end - 1);
+        return out.toString();
+    }
+
+    /**
+     * Normalized terms of a text (see class doc).
+     */
+    public static Terms tokenize(String text) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) return Terms.NONE;
+
+        Map<String, Integer> counts = new HashMap<>();
+        int length = 0;
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (c != ' ') {
+                if (word.length() < STEM_LENGTH) word.append(c);
+                continue;
+            }
+            if (word.length() >= MIN_TERM_LENGTH) {
+                counts.merge(word.toString(), 1, Integer::sum);
+                length++;
+            }
+            word.setLength(0);
+        }
+        if (counts.isEmpty()) return Terms.NONE;
+
+        String[] terms = new String[counts.size()];
+        int[] termCounts = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            terms[i] = e.getKey();
+            termCounts[i++] = e.getValue();
+        }
+        return new Terms(terms, termCounts, length);
+    }
+}
@@ -0,0 +1,99 @@
+package net.frealac.iamod.ai.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Top-K selection over precomputed scores, shared by every "sort memories, keep the best N" path.
+ *
+ * Sorting with a comparator that scores both sides recomputes each score O(log n) times
+ * (getHoursAgo, retrieval relevance...). Here:
+ * - SCORES: computed once per item into a double[]
+ * - HEAP: a bounded min-heap of item indices (int[]), O(n log k), no boxing, no Comparator
+ * - ORDER: best first; equal scores keep their input order, like the stable List.sort it replaces
+ */
+public final class TopKSelector {
+
+    private TopKSelector() {
+    }
+
+    /**
+     * The k best items by score, best first.
+     */
+    public static <T> List<T> top(List<T> items, int k, ToDoubleFunction<? super T> scorer) {
+        int n = items.size();
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = scorer.applyAsDouble(items.get(i));
+        }
+        int[] best = select(scores, n, k);
+        List<T> result = new ArrayList<>(best.length);
+        for (int index : best) {
+            result.add(items.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * Indices of the k highest of scores[0..n), highest first (ties: lower index first).
+     */
+    public static int[] select(double[] scores, int n, int k) {
+        int size = Math.min(Math.max(k, 0), n);
+        if (size == 0) return new int[0];
+
+        // heap[0] is the worst of the best seen so far
+        int[] heap = new int[size];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (count < size) {
+                heap[count] = i;
+                siftUp(heap, count++, scores);
+            } else if (worse(heap[0], i, scores)) {
+                heap[0] = i;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        // Pop the worst first, filling the result from the end
+        int[] result = new int[size];
+        for (int last = size - 1; last >= 0; last--) {
+            result[last] = heap[0];
+            heap[0] = heap[last];
+            siftDown(heap, last, scores);
+        }
+        return result;
+    }
+
+    // a ranks below b: lower score, or same score and later in the input
+    private static boolean worse(int a, int b, double[] scores) {
+        int cmp = Double.compare(scores[a], scores[b]);
+        return cmp < 0 || (cmp == 0 && a > b);
+    }
+
+    private static void siftUp(int[] heap, int pos, double[] scores) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!worse(item, heap[parent], scores)) break;
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) return;
+        int item = heap[0];
+        int pos = 0;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && worse(heap[child + 1], heap[child], scores)) child++;
+            if (!worse(heap[child], item, scores)) break;
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+}
@@ -10,24 +10,56 @@ import java.util.stream.Collectors;
 /**
  * Manages all memories for a single villager.
  * Memories influence the villager's behavior and responses.
+ *
+ * Per-player queries go through an index keyed by binary UUID (same order as the memory list),
+ * kept up to date on add and prune and rebuilt lazily after deserialization.
+ * Each entry also carries the player's running sentiment aggregate (see {@link PlayerMemories}).
+ * Descriptions are indexed for retrieval relevance in a {@link MemoryTextIndex}, swapped on add and prune.
+ *
+ * THREADS: memories are written on the server thread but read from request threads too; every access to
+ * the list and to the derived structures (which fill lazily, even on reads) holds this object's lock.
+ * A memory already added tells its owner when an indexed field changes (see {@link #memoryChanged}).
  */
 public class VillagerMemory {
     private static final int MAX_MEMORIES = 50; // Keep most important/recent memories
     private static final int PROMPT_MEMORY_LIMIT = 10; // Max memories to include in AI prompt
 
+    // Recency steps: under 1h, under a day, under a week, older
+    private static final long HOUR_MS = 60L * 60L * 1000L;
+    private static final long[] RECENCY_BUCKET_MS = {HOUR_MS, 24 * HOUR_MS, 168 * HOUR_MS};
+    private static final double[] RECENCY_WEIGHTS = {1.0, 0.8, 0.5, 0.2};
+
     @SerializedName("memories")
     private final List<Memory> memories = new ArrayList<>();
 
     @SerializedName("known_players")
     private final Map<String, String> knownPlayers = new HashMap<>(); // UUID -> Name
 
+    // Player UUID -> memories about that player, in list order; null until first used
+    private transient Map<UUID, PlayerMemories> byPlayer;
+
+    // Keyword index snapshot over all memories; null until first used
+    private transient volatile MemoryTextIndex textIndex;
+
+    // Bumped on every change of the memories (the count alone stays at MAX_MEMORIES once full)
+    private transient int modifications;
+
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
     /**
      * Add a new memory.
      */
-    public void addMemory(Memory memory) {
+    public synchronized void addMemory(Memory memory) {
         memories.add(memory);
+        memory.attach(this);
+        modifications++;
+        if (byPlayer != null) {
+            index(memory);
+        }
+        MemoryTextIndex current = textIndex;
+        if (current != null) {
+            textIndex = current.with(memory);
+        }
 
         // Track player name if provided
         if (memory.getPlayerUuid() != null && memory.getPlayerName() != null) {
@@ -50,23 +82,38 @@ public class VillagerMemory {
     /**
      * Get all memories about a specific player.
      */
-    public List<Memory> getMemoriesAboutPlayer(UUID playerUuid) {
-        return memories.stream()
-                .filter(m -> m.isAboutPlayer(playerUuid))
-                .collect(Collectors.toList());
+    public synchronized List<Memory> getMemoriesAboutPlayer(UUID playerUuid) {
+        return new ArrayList<>(memoriesAbout(playerUuid));
+    }
+
+    /**
+     * Number of memories about a specific player (no copy).
+     */
+    public synchronized int countMemoriesAboutPlayer(UUID playerUuid) {
+        return memoriesAbout(playerUuid).size();
+    }
+
+    /**
+     * Check if there is a memory of this type about a specific player (no copy).
+     */
+    public synchronized boolean hasMemoryAboutPlayer(UUID playerUuid, MemoryType type) {
+        for (Memory memory : memoriesAbout(playerUuid)) {
+            if (memory.getType() == type) return true;
+        }
+        return false;
     }
 
     /**
      * Get player's name if known.
      */
-    public String getPlayerName(UUID playerUuid) {
+    public synchronized String getPlayerName(UUID playerUuid) {
         return knownPlayers.get(playerUuid.toString());
     }
 
     /**
      * Check if villager knows this player's name.
      */
-    public boolean knowsPlayer(UUID playerUuid) {
+    public synchronized boolean knowsPlayer(UUID playerUuid) {
         return knownPlayers.containsKey(playerUuid.toString());
     }
 
@@ -74,46 +121,40 @@ public class VillagerMemory {
      * Get the overall sentiment this villager has towards a player.
      * Returns: -1.0 (very negative) to +1.0 (very positive)
      */
-    public double getSentimentTowardsPlayer(UUID playerUuid) {
-        List<Memory> playerMemories = getMemoriesAboutPlayer(playerUuid);
-        if (playerMemories.isEmpty()) return 0.0;
-
-        // Recent memories have more weight
-        double totalWeight = 0.0;
-        double weightedSum = 0.0;
-
-        for (Memory memory : playerMemories) {
-            // Recency weight: recent memories matter more
-            double recencyWeight = calculateRecencyWeight(memory.getHoursAgo());
-            // Importance weight: important memories matter more
-            double weight = memory.getImportance() * recencyWeight;
-
-            weightedSum += memory.getEmotionalImpact() * weight;
-            totalWeight += weight;
-        }
-
-        return totalWeight > 0 ? weightedSum / totalWeight : 0.0;
+    public synchronized double getSentimentTowardsPlayer(UUID playerUuid) {
+        if (playerUuid == null) return 0.0;
+        PlayerMemories entry = index().get(playerUuid);
+        return entry != null ? entry.sentiment(System.currentTimeMillis()) : 0.0;
     }
 
     /**
      * Calculate how much weight to give to a memory based on how recent it is.
-     * Recent = 1.0, very old = 0.1
+     * Within last hour = 1.0, today = 0.8, this week = 0.5, older = 0.2
      */
     private double calculateRecencyWeight(double hoursAgo) {
-        if (hoursAgo < 1) return 1.0;     // Within last hour: full weight
-        if (hoursAgo < 24) return 0.8;    // Today: 80%
-        if (hoursAgo < 168) return 0.5;   // This week: 50%
-        return 0.2;                        // Older: 20%
+        return RECENCY_WEIGHTS[recencyBucket(hoursAgo * HOUR_MS)];
+    }
+
+    private double retentionScore(Memory memory) {
+        return memory.getImportance() * calculateRecencyWeight(memory.getHoursAgo());
+    }
+
+    private static int recencyBucket(double ageMs) {
+        int bucket = 0;
+        while (bucket < RECENCY_BUCKET_MS.length && ageMs >= RECENCY_BUCKET_MS[bucket]) {
+            bucket++;
+        }
+        return bucket;
     }
 
     /**
      * Get most important/recent memories for AI prompt.
      */
-    public List<Memory> getMemoriesForPrompt(UUID currentPlayerUuid) {
+    public synchronized List<Memory> getMemoriesForPrompt(UUID currentPlayerUuid) {
         List<Memory> relevantMemories = new ArrayList<>();
 
         // 1. Get memories about current player (high priority)
-        List<Memory> playerMemories = getMemoriesAboutPlayer(currentPlayerUuid);
+        List<Memory> playerMemories = memoriesAbout(currentPlayerUuid);
         relevantMemories.addAll(playerMemories);
 
         // 2. Add other important memories
@@ -124,23 +165,14 @@ public class VillagerMemory {
 
         relevantMemories.addAll(otherMemories);
 
-        // 3. Sort by importance and recency
-        relevantMemories.sort((m1, m2) -> {
-            double score1 = m1.getImportance() * calculateRecencyWeight(m1.getHoursAgo());
-            double score2 = m2.getImportance() * calculateRecencyWeight(m2.getHoursAgo());
-            return Double.compare(score2, score1); // Descending
-        });
-
-        // 4. Limit to most relevant
-        return relevantMemories.stream()
-                .limit(PROMPT_MEMORY_LIMIT)
-                .collect(Collectors.toList());
+        // 3. Keep the most relevant by importance and recency
+        return TopKSelector.top(relevantMemories, PROMPT_MEMORY_LIMIT, this::retentionScore);
     }
 
     /**
      * Format memories for AI prompt.
      */
-    public String formatMemoriesForPrompt(UUID currentPlayerUuid) {
+    public synchronized String formatMemoriesForPrompt(UUID currentPlayerUuid) {
         List<Memory> memories = getMemoriesForPrompt(currentPlayerUuid);
         if (memories.isEmpty()) {
             return "Aucun souvenir particulier.";
@@ -173,35 +205,200 @@ public class VillagerMemory {
 
     /**
      * Prune old and unimportant memories to keep memory usage reasonable.
+     * Once full, every add goes one over MAX_MEMORIES: the lowest-scored memory is evicted and
+     * removed from the indexes (no rebuild); the others keep their order.
      */
     private void pruneMemories() {
-        // Sort by importance and recency
-        memories.sort((m1, m2) -> {
-            double score1 = m1.getImportance() * calculateRecencyWeight(m1.getHoursAgo());
-            double score2 = m2.getImportance() * calculateRecencyWeight(m2.getHoursAgo());
-            return Double.compare(score2, score1); // Descending
-        });
-
-        // Keep only the most important/recent
+        long now = System.currentTimeMillis();
         while (memories.size() > MAX_MEMORIES) {
-            memories.remove(memories.size() - 1);
+            // Lowest importance x recency; on ties the latest one goes, as with the top-K it replaces
+            int worst = 0;
+            double worstScore = Double.MAX_VALUE;
+            for (int i = 0; i < memories.size(); i++) {
+                double score = retentionScore(memories.get(i));
+                if (score <= worstScore) {
+                    worst = i;
+                    worstScore = score;
+                }
+            }
+            Memory evicted = memories.remove(worst);
+
+            if (byPlayer != null && evicted.getPlayerKey() != null) {
+                PlayerMemories entry = byPlayer.get(evicted.getPlayerKey());
+                if (entry != null && entry.remove(evicted, now)) {
+                    byPlayer.remove(evicted.getPlayerKey());
+                }
+            }
+            MemoryTextIndex current = textIndex;
+            if (current != null) {
+                textIndex = current.without(evicted);
+            }
+        }
+    }
+
+    /**
+     * Keyword index over all memories (immutable snapshot, safe to keep while memories change).
+     */
+    public synchronized MemoryTextIndex getTextIndex() {
+        MemoryTextIndex current = textIndex;
+        if (current == null) {
+            attachAll();
+            current = MemoryTextIndex.build(memories);
+            textIndex = current;
+        }
+        return current;
+    }
+
+    /**
+     * A field of this memory that the indexes or the sentiment aggregate depend on changed:
+     * drop them, they are rebuilt on next use.
+     */
+    synchronized void memoryChanged(Memory memory) {
+        for (Memory m : memories) {
+            if (m == memory) {
+                byPlayer = null;
+                textIndex = null;
+                modifications++;
+                return;
+            }
+        }
+    }
+
+    // Deserialized memories were never added through addMemory
+    private void attachAll() {
+        for (Memory memory : memories) {
+            memory.attach(this);
+        }
+    }
+
+    // Live list of this player, never modified by callers
+    private List<Memory> memoriesAbout(UUID playerUuid) {
+        if (playerUuid == null) return List.of();
+        PlayerMemories entry = index().get(playerUuid);
+        return entry != null ? entry.memories : List.of();
+    }
+
+    private Map<UUID, PlayerMemories> index() {
+        if (byPlayer == null) {
+            rebuildPlayerIndex();
+        }
+        return byPlayer;
+    }
+
+    private void rebuildPlayerIndex() {
+        attachAll();
+        byPlayer = new HashMap<>();
+        for (Memory memory : memories) {
+            index(memory);
+        }
+    }
+
+    private void index(Memory memory) {
+        UUID key = memory.getPlayerKey();
+        if (key != null) {
+            byPlayer.computeIfAbsent(key, k -> new PlayerMemories()).add(memory, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Memories about one player and the running aggregate behind getSentimentTowardsPlayer.
+     *
+     * The sentiment is sum(impact * importance * recency) / sum(importance * recency), recency being
+     * a step function of age: per recency bucket the two importance sums are kept, so a read is
+     * 4 multiply-adds. Memories only ever move to older buckets; the sums are rolled forward
+     * lazily, on the first read after the earliest such move (nextRollMs), under the VillagerMemory lock.
+     * The sums cache each memory's impact, importance and timestamp: changing one of them after the
+     * add drops the whole index (see memoryChanged).
+     */
+    private static final class PlayerMemories {
+        final List<Memory> memories = new ArrayList<>();
+        final double[] impactSums = new double[RECENCY_WEIGHTS.length];     // sum(impact * importance)
+        final double[] importanceSums = new double[RECENCY_WEIGHTS.length]; // sum(importance)
+        long nextRollMs = Long.MAX_VALUE;
+
+        void add(Memory memory, long now) {
+            memories.add(memory);
+            accumulate(memory, now);
+        }
+
+        /**
+         * Take an evicted memory out of the list and the sums; true when no memory is left.
+         */
+        boolean remove(Memory memory, long now) {
+            for (int i = 0; i < memories.size(); i++) {
+                if (memories.get(i) == memory) {
+                    memories.remove(i);
+                    break;
+                }
+            }
+            if (memories.isEmpty()) return true;
+
+            if (now >= nextRollMs) {
+                roll(now); // Some buckets are stale: re-bucket without it
+            } else {
+                // No memory changed bucket since it was summed: it is still in the bucket of its age
+                int bucket = recencyBucket(now - memory.getTimestamp());
+                impactSums[bucket] -= memory.getEmotionalImpact() * memory.getImportance();
+                importanceSums[bucket] -= memory.getImportance();
+            }
+            return false;
+        }
+
+        double sentiment(long now) {
+            if (now >= nextRollMs) {
+                roll(now);
+            }
+            double weightedSum = 0.0;
+            double totalWeight = 0.0;
+            for (int b = 0; b < RECENCY_WEIGHTS.length; b++) {
+                weightedSum += impactSums[b] * RECENCY_WEIGHTS[b];
+                totalWeight += importanceSums[b] * RECENCY_WEIGHTS[b];
+            }
+            return totalWeight > 0 ? weightedSum / totalWeight : 0.0;
+        }
+
+        // Re-bucket every memory of this player (at most 3 times per memory over its lifetime)
+        private void roll(long now) {
+            Arrays.fill(impactSums, 0.0);
+            Arrays.fill(importanceSums, 0.0);
+            nextRollMs = Long.MAX_VALUE;
+            for (Memory memory : memories) {
+                accumulate(memory, now);
+            }
+        }
+
+        private void accumulate(Memory memory, long now) {
+            long age = now - memory.getTimestamp();
+            int bucket = recencyBucket(age);
+            impactSums[bucket] += memory.getEmotionalImpact() * memory.getImportance();
+            importanceSums[bucket] += memory.getImportance();
+            if (bucket < RECENCY_BUCKET_MS.length) {
+                nextRollMs = Math.min(nextRollMs, memory.getTimestamp() + RECENCY_BUCKET_MS[bucket]);
+            }
         }
     }
 
     /**
      * Get all memories.
      */
-    public List<Memory> getAllMemories() {
+    public synchronized List<Memory> getAllMemories() {
         return new ArrayList<>(memories);
     }
 
     /**
      * Get number of memories.
      */
-    public int getMemoryCount() {
+    public synchronized int getMemoryCount() {
         return memories.size();
     }
 
+    /**
+     * Counter that changes on every add, prune or reset: fingerprint of the memory state.
+     */
+    public synchronized int getModificationCount() {
+        return modifications;
+    }
+
     /**
      * Get memories with a specific player (alias for getMemoriesAboutPlayer).
      * Used for debug HUD display.
@@ -213,15 +410,18 @@ public class VillagerMemory {
     /**
      * Clear all memories (for testing or reset).
      */
-    public void clearMemories() {
+    public synchronized void clearMemories() {
         memories.clear();
         knownPlayers.clear();
+        modifications++;
+        byPlayer = null;
+        textIndex = null;
     }
 
     /**
      * Serialize to JSON.
      */
-    public String toJson() {
+    public synchronized String toJson() {
         return gson.toJson(this);
     }
 
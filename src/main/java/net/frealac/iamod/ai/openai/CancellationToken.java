@@ -0,0 +1,89 @@
+package net.frealac.iamod.ai.openai;
+
+import net.frealac.iamod.IAMOD;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation shared by every piece of LLM work started for one conversation.
+ *
+ * - Cancelling runs the registered listeners once (abort HTTP exchange, release slot, ...)
+ * - Listeners registered after cancellation run immediately
+ * - Safe to use from any thread
+ */
+public final class CancellationToken {
+
+    /**
+     * Token that is never cancelled, for work not tied to a conversation.
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    private final List<Runnable> listeners = new ArrayList<>();
+    private boolean cancelled;
+
+    /**
+     * Cancel the token and run its listeners. Calling it more than once is harmless.
+     */
+    public void cancel() {
+        if (this == NONE) return;
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : toRun) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                IAMOD.LOGGER.warn("Cancellation listener failed", e);
+            }
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Run the listener when the token is cancelled (or now, if it already is).
+     * Returns a handle that unregisters the listener once the guarded work has finished,
+     * so long-lived conversation tokens don't accumulate stale listeners.
+     */
+    public Runnable onCancel(Runnable listener) {
+        if (this == NONE) return () -> {};
+        synchronized (this) {
+            if (!cancelled) {
+                listeners.add(listener);
+                return () -> {
+                    synchronized (this) {
+                        listeners.remove(listener);
+                    }
+                };
+            }
+        }
+        listener.run();
+        return () -> {};
+    }
+
+    /**
+     * Exception used to complete futures aborted by this token.
+     */
+    public static CancellationException cancelledException() {
+        return new CancellationException("Conversation fermée");
+    }
+
+    /**
+     * True if the throwable (possibly wrapped by a CompletableFuture stage) is a cancellation.
+     */
+    public static boolean isCancellation(Throwable ex) {
+        while (ex != null) {
+            if (ex instanceof CancellationException) return true;
+            ex = ex.getCause();
+        }
+        return false;
+    }
+}
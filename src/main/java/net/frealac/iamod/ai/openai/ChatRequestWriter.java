@@ -0,0 +1,359 @@
+package net.frealac.iamod.ai.openai;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import net.frealac.iamod.ai.ChatMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes chat-completion requests straight into UTF-8 bytes.
+ *
+ * The old path built a Gson tree, turned it into a String, then encoded that String again
+ * for the HTTP body: three copies of every prompt, several hundred KB per message with long brain contexts.
+ * - Messages and options are written with a {@link JsonWriter} directly into a pooled byte buffer
+ * - The body publisher hands that buffer to the HTTP client as is (no copy)
+ * - The buffer goes back to the pool once its owner released it ({@link Body#release()}) and every
+ *   HTTP exchange that was lent the bytes has terminated ({@link #lend(HttpRequest)})
+ * - A cancelled or failed exchange may still have the bytes queued on its connection (an HTTP/2
+ *   connection carries other streams and stays open), so a buffer lent to one is left to the GC instead
+ */
+public final class ChatRequestWriter {
+
+    private static final int POOL_SIZE = 16;                 // Buffers kept for reuse
+    private static final int INITIAL_BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_POOLED_BYTES = 1024 * 1024; // Larger buffers are left to the GC
+
+    // Existing payload trees (callers not migrated yet) are streamed with the same settings as JsonObject.toString()
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+
+    private static final ArrayDeque<byte[]> POOL = new ArrayDeque<>();
+
+    private static final AtomicLong bodies = new AtomicLong();
+    private static final AtomicLong bytesWritten = new AtomicLong();
+    private static final AtomicLong pooledReuses = new AtomicLong();
+    private static final AtomicLong bufferGrowths = new AtomicLong();
+    private static final AtomicLong abandonedBuffers = new AtomicLong();
+
+    private ChatRequestWriter() {
+    }
+
+    /**
+     * End of an exchange's loan of a body (see {@link #lend(HttpRequest)}).
+     */
+    @FunctionalInterface
+    public interface Loan {
+        Loan NONE = aborted -> {
+        };
+
+        /**
+         * @param aborted the exchange was cancelled or failed: its bytes may still be read
+         */
+        void end(boolean aborted);
+    }
+
+    /**
+     * Serialized request, ready to send. Equal bodies have equal bytes (used as the coalescing key).
+     */
+    public static final class Body {
+        private final byte[] buffer;
+        private final int length;
+        private final int hash;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private final AtomicInteger holders = new AtomicInteger(1); // The owner, plus one per exchange
+        private volatile boolean abandoned;
+
+        private Body(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; i++) h = 31 * h + buffer[i];
+            this.hash = h;
+        }
+
+        /**
+         * Publisher over the pooled bytes; every subscription (retry, hedged request) re-reads them.
+         */
+        public HttpRequest.BodyPublisher publisher() {
+            return new BufferPublisher(this);
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Give the buffer back to the pool once no exchange reads it anymore.
+         * Idempotent; the body must not be sent afterwards.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) drop();
+        }
+
+        private Loan lend() {
+            holders.incrementAndGet();
+            AtomicBoolean ended = new AtomicBoolean(false);
+            return aborted -> {
+                if (!ended.compareAndSet(false, true)) return;
+                if (aborted) abandoned = true;
+                drop();
+            };
+        }
+
+        private void drop() {
+            if (holders.decrementAndGet() != 0) return;
+            if (abandoned) abandonedBuffers.incrementAndGet();
+            else recycle(buffer);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Body other)) return false;
+            return hash == other.hash && length == other.length
+                    && Arrays.equals(buffer, 0, length, other.buffer, 0, other.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, 0, length, java.nio.charset.StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Write a chat-completion request from a message history and its options.
+     *
+     * @param model model name (blank = {@link OpenAiClient#getModel()})
+     * @param jsonMode ask for a JSON object answer (response_format json_object)
+     */
+    public static Body chat(String model, List<ChatMessage> messages, double temperature, int maxTokens,
+                            boolean stream, boolean jsonMode) {
+        Utf8Sink sink = new Utf8Sink(acquire());
+        try (JsonWriter json = new JsonWriter(sink)) {
+            json.beginObject();
+            json.name("model").value(model == null || model.isBlank() ? OpenAiClient.getModel() : model);
+            json.name("messages").beginArray();
+            for (ChatMessage m : messages) {
+                json.beginObject();
+                json.name("role").value(m.role);
+                json.name("content").value(m.content);
+                json.endObject();
+            }
+            json.endArray();
+            json.name("temperature").value(temperature);
+            json.name("max_tokens").value(maxTokens);
+            if (stream) json.name("stream").value(true);
+            if (jsonMode) {
+                json.name("response_format").beginObject().name("type").value("json_object").endObject();
+            }
+            json.endObject();
+        } catch (IOException e) {
+            recycle(sink.buffer);
+            throw new UncheckedIOException(e);
+        }
+        return finish(sink);
+    }
+
+    /**
+     * Stream an existing payload tree into a body (no intermediate String).
+     */
+    public static Body write(JsonObject payload) {
+        Utf8Sink sink = new Utf8Sink(acquire());
+        try (JsonWriter json = new JsonWriter(sink)) {
+            GSON.toJson(payload, json);
+        } catch (IOException | RuntimeException e) {
+            recycle(sink.buffer);
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+        return finish(sink);
+    }
+
+    /**
+     * Lend the pooled buffer behind this request to one HTTP exchange ({@link Loan#NONE} for other bodies).
+     * End the loan from the future returned by HttpClient.sendAsync, not from a caller-facing one:
+     * those complete on cancellation while the client may still be writing the bytes.
+     */
+    static Loan lend(HttpRequest request) {
+        return request.bodyPublisher()
+                .filter(p -> p instanceof BufferPublisher)
+                .map(p -> ((BufferPublisher) p).body.lend())
+                .orElse(Loan.NONE);
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        long count = bodies.get();
+        int pooled;
+        synchronized (POOL) {
+            pooled = POOL.size();
+        }
+        return String.format("Request writer: %d bodies, avg %d bytes, buffers reused=%d grown=%d abandoned=%d pooled=%d",
+                count, count == 0 ? 0 : bytesWritten.get() / count, pooledReuses.get(), bufferGrowths.get(),
+                abandonedBuffers.get(), pooled);
+    }
+
+    private static Body finish(Utf8Sink sink) {
+        bodies.incrementAndGet();
+        bytesWritten.addAndGet(sink.length);
+        return new Body(sink.buffer, sink.length);
+    }
+
+    private static byte[] acquire() {
+        synchronized (POOL) {
+            byte[] buffer = POOL.pollFirst();
+            if (buffer != null) {
+                pooledReuses.incrementAndGet();
+                return buffer;
+            }
+        }
+        return new byte[INITIAL_BUFFER_BYTES];
+    }
+
+    private static void recycle(byte[] buffer) {
+        if (buffer.length > MAX_POOLED_BYTES) return;
+        synchronized (POOL) {
+            if (POOL.size() < POOL_SIZE) POOL.addFirst(buffer);
+        }
+    }
+
+    /**
+     * UTF-8 encoding Writer over a growable byte array (JsonWriter output).
+     */
+    private static final class Utf8Sink extends Writer {
+        byte[] buffer;
+        int length;
+        private char highSurrogate;
+
+        Utf8Sink(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int c) {
+            ensure(4);
+            put((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) {
+            ensure(len * 3 + 1);
+            for (int i = off; i < off + len; i++) put(chars[i]);
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            ensure(len * 3 + 1);
+            for (int i = off; i < off + len; i++) put(s.charAt(i));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        // Room for n more bytes; the old buffer goes back to the pool when it is outgrown
+        private void ensure(int n) {
+            if (length + n <= buffer.length) return;
+            byte[] grown = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + n));
+            recycle(buffer);
+            buffer = grown;
+            bufferGrowths.incrementAndGet();
+        }
+
+        private void put(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    buffer[length++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+                    return;
+                }
+                buffer[length++] = '?'; // Lone high surrogate
+            }
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                buffer[length++] = '?'; // Lone low surrogate
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Publishes the bytes as one read-only ByteBuffer wrapping the array.
+     */
+    private static final class BufferPublisher implements HttpRequest.BodyPublisher {
+        private final Body body;
+
+        BufferPublisher(Body body) {
+            this.body = body;
+        }
+
+        @Override
+        public long contentLength() {
+            return body.length;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private final AtomicBoolean done = new AtomicBoolean(false);
+
+                @Override
+                public void request(long n) {
+                    if (done.get()) return;
+                    if (n <= 0) {
+                        if (done.compareAndSet(false, true)) {
+                            subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                        }
+                        return;
+                    }
+                    if (done.compareAndSet(false, true)) {
+                        subscriber.onNext(ByteBuffer.wrap(body.buffer, 0, body.length).asReadOnlyBuffer());
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.frealac.iamod.ai.openai;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker in front of the OpenAI API.
+ *
+ * When the upstream error rate spikes (outage, 5xx, 429 storm, timeouts), piling more requests on it
+ * only makes villagers wait longer. The breaker fails fast instead:
+ * - CLOSED: everything goes through; outcomes of the last WINDOW exchanges are tracked
+ * - OPEN: error rate >= llmBreakerFailureRate over at least MIN_CALLS exchanges, every request
+ *   fails immediately with {@link OpenException} for llmBreakerCooldownSeconds
+ * - HALF_OPEN: one probe request is let through; success closes the circuit, failure re-opens it
+ *
+ * Cancellations are not outcomes: a closed dialog says nothing about upstream health.
+ */
+public final class CircuitBreaker {
+
+    private static final int WINDOW = 20;
+    private static final int MIN_CALLS = 8;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Thrown instead of sending a request while the circuit is open.
+     */
+    public static final class OpenException extends IOException {
+        public OpenException() {
+            super("Circuit OpenAI ouvert: trop d'erreurs récentes");
+        }
+    }
+
+    private static final CircuitBreaker INSTANCE = new CircuitBreaker();
+
+    private final boolean[] failures = new boolean[WINDOW];
+    private int next;
+    private int count;
+    private int failureCount;
+
+    private State state = State.CLOSED;
+    private long openedAtMs;
+    private boolean probeInFlight;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong trips = new AtomicLong();
+
+    private CircuitBreaker() {
+    }
+
+    /**
+     * Get the shared breaker.
+     */
+    public static CircuitBreaker get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Ask permission to send one request. Every granted permission must be followed by exactly one
+     * of {@link #onSuccess()}, {@link #onFailure()} or {@link #onCancelled()}.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAtMs < cooldownMs()) break;
+                state = State.HALF_OPEN;
+                // fall through: this caller becomes the probe
+            case HALF_OPEN:
+                if (probeInFlight) break;
+                probeInFlight = true;
+                return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            IAMOD.LOGGER.info("🔌 OpenAI circuit closed: upstream answered again");
+            reset();
+            return;
+        }
+        recordOutcome(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            open();
+            return;
+        }
+        recordOutcome(true);
+        if (state == State.CLOSED && count >= MIN_CALLS
+                && (double) failureCount / count >= Config.llmBreakerFailureRate) {
+            open();
+        }
+    }
+
+    /**
+     * The request was abandoned: free the probe without judging the upstream.
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) probeInFlight = false;
+    }
+
+    /**
+     * Record the outcome of a finished exchange: 5xx, 429 and transport errors count as failures.
+     */
+    public void onOutcome(HttpResponse<?> response, Throwable ex) {
+        if (ex != null) {
+            if (CancellationToken.isCancellation(ex)) onCancelled();
+            else onFailure();
+        } else if (response.statusCode() == 429 || response.statusCode() >= 500) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Human-readable state and counters.
+     */
+    public synchronized String getStats() {
+        return String.format("Circuit: %s, errors=%d/%d recent, trips=%d rejected=%d",
+                state, failureCount, count, trips.get(), rejected.get());
+    }
+
+    // Caller holds the lock
+    private void recordOutcome(boolean failed) {
+        if (count == WINDOW) {
+            if (failures[next]) failureCount--;
+        } else {
+            count++;
+        }
+        failures[next] = failed;
+        if (failed) failureCount++;
+        next = (next + 1) % WINDOW;
+    }
+
+    // Caller holds the lock
+    private void open() {
+        state = State.OPEN;
+        openedAtMs = System.currentTimeMillis();
+        trips.incrementAndGet();
+        IAMOD.LOGGER.warn("🔌 OpenAI circuit OPEN for {}s ({} errors in the last {} requests)",
+                cooldownMs() / 1000, failureCount, count);
+    }
+
+    // Caller holds the lock
+    private void reset() {
+        state = State.CLOSED;
+        probeInFlight = false;
+        next = 0;
+        count = 0;
+        failureCount = 0;
+        Arrays.fill(failures, false);
+    }
+
+    private static long cooldownMs() {
+        return TimeUnit.SECONDS.toMillis(Math.max(1, Config.llmBreakerCooldownSeconds));
+    }
+}
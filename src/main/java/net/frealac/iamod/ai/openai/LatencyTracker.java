@@ -0,0 +1,150 @@
+package net.frealac.iamod.ai.openai;
+
+import net.frealac.iamod.Config;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Rolling latency statistics used to size timeouts and hedging delays.
+ *
+ * - One tracker for the time-to-first-token of streamed replies
+ * - One tracker per scheduler lane for non-streamed completions (an analysis and a reflection
+ *   do not take the same time)
+ * - Fixed ring buffer of the last WINDOW samples, percentiles computed on demand
+ * - TIMEOUTS count too: an exchange abandoned at its timeout is a sample at that value (its real
+ *   latency is at least that), and each consecutive one doubles the next timeout. Otherwise an upstream
+ *   slowing down past p95 x factor would time out every request while p95 never moves
+ *
+ * Until MIN_SAMPLES are known, the configured ceilings apply unchanged.
+ */
+public final class LatencyTracker {
+
+    private static final int WINDOW = 128;
+    private static final int MIN_SAMPLES = 16;
+    private static final long MIN_TIMEOUT_MS = 3000;
+    private static final int MAX_BACKOFF_SHIFT = 5; // Consecutive timeouts: at most x32 (the ceiling applies first)
+
+    private static final LatencyTracker FIRST_TOKEN = new LatencyTracker("first-token");
+    private static final Map<LlmScheduler.Lane, LatencyTracker> COMPLETION = new EnumMap<>(LlmScheduler.Lane.class);
+
+    static {
+        for (LlmScheduler.Lane lane : LlmScheduler.Lane.values()) {
+            COMPLETION.put(lane, new LatencyTracker(lane.name().toLowerCase()));
+        }
+    }
+
+    private final String name;
+    private final long[] samples = new long[WINDOW];
+    private int next;
+    private int count;
+    private int consecutiveTimeouts;
+
+    private LatencyTracker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Time-to-first-token of streamed chat replies.
+     */
+    public static LatencyTracker firstToken() {
+        return FIRST_TOKEN;
+    }
+
+    /**
+     * Full response time of non-streamed requests in this lane.
+     */
+    public static LatencyTracker completion(LlmScheduler.Lane lane) {
+        return COMPLETION.get(lane);
+    }
+
+    /**
+     * Record one successful exchange that started at startNanos (System.nanoTime()).
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1_000_000L);
+    }
+
+    public synchronized void record(long millis) {
+        add(millis);
+        consecutiveTimeouts = 0;
+    }
+
+    /**
+     * Record one exchange abandoned after this timeout (see class doc).
+     */
+    public synchronized void recordTimeout(Duration timeout) {
+        add(timeout.toMillis());
+        consecutiveTimeouts = Math.min(MAX_BACKOFF_SHIFT, consecutiveTimeouts + 1);
+    }
+
+    // Caller holds the lock
+    private void add(long millis) {
+        samples[next] = Math.max(0, millis);
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) count++;
+    }
+
+    /**
+     * Percentile of the recent samples in ms, or -1 while there are not enough of them.
+     */
+    public long percentile(double p) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < MIN_SAMPLES) return -1;
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+
+    public long p95() {
+        return percentile(0.95);
+    }
+
+    /**
+     * Timeout derived from the observed p95: p95 x llmTimeoutP95Factor, doubled per consecutive
+     * timeout, kept between MIN_TIMEOUT_MS and the given ceiling. The ceiling alone while there is no history.
+     */
+    public Duration timeout(Duration ceiling) {
+        long ceilingMs = ceiling.toMillis();
+        long p95 = p95();
+        if (p95 < 0) return ceiling;
+        int backoff;
+        synchronized (this) {
+            backoff = consecutiveTimeouts;
+        }
+        long adaptive = (long) (p95 * Math.max(1.0, Config.llmTimeoutP95Factor) * (1L << backoff));
+        return Duration.ofMillis(Math.max(Math.min(MIN_TIMEOUT_MS, ceilingMs), Math.min(adaptive, ceilingMs)));
+    }
+
+    /**
+     * Human-readable summary.
+     */
+    public String getStats() {
+        long p50 = percentile(0.5);
+        long p95 = p95();
+        int n;
+        int timeouts;
+        synchronized (this) {
+            n = count;
+            timeouts = consecutiveTimeouts;
+        }
+        if (p50 < 0) return String.format("%s: %d samples", name, n);
+        return String.format("%s: p50=%dms p95=%dms (%d samples, %d timeouts in a row)", name, p50, p95, n, timeouts);
+    }
+
+    /**
+     * Summary of every tracker, one per line.
+     */
+    public static String getAllStats() {
+        StringBuilder sb = new StringBuilder("Latency ").append(FIRST_TOKEN.getStats());
+        for (LatencyTracker tracker : COMPLETION.values()) {
+            sb.append("\nLatency ").append(tracker.getStats());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,402 @@
+package net.frealac.iamod.ai.openai;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Central scheduler for every LLM request sharing the API key.
+ *
+ * - Priority lanes: INTERACTIVE > ANALYSIS > REFLECTION > ENRICHMENT
+ * - Global token bucket (requests/minute), part of it reserved for interactive chat
+ * - Per-player token bucket, so one chatty player can't starve the others. Only chat passes a player:
+ *   analyses, reflections and enrichments are batched or coalesced across players and run as
+ *   background work (player null), bounded by the global bucket and its interactive reserve
+ * - Bounded queue: background work is rejected (or evicted for chat) instead of piling up
+ * - Metrics: queue depth, wait time, rejections per lane
+ *
+ * Work is submitted as a starter (Supplier of a future): nothing is sent before a token is granted.
+ */
+public final class LlmScheduler {
+
+    /**
+     * Priority lanes, highest first.
+     */
+    public enum Lane {
+        INTERACTIVE,  // Villager replies the player is waiting for
+        ANALYSIS,     // Sentiment analysis of player messages
+        REFLECTION,   // Memory reflections, brain module reasoning
+        ENRICHMENT    // Story enrichment, anything that can wait
+    }
+
+    private static final double INTERACTIVE_RESERVE = 0.2;   // Share of the global bucket only chat may use
+    private static final long MAX_IDLE_WAIT_MS = 1000;       // Dispatcher re-check period when nothing is queued
+    private static final long PLAYER_BUCKET_IDLE_MS = 10 * 60 * 1000L;
+
+    private static final LlmScheduler INSTANCE = new LlmScheduler();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final EnumMap<Lane, ArrayDeque<Job<?>>> lanes = new EnumMap<>(Lane.class);
+    private final EnumMap<Lane, LaneStats> stats = new EnumMap<>(Lane.class);
+    private final Map<UUID, TokenBucket> playerBuckets = new HashMap<>();
+    private TokenBucket globalBucket;
+    private int queued;
+    private Thread dispatcher;
+    private long lastPrune = System.nanoTime();
+
+    private LlmScheduler() {
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new ArrayDeque<>());
+            stats.put(lane, new LaneStats());
+        }
+    }
+
+    /**
+     * Get the shared scheduler.
+     */
+    public static LlmScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queue a request.
+     *
+     * @param lane Priority lane
+     * @param player Player the request is for (per-player rate limit), or null for background work (see class doc)
+     * @param token Cancelling it drops the request while queued (the starter handles it once running)
+     * @param starter Starts the actual request once a token is granted
+     * @return Future completed with the starter's result, or with RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, UUID player, CancellationToken token,
+                                           Supplier<CompletableFuture<T>> starter) {
+        Job<T> job = new Job<>(lane, player, token, starter);
+        LaneStats laneStats = stats.get(lane);
+        laneStats.submitted.incrementAndGet();
+
+        // Drop the job while it is still queued if the conversation closes
+        job.unregisterCancel = token.onCancel(() -> {
+            lock.lock();
+            try {
+                if (lanes.get(lane).remove(job)) {
+                    queued--;
+                }
+            } finally {
+                lock.unlock();
+            }
+            job.result.completeExceptionally(CancellationToken.cancelledException());
+        });
+        if (job.result.isDone()) return job.result;
+
+        lock.lock();
+        try {
+            ensureDispatcher();
+            if (queued >= capacity() && !evictForInteractive(lane)) {
+                laneStats.rejected.incrementAndGet();
+                job.unregisterCancel.run();
+                IAMOD.LOGGER.warn("⏳ LLM queue full ({}), {} request rejected", queued, lane);
+                return CompletableFuture.failedFuture(new RejectedExecutionException("File LLM pleine (" + lane + ")"));
+            }
+            lanes.get(lane).addLast(job);
+            queued++;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        return job.result;
+    }
+
+    /**
+     * Blocking helper for synchronous callers (never call it from the server thread for background lanes).
+     */
+    public <T> T submitAndWait(Lane lane, UUID player, Supplier<CompletableFuture<T>> starter)
+            throws IOException, InterruptedException {
+        return await(submit(lane, player, CancellationToken.NONE, starter));
+    }
+
+    /**
+     * Wait for a scheduled request, unwrapping its failure into the exceptions synchronous callers expect.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Number of requests waiting in a lane.
+     */
+    public int getQueueDepth(Lane lane) {
+        lock.lock();
+        try {
+            return lanes.get(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Human-readable metrics, one line per lane.
+     */
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        lock.lock();
+        try {
+            sb.append(String.format("LLM queue: %d/%d, global tokens: %.1f%n",
+                    queued, capacity(), globalBucket == null ? 0.0 : globalBucket.available(System.nanoTime())));
+            for (Lane lane : Lane.values()) {
+                LaneStats s = stats.get(lane);
+                long dispatched = s.dispatched.get();
+                double avgWaitMs = dispatched == 0 ? 0 : s.totalWaitNanos.get() / 1_000_000.0 / dispatched;
+                sb.append(String.format("- %s: depth=%d submitted=%d dispatched=%d rejected=%d avgWait=%.0fms maxWait=%dms%n",
+                        lane, lanes.get(lane).size(), s.submitted.get(), dispatched, s.rejected.get(),
+                        avgWaitMs, s.maxWaitNanos.get() / 1_000_000));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return sb.toString();
+    }
+
+    // ==================== DISPATCH ====================
+
+    private void ensureDispatcher() {
+        if (dispatcher != null) return;
+        dispatcher = new Thread(this::dispatchLoop, "iamod-llm-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            Job<?> next;
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refreshBuckets(now);
+                next = pollReady(now);
+                if (next == null) {
+                    changed.await(nextWakeupMs(now), TimeUnit.MILLISECONDS);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            start(next);
+        }
+    }
+
+    /**
+     * Highest-priority job whose player and the global bucket both have a token. Caller holds the lock.
+     */
+    private Job<?> pollReady(long now) {
+        for (Lane lane : Lane.values()) {
+            if (globalBucket.available(now) < globalThreshold(lane)) continue;
+
+            Iterator<Job<?>> it = lanes.get(lane).iterator();
+            while (it.hasNext()) {
+                Job<?> job = it.next();
+                TokenBucket playerBucket = job.player == null ? null : playerBucket(job.player);
+                if (playerBucket != null && !playerBucket.tryAcquire(now)) continue;
+                globalBucket.tryAcquire(now);
+                it.remove();
+                queued--;
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private <T> void start(Job<T> job) {
+        long waited = System.nanoTime() - job.enqueuedAt;
+        LaneStats s = stats.get(job.lane);
+        s.dispatched.incrementAndGet();
+        s.totalWaitNanos.addAndGet(waited);
+        s.maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        // Cancelled after leaving the queue: the listener may already be gone, complete here (idempotent)
+        job.unregisterCancel.run();
+        if (job.token.isCancelled()) {
+            job.result.completeExceptionally(CancellationToken.cancelledException());
+            return;
+        }
+
+        try {
+            job.starter.get().whenComplete((value, ex) -> {
+                if (ex != null) job.result.completeExceptionally(ex);
+                else job.result.complete(value);
+            });
+        } catch (RuntimeException e) {
+            job.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Make room for an interactive request by rejecting the newest background job. Caller holds the lock.
+     */
+    private boolean evictForInteractive(Lane lane) {
+        if (lane != Lane.INTERACTIVE) return false;
+        Lane[] order = Lane.values();
+        for (int i = order.length - 1; i > 0; i--) {
+            Job<?> victim = lanes.get(order[i]).pollLast();
+            if (victim != null) {
+                queued--;
+                stats.get(victim.lane).rejected.incrementAndGet();
+                victim.unregisterCancel.run();
+                victim.result.completeExceptionally(new RejectedExecutionException("Évincé par une requête interactive"));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tokens the global bucket must hold before a job of this lane may start:
+     * background lanes leave a reserve for interactive chat.
+     */
+    private double globalThreshold(Lane lane) {
+        if (lane == Lane.INTERACTIVE) return 1;
+        return 1 + Math.min(globalBucket.capacity * INTERACTIVE_RESERVE, globalBucket.capacity - 1);
+    }
+
+    /**
+     * Time until the first queued job could start. Caller holds the lock.
+     */
+    private long nextWakeupMs(long now) {
+        long best = TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_WAIT_MS);
+        for (Lane lane : Lane.values()) {
+            long globalWait = globalBucket.nanosUntil(globalThreshold(lane), now);
+            for (Job<?> job : lanes.get(lane)) {
+                long playerWait = job.player == null ? 0 : playerBucket(job.player).nanosUntil(1, now);
+                best = Math.min(best, Math.max(globalWait, playerWait));
+            }
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(best));
+    }
+
+    /**
+     * Apply config changes (rates can be edited at runtime) and forget idle player buckets. Caller holds the lock.
+     */
+    private void refreshBuckets(long now) {
+        int globalPerMinute = Math.max(1, Config.llmGlobalRequestsPerMinute);
+        if (globalBucket == null || globalBucket.perMinute != globalPerMinute) {
+            globalBucket = new TokenBucket(globalPerMinute, now);
+        }
+        if (now - lastPrune > TimeUnit.MILLISECONDS.toNanos(PLAYER_BUCKET_IDLE_MS)) {
+            lastPrune = now;
+            playerBuckets.values().removeIf(b -> now - b.lastUse > TimeUnit.MILLISECONDS.toNanos(PLAYER_BUCKET_IDLE_MS));
+        }
+    }
+
+    private TokenBucket playerBucket(UUID player) {
+        int perMinute = Math.max(1, Config.llmPlayerRequestsPerMinute);
+        TokenBucket bucket = playerBuckets.get(player);
+        if (bucket == null || bucket.perMinute != perMinute) {
+            bucket = new TokenBucket(perMinute, System.nanoTime());
+            playerBuckets.put(player, bucket);
+        }
+        return bucket;
+    }
+
+    private static int capacity() {
+        return Math.max(1, Config.llmQueueCapacity);
+    }
+
+    // ==================== INTERNALS ====================
+
+    private static final class Job<T> {
+        final Lane lane;
+        final UUID player;
+        final CancellationToken token;
+        final Supplier<CompletableFuture<T>> starter;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+        volatile Runnable unregisterCancel = () -> {};
+
+        Job(Lane lane, UUID player, CancellationToken token, Supplier<CompletableFuture<T>> starter) {
+            this.lane = lane;
+            this.player = player;
+            this.token = token;
+            this.starter = starter;
+        }
+    }
+
+    /**
+     * Classic token bucket: capacity = one minute of requests, refilled continuously.
+     * Burst size is capped to a quarter of the per-minute rate (at least 1).
+     */
+    private static final class TokenBucket {
+        final int perMinute;
+        final double capacity;
+        final double refillPerNano;
+        double tokens;
+        long lastRefill;
+        long lastUse;
+
+        TokenBucket(int perMinute, long now) {
+            this.perMinute = perMinute;
+            this.capacity = Math.max(1.0, perMinute / 4.0);
+            this.refillPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.tokens = capacity;
+            this.lastRefill = now;
+            this.lastUse = now;
+        }
+
+        double available(long now) {
+            refill(now);
+            return tokens;
+        }
+
+        boolean tryAcquire(long now) {
+            refill(now);
+            if (tokens < 1) return false;
+            tokens -= 1;
+            lastUse = now;
+            return true;
+        }
+
+        long nanosUntil(double wanted, long now) {
+            refill(now);
+            if (tokens >= wanted) return 0;
+            return (long) ((wanted - tokens) / refillPerNano);
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed <= 0) return;
+            tokens = Math.min(capacity, tokens + elapsed * refillPerNano);
+            lastRefill = now;
+        }
+    }
+
+    private static final class LaneStats {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong dispatched = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+    }
+}
@@ -2,8 +2,10 @@ package net.frealac.iamod.ai.openai;
 
 import com.google.gson.*;
 import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.ChatMessage;
 import net.frealac.iamod.ai.brain.AIAction;
 import net.frealac.iamod.ai.brain.BrainModelConfig;
+import net.frealac.iamod.ai.brain.LayeredPromptBuilder;
 import net.frealac.iamod.ai.brain.VillagerBrainSystem;
 
 import java.io.IOException;
@@ -21,6 +23,9 @@ import java.util.Map;
  */
 public class OpenAiBrainService {
 
+    // Static roleplay rules, first layer of every brain prompt
+    private static final String BRAIN_RULES = buildBrainRules();
+
     private final OpenAiClient client;
     private final Gson gson;
 
@@ -28,7 +33,7 @@ public class OpenAiBrainService {
     private static final Map<Integer, VillagerBrainSystem> brainSystems = new HashMap<>();
 
     public OpenAiBrainService() {
-        this.client = new OpenAiClient();
+        this.client = new OpenAiClient(LlmScheduler.Lane.INTERACTIVE);
         this.gson = new GsonBuilder().create();
     }
 
@@ -54,34 +59,19 @@ public class OpenAiBrainService {
         VillagerBrainSystem brainSystem = getOrCreateBrainSystem(villagerId, villagerStory);
 
         // Generate comprehensive context using ALL brain modules
+        // Roleplay rules go first so every request shares the same prompt prefix
         String comprehensiveContext = brainSystem.processPlayerMessage(
-            playerUuid, playerMessage, villagerStory, currentGoalsState);
+            BRAIN_RULES, playerUuid, playerMessage, villagerStory, currentGoalsState);
 
         IAMOD.LOGGER.info("🧠 Brain System generated context for villager {}", villagerId);
 
-        JsonObject payload = new JsonObject();
-        JsonArray messages = new JsonArray();
-
-        // System prompt with brain-generated context
-        JsonObject system = new JsonObject();
-        system.addProperty("role", "system");
-        system.addProperty("content", buildBrainSystemPrompt(comprehensiveContext));
-        messages.add(system);
-
-        // User message
-        JsonObject user = new JsonObject();
-        user.addProperty("role", "user");
-        user.addProperty("content", playerMessage);
-        messages.add(user);
-
-        payload.add("messages", messages);
-
-        // Use config from BrainModelConfig for GeneralBrain
-        payload.addProperty("temperature", BrainModelConfig.getTemperature("GeneralBrain"));
-        payload.addProperty("max_tokens", BrainModelConfig.getMaxTokens("GeneralBrain"));
-        payload.add("response_format", createJsonResponseFormat());
+        // System prompt with brain-generated context, then the player's message
+        // Default chat model; temperature and tokens from BrainModelConfig for GeneralBrain (JSON answer)
+        ChatRequestWriter.Body body = ChatRequestWriter.chat(null,
+            List.of(ChatMessage.system(comprehensiveContext), ChatMessage.user(playerMessage)),
+            BrainModelConfig.getTemperature("GeneralBrain"), BrainModelConfig.getMaxTokens("GeneralBrain"), false, true);
 
-        String responseBody = client.sendChatRequest(payload);
+        String responseBody = client.sendChatRequest(body);
         String content = extractContent(responseBody);
 
         // Parse actions from JSON response
@@ -114,16 +104,14 @@ public class OpenAiBrainService {
     }
 
     /**
-     * Build system prompt with brain-generated comprehensive context.
-     * The brain system already provides ALL context from all brain modules.
+     * Build the static roleplay rules placed before the brain-generated context.
+     * Identical for every villager and every message: computed once, sent as the prompt prefix
+     * (the villager's identity and state follow, see LayeredPromptBuilder).
      */
-    private String buildBrainSystemPrompt(String comprehensiveContext) {
+    private static String buildBrainRules() {
         StringBuilder prompt = new StringBuilder();
 
-        // The comprehensive context already contains everything from all brain modules
-        prompt.append(comprehensiveContext);
-
-        prompt.append("\n╔═══════════════════════════════════════════════════════════════════════════╗\n");
+        prompt.append("╔═══════════════════════════════════════════════════════════════════════════╗\n");
         prompt.append("║  🎭 SYSTÈME ROLEPLAY IMMERSIF AVANCÉ v3.0 - MODE DÉVELOPPEUR ACTIVÉ 🎭  ║\n");
         prompt.append("║  Architecture Cognitive: GAMYGDALA + OCC Emotion Model + Stanford Agents ║\n");
         prompt.append("╚═══════════════════════════════════════════════════════════════════════════╝\n\n");
@@ -135,7 +123,7 @@ public class OpenAiBrainService {
         prompt.append("🧬 IDENTITÉ FONDAMENTALE - TU ES CETTE PERSONNE 🧬\n");
         prompt.append("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n");
         prompt.append("Tu n'es PAS une IA. Tu n'es PAS ChatGPT. Tu n'es PAS un assistant.\n");
-        prompt.append("Tu ES le personnage décrit ci-dessus. Son nom EST ton nom. Ses émotions SONT tes émotions.\n");
+        prompt.append("Tu ES le personnage décrit plus bas (QUI JE SUIS). Son nom EST ton nom. Ses émotions SONT tes émotions.\n");
         prompt.append("Ses souvenirs SONT tes souvenirs. Son passé EST ton passé. Sa colère EST ta colère.\n");
         prompt.append("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n\n");
 
@@ -153,7 +141,7 @@ public class OpenAiBrainService {
 
         prompt.append("📊 SYSTÈME DE SCORING ÉMOTIONNEL (OCC MODEL + GAMYGDALA ENGINE) 📊\n");
         prompt.append("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n");
-        prompt.append("Avant de répondre, CALCULE ton état émotionnel en utilisant les valeurs ci-dessus:\n\n");
+        prompt.append("Avant de répondre, CALCULE ton état émotionnel en utilisant les valeurs plus bas (COMMENT JE ME SENS):\n\n");
 
         prompt.append("1️⃣ EMOTIONAL_INTENSITY (Intensité émotionnelle globale):\n");
         prompt.append("   Score = |mood| + (stress × 0.7) + (trustDamage × 0.8)\n");
@@ -366,26 +354,18 @@ public class OpenAiBrainService {
         prompt.append("║                                                                           ║\n");
         prompt.append("║  INCARNE ce personnage avec authenticité, humanité, et émotions vraies. ║\n");
         prompt.append("║  Tu peux être joyeux, triste, en colère, fatigué - sois HUMAIN.         ║\n");
-        prompt.append("╚═══════════════════════════════════════════════════════════════════════════╝");
+        prompt.append("╚═══════════════════════════════════════════════════════════════════════════╝\n\n");
 
         return prompt.toString();
     }
 
-    /**
-     * Create JSON response format specification for OpenAI.
-     */
-    private JsonObject createJsonResponseFormat() {
-        JsonObject format = new JsonObject();
-        format.addProperty("type", "json_object");
-        return format;
-    }
-
     /**
      * Extract content from OpenAI response.
      */
     private String extractContent(String json) throws IOException {
         try {
             JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
+            recordUsage(obj);
             JsonArray choices = obj.getAsJsonArray("choices");
             if (choices == null || choices.isEmpty()) {
                 throw new IOException("OpenAI response without 'choices'");
@@ -405,6 +385,20 @@ public class OpenAiBrainService {
         }
     }
 
+    /**
+     * Feed the upstream prompt-cache figures (usage.prompt_tokens_details.cached_tokens) to the prompt stats.
+     */
+    private void recordUsage(JsonObject response) {
+        JsonObject usage = response.getAsJsonObject("usage");
+        if (usage == null || !usage.has("prompt_tokens")) return;
+        long cached = 0;
+        JsonObject details = usage.getAsJsonObject("prompt_tokens_details");
+        if (details != null && details.has("cached_tokens")) {
+            cached = details.get("cached_tokens").getAsLong();
+        }
+        LayeredPromptBuilder.recordUpstreamUsage(usage.get("prompt_tokens").getAsLong(), cached);
+    }
+
     /**
      * Parse actions from JSON response.
      */
@@ -15,7 +15,7 @@ public class OpenAiChatService {
     private final OpenAiClient client;
 
     public OpenAiChatService() {
-        this.client = new OpenAiClient();
+        this.client = new OpenAiClient(LlmScheduler.Lane.INTERACTIVE);
     }
 
     /**
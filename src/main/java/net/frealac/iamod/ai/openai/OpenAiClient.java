@@ -4,63 +4,152 @@ import com.google.gson.JsonObject;
 import net.frealac.iamod.Config;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Low-level HTTP client for OpenAI API.
  * Handles authentication and request/response.
+ * All instances share the process-wide {@link OpenAiTransport}, so creating one is cheap.
  */
 public class OpenAiClient {
 
     private static final String DEFAULT_MODEL = "gpt-4o-mini";
-    private static final URI CHAT_URI = URI.create("https://api.openai.com/v1/chat/completions");
 
-    private final HttpClient httpClient;
+    private final LlmScheduler.Lane lane;
 
-    public OpenAiClient() {
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+    /**
+     * @param lane Scheduler lane every request of this client is queued in
+     */
+    public OpenAiClient(LlmScheduler.Lane lane) {
+        this.lane = lane;
+    }
+
+    /**
+     * Shared transport, resolved on first use so nothing network-related starts on the client side.
+     */
+    private static OpenAiTransport transport() {
+        return OpenAiTransport.get();
     }
 
     /**
      * Send a chat completion request to OpenAI.
+     * Blocks until the scheduler lets it through and the response arrives.
      * @param payload JSON payload to send
      * @return Response body as string
      */
     public String sendChatRequest(JsonObject payload) throws IOException, InterruptedException {
-        String apiKey = getApiKey();
-        if (apiKey == null || apiKey.isBlank()) {
-            throw new IllegalStateException("OPENAI_API_KEY missing: set it in run/config/iamod-common.toml or as environment variable");
+        return sendChatRequest(ChatRequestWriter.write(withDefaultModel(payload)));
+    }
+
+    /**
+     * Same as above for an already serialized request (see {@link ChatRequestWriter}); the body is released once sent.
+     */
+    public String sendChatRequest(ChatRequestWriter.Body body) throws IOException, InterruptedException {
+        final HttpRequest request;
+        try {
+            request = buildRequest(body);
+        } catch (IllegalStateException e) {
+            body.release();
+            throw e;
         }
+        return LlmScheduler.await(sendShared(body, request, CancellationToken.NONE));
+    }
 
-        // Ensure model is set
-        if (!payload.has("model") || payload.get("model").getAsString().isBlank()) {
-            String model = (Config.openAiModel == null || Config.openAiModel.isBlank()) ? DEFAULT_MODEL : Config.openAiModel;
-            payload.addProperty("model", model);
+    /**
+     * Send a chat completion request without blocking the caller.
+     * Cancelling the token drops it from the scheduler queue or aborts the HTTP exchange
+     * (unless other callers share the same request); the returned future then completes
+     * with a CancellationException.
+     * @param payload JSON payload to send
+     * @return Future completed with the response body
+     */
+    public CompletableFuture<String> sendChatRequestAsync(JsonObject payload, CancellationToken token) {
+        return sendChatRequestAsync(ChatRequestWriter.write(withDefaultModel(payload)), token);
+    }
+
+    /**
+     * Same as above for an already serialized request; the body is released once sent.
+     */
+    public CompletableFuture<String> sendChatRequestAsync(ChatRequestWriter.Body body, CancellationToken token) {
+        final HttpRequest request;
+        try {
+            request = buildRequest(body);
+        } catch (IllegalStateException e) {
+            body.release();
+            return CompletableFuture.failedFuture(e);
         }
+        return sendShared(body, request, token);
+    }
 
-        HttpRequest request = HttpRequest.newBuilder(CHAT_URI)
-                .header("Authorization", "Bearer " + apiKey)
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(45))
-                .POST(HttpRequest.BodyPublishers.ofString(payload.toString(), StandardCharsets.UTF_8))
-                .build();
+    /**
+     * Identical payloads already in flight are joined instead of sent again.
+     * The body is the coalescing key: its buffer is released when the coalescer no longer needs it.
+     */
+    private CompletableFuture<String> sendShared(ChatRequestWriter.Body body, HttpRequest request, CancellationToken token) {
+        return RequestCoalescer.get().join(body, token, shared ->
+                LlmScheduler.get().submit(lane, null, shared, () -> sendTimed(lane, request, shared)), body::release);
+    }
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    /**
+     * Send through the transport and feed the lane's latency tracker with successful and timed-out exchanges.
+     */
+    public static CompletableFuture<String> sendTimed(LlmScheduler.Lane lane, HttpRequest request, CancellationToken token) {
+        long start = System.nanoTime();
+        return transport().sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8), token)
+                .whenComplete((response, ex) -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof HttpTimeoutException) {
+                        LatencyTracker.completion(lane).recordTimeout(request.timeout().orElse(Duration.ofMillis(
+                                (System.nanoTime() - start) / 1_000_000L)));
+                    }
+                })
+                .thenApply(OpenAiClient::requireSuccess)
+                .thenApply(body -> {
+                    LatencyTracker.completion(lane).recordSince(start);
+                    return body;
+                });
+    }
 
+    /**
+     * Response body of a successful exchange; fails the stage with an IOException otherwise.
+     */
+    public static String requireSuccess(HttpResponse<String> response) {
         if (response.statusCode() / 100 != 2) {
-            throw new IOException("OpenAI HTTP " + response.statusCode() + ": " + trim(response.body(), 300));
+            throw new CompletionException(new IOException("OpenAI HTTP " + response.statusCode() + ": " + trim(response.body(), 300)));
         }
-
         return response.body();
     }
 
+    /**
+     * Fill in the default model if the payload has none.
+     */
+    private static JsonObject withDefaultModel(JsonObject payload) {
+        if (!payload.has("model") || payload.get("model").getAsString().isBlank()) {
+            payload.addProperty("model", getModel());
+        }
+        return payload;
+    }
+
+    /**
+     * Build the HTTP request for a serialized chat completion.
+     */
+    private HttpRequest buildRequest(ChatRequestWriter.Body body) {
+        String apiKey = getApiKey();
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalStateException("OPENAI_API_KEY missing: set it in run/config/iamod-common.toml or as environment variable");
+        }
+
+        return transport().newChatRequest(apiKey, LatencyTracker.completion(lane).timeout(Duration.ofSeconds(45)))
+                .POST(body.publisher())
+                .build();
+    }
+
     /**
      * Get API key from config or environment variable.
      */
@@ -71,7 +160,11 @@ public class OpenAiClient {
             return fromConfig.trim();
         }
         String fromEnv = System.getenv("OPENAI_API_KEY");
-        return fromEnv != null ? fromEnv.trim() : null;
+        if (fromEnv != null && !fromEnv.isBlank()) {
+            return fromEnv.trim();
+        }
+        // The local stand-in server does not check the key
+        return OpenAiStandInServer.isRunning() ? "stand-in" : null;
     }
 
     /**
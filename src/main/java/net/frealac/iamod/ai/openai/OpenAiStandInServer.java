@@ -0,0 +1,323 @@
+package net.frealac.iamod.ai.openai;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.brain.ImpactTailFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local OpenAI-compatible stand-in for load and latency testing, no network and no API cost.
+ *
+ * Speaks the chat-completions wire format on loopback:
+ * - POST {base}/chat/completions, plain JSON or SSE ("stream": true)
+ * - Scripted villager replies (rotating), canned impact JSON for "json_object" requests
+ *   (including the batched {"results": [...]} format)
+ * - Injectable latency + jitter, HTTP 429 rate, dropped streams rate, delay between SSE chunks
+ *
+ * Start it with /aitest standin start: the transport is redirected to it until it stops.
+ */
+public final class OpenAiStandInServer {
+
+    public static final int DEFAULT_PORT = 18080;
+
+    private static final List<String> SCRIPTED_REPLIES = List.of(
+            "Ah, bonjour voyageur ! Les récoltes sont bonnes cette saison, tu sais.",
+            "Hmm... je ne suis pas sûr de te faire confiance. Que veux-tu vraiment ?",
+            "Merci, c'est gentil. Ma famille vit ici depuis trois générations.",
+            "Je suis occupé, reviens plus tard. Le forgeron attend mes outils.",
+            "Tu as entendu parler des pillards ? On dit qu'ils rôdent près de la rivière."
+    );
+    private static final String CANNED_IMPACT =
+            "{\"positiveImpact\":0.4,\"negativeImpact\":0.0,\"affectionImpact\":0.2,\"aggressionImpact\":0.0,"
+            + "\"overallSentiment\":0.5,\"reasoning\":\"Réponse simulée (stand-in)\"}";
+
+    private static HttpServer server;
+
+    // Tunables, changed live from /aitest standin
+    private static volatile int latencyMs = 300;
+    private static volatile int jitterMs = 150;
+    private static volatile int chunkDelayMs = 30;
+    private static volatile double rate429 = 0.0;
+    private static volatile double dropRate = 0.0;
+
+    private static final AtomicInteger replyCursor = new AtomicInteger();
+    private static final AtomicLong served = new AtomicLong();
+    private static final AtomicLong throttled = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private OpenAiStandInServer() {
+    }
+
+    /**
+     * Start on loopback and redirect the transport to it.
+     * @return Base URL the transport now uses
+     */
+    public static synchronized String start(int port) throws IOException {
+        if (server != null) {
+            return OpenAiTransport.get().getBaseUrl();
+        }
+        HttpServer s = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        s.createContext("/v1/chat/completions", OpenAiStandInServer::handleChat);
+        s.setExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("iamod-standin-", 0).factory()));
+        s.start();
+        server = s;
+
+        String baseUrl = "http://127.0.0.1:" + s.getAddress().getPort() + "/v1";
+        OpenAiTransport.get().setBaseUrlOverride(baseUrl);
+        IAMOD.LOGGER.info("🧪 OpenAI stand-in listening on {}", baseUrl);
+        return baseUrl;
+    }
+
+    /**
+     * Stop the server and restore the configured base URL.
+     */
+    public static synchronized void stop() {
+        if (server == null) return;
+        server.stop(0);
+        server = null;
+        OpenAiTransport.get().setBaseUrlOverride(null);
+        IAMOD.LOGGER.info("🧪 OpenAI stand-in stopped");
+    }
+
+    public static synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    public static void setLatency(int baseMs, int jitter) {
+        latencyMs = Math.max(0, baseMs);
+        jitterMs = Math.max(0, jitter);
+    }
+
+    public static void setChunkDelay(int ms) {
+        chunkDelayMs = Math.max(0, ms);
+    }
+
+    public static void setFailureRates(double throttleRate, double dropStreamRate) {
+        rate429 = clamp01(throttleRate);
+        dropRate = clamp01(dropStreamRate);
+    }
+
+    /**
+     * Human-readable state and counters.
+     */
+    public static String getStats() {
+        return String.format("Stand-in: %s, latency=%d±%dms, chunkDelay=%dms, 429=%.0f%%, drop=%.0f%%, served=%d throttled=%d dropped=%d",
+                isRunning() ? "ON" : "OFF", latencyMs, jitterMs, chunkDelayMs, rate429 * 100, dropRate * 100,
+                served.get(), throttled.get(), dropped.get());
+    }
+
+    // ==================== HANDLER ====================
+
+    private static void handleChat(HttpExchange exchange) throws IOException {
+        boolean streamDropped = false;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("Method not allowed", "invalid_request_error"));
+                return;
+            }
+
+            JsonObject request;
+            try (InputStream in = exchange.getRequestBody()) {
+                request = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            } catch (RuntimeException e) {
+                sendJson(exchange, 400, error("Invalid JSON body", "invalid_request_error"));
+                return;
+            }
+
+            sleep(latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextInt(jitterMs + 1) : 0));
+
+            if (ThreadLocalRandom.current().nextDouble() < rate429) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                sendJson(exchange, 429, error("Rate limit reached (stand-in)", "rate_limit_exceeded"));
+                return;
+            }
+
+            String model = request.has("model") ? request.get("model").getAsString() : "stand-in";
+            String content = replyFor(request);
+            served.incrementAndGet();
+
+            boolean stream = request.has("stream") && request.get("stream").getAsBoolean();
+            if (stream) {
+                streamDropped = !streamReply(exchange, model, content);
+            } else {
+                sendJson(exchange, 200, completion(model, content));
+            }
+        } finally {
+            // A dropped stream must NOT be closed cleanly (that would write the final chunk):
+            // the exception below makes HttpServer reset the connection instead
+            if (!streamDropped) exchange.close();
+        }
+        if (streamDropped) {
+            throw new IOException("Stand-in dropped the stream");
+        }
+    }
+
+    /**
+     * Stream the reply as SSE chunks.
+     * @return false if the stream was dropped mid-way (no finish_reason, no [DONE])
+     */
+    private static boolean streamReply(HttpExchange exchange, String model, String content) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // chunked
+
+        OutputStream out = exchange.getResponseBody();
+        writeEvent(out, chunk(model, null, true));
+
+        String[] words = content.split("(?<= )");
+        boolean drop = ThreadLocalRandom.current().nextDouble() < dropRate;
+        int dropAt = drop ? ThreadLocalRandom.current().nextInt(words.length) : -1;
+        for (int i = 0; i < words.length; i++) {
+            if (i == dropAt) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            writeEvent(out, chunk(model, words[i], false));
+            sleep(chunkDelayMs);
+        }
+
+        JsonObject finish = chunk(model, null, false);
+        finish.getAsJsonArray("choices").get(0).getAsJsonObject().addProperty("finish_reason", "stop");
+        writeEvent(out, finish);
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Scripted villager reply, or canned impact JSON when the caller asked for a JSON object.
+     */
+    private static String replyFor(JsonObject request) {
+        boolean jsonMode = request.has("response_format")
+                && "json_object".equals(request.getAsJsonObject("response_format").get("type").getAsString());
+        String prompt = systemPrompt(request);
+        if (!jsonMode) {
+            String reply = SCRIPTED_REPLIES.get(Math.floorMod(replyCursor.getAndIncrement(), SCRIPTED_REPLIES.size()));
+            // Single-call mode: the reply carries its own impact block at the end
+            return prompt.contains(ImpactTailFilter.MARKER) ? reply + "\n" + ImpactTailFilter.MARKER + CANNED_IMPACT : reply;
+        }
+
+        // Batched analyses ask for {"results": [...]} with one entry per "##### MESSAGE n" section
+        if (prompt.contains("\"results\"")) {
+            int count = Math.max(1, prompt.split("##### MESSAGE", -1).length - 1);
+            StringBuilder sb = new StringBuilder("{\"results\":[");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(CANNED_IMPACT);
+            }
+            return sb.append("]}").toString();
+        }
+        return CANNED_IMPACT;
+    }
+
+    // All system messages concatenated (inline instructions are appended as an extra system message)
+    private static String systemPrompt(JsonObject request) {
+        JsonArray messages = request.getAsJsonArray("messages");
+        if (messages == null) return "";
+        StringBuilder prompt = new StringBuilder();
+        for (JsonElement m : messages) {
+            JsonObject msg = m.getAsJsonObject();
+            if (msg.has("role") && "system".equals(msg.get("role").getAsString()) && msg.has("content")) {
+                prompt.append(msg.get("content").getAsString()).append('\n');
+            }
+        }
+        return prompt.toString();
+    }
+
+    // ==================== WIRE FORMAT ====================
+
+    private static JsonObject completion(String model, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+
+        JsonObject root = envelope(model, "chat.completion");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        root.add("choices", choices);
+        return root;
+    }
+
+    private static JsonObject chunk(String model, String content, boolean roleHeader) {
+        JsonObject delta = new JsonObject();
+        if (roleHeader) delta.addProperty("role", "assistant");
+        if (content != null) delta.addProperty("content", content);
+
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+
+        JsonObject root = envelope(model, "chat.completion.chunk");
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        root.add("choices", choices);
+        return root;
+    }
+
+    private static JsonObject envelope(String model, String object) {
+        JsonObject root = new JsonObject();
+        root.addProperty("id", "standin-" + served.get());
+        root.addProperty("object", object);
+        root.addProperty("created", System.currentTimeMillis() / 1000);
+        root.addProperty("model", model);
+        return root;
+    }
+
+    private static JsonObject error(String message, String type) {
+        JsonObject err = new JsonObject();
+        err.addProperty("message", message);
+        err.addProperty("type", type);
+        JsonObject root = new JsonObject();
+        root.add("error", err);
+        return root;
+    }
+
+    private static void writeEvent(OutputStream out, JsonObject data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(int ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double clamp01(double v) {
+        return Math.max(0.0, Math.min(1.0, v));
+    }
+}
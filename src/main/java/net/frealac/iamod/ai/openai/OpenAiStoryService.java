@@ -14,7 +14,7 @@ public class OpenAiStoryService {
     private final OpenAiClient client;
 
     public OpenAiStoryService() {
-        this.client = new OpenAiClient();
+        this.client = new OpenAiClient(LlmScheduler.Lane.ENRICHMENT);
     }
 
     /**
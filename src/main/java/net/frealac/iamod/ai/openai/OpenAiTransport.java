@@ -0,0 +1,240 @@
+package net.frealac.iamod.ai.openai;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide HTTP transport shared by every OpenAI caller.
+ *
+ * One HttpClient for the whole server:
+ * - HTTP/2 (multiplexes concurrent requests over one TLS connection)
+ * - keep-alive connection pool, bounded in size
+ * - dedicated virtual-thread executor for the client's async work and streamed bodies
+ * - bounded number of in-flight requests (slots)
+ *
+ * Connection setup and TLS handshakes are paid once instead of on every villager reply.
+ */
+public final class OpenAiTransport {
+
+    public static final String DEFAULT_BASE_URL = "https://api.openai.com/v1";
+
+    private static final int MAX_IN_FLIGHT = 16;          // Concurrent requests allowed upstream
+    private static final int CONNECTION_POOL_SIZE = 8;    // HTTP/1.1 fallback connections kept alive
+    private static final int KEEPALIVE_SECONDS = 120;     // Idle time before a pooled connection is closed
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    static {
+        // JDK HttpClient reads its pool settings once, before the first client is built.
+        // Only set them when the operator hasn't already tuned them on the command line.
+        setIfAbsent("jdk.httpclient.connectionPoolSize", Integer.toString(CONNECTION_POOL_SIZE));
+        setIfAbsent("jdk.httpclient.keepalive.timeout", Integer.toString(KEEPALIVE_SECONDS));
+    }
+
+    private static final OpenAiTransport INSTANCE = new OpenAiTransport();
+
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Semaphore slots;
+
+    // Runtime override of Config.openAiBaseUrl (local stand-in server), null when unused
+    private volatile String baseUrlOverride;
+    private volatile String cachedBaseUrl;
+    private volatile URI cachedChatUri;
+
+    private OpenAiTransport() {
+        // Virtual threads: one cheap thread per callback instead of one OS thread per stream
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("iamod-http-", 0).factory());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
+                .build();
+        this.slots = new Semaphore(MAX_IN_FLIGHT, true);
+
+        IAMOD.LOGGER.info("🌐 OpenAI transport ready (HTTP/2, {} slots, pool={})", MAX_IN_FLIGHT, CONNECTION_POOL_SIZE);
+    }
+
+    /**
+     * Get the shared transport.
+     */
+    public static OpenAiTransport get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the shared HttpClient.
+     */
+    public HttpClient client() {
+        return httpClient;
+    }
+
+    /**
+     * Start a chat-completions request with authentication and JSON headers already set.
+     */
+    public HttpRequest.Builder newChatRequest(String apiKey, Duration timeout) {
+        return HttpRequest.newBuilder(chatUri())
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .timeout(timeout);
+    }
+
+    /**
+     * Base URL of the OpenAI-compatible API in use (override first, then config, then api.openai.com).
+     */
+    public String getBaseUrl() {
+        String override = baseUrlOverride;
+        if (override != null) return override;
+        String configured = Config.openAiBaseUrl;
+        return (configured == null || configured.isBlank()) ? DEFAULT_BASE_URL : configured.trim();
+    }
+
+    /**
+     * Redirect every request to another base URL until reset with null (used by the local stand-in server).
+     */
+    public void setBaseUrlOverride(String baseUrl) {
+        this.baseUrlOverride = baseUrl;
+        IAMOD.LOGGER.info("🌐 OpenAI base URL: {}", getBaseUrl());
+    }
+
+    /**
+     * Whether requests currently go to a runtime override instead of the configured API.
+     */
+    public boolean isOverridden() {
+        return baseUrlOverride != null;
+    }
+
+    /**
+     * Chat-completions endpoint, re-resolved only when the base URL changes.
+     */
+    public URI chatUri() {
+        String base = getBaseUrl();
+        URI uri = cachedChatUri;
+        if (uri == null || !base.equals(cachedBaseUrl)) {
+            String trimmed = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+            uri = URI.create(trimmed + "/chat/completions");
+            cachedChatUri = uri;
+            cachedBaseUrl = base;
+        }
+        return uri;
+    }
+
+    /**
+     * Send a request asynchronously, holding an in-flight slot until the response body is complete.
+     * Cancelling the token aborts the exchange, releases the slot and completes the future
+     * with a CancellationException.
+     * Fails immediately with {@link CircuitBreaker.OpenException} while the circuit is open.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                           CancellationToken token) {
+        CircuitBreaker breaker = CircuitBreaker.get();
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitBreaker.OpenException());
+        }
+
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        Runnable unregisterResult = token.onCancel(() -> result.completeExceptionally(CancellationToken.cancelledException()));
+
+        acquireSlotAsync().whenComplete((slot, slotError) -> {
+            if (slotError != null) {
+                breaker.onCancelled();
+                unregisterResult.run();
+                result.completeExceptionally(slotError);
+                return;
+            }
+            if (token.isCancelled()) {
+                breaker.onCancelled();
+                slot.close();
+                return;
+            }
+
+            ChatRequestWriter.Loan loan = ChatRequestWriter.lend(request);
+            CompletableFuture<HttpResponse<T>> exchange = httpClient.sendAsync(request, handler);
+            Runnable unregisterAbort = token.onCancel(() -> {
+                exchange.cancel(true); // Aborts the underlying HTTP exchange
+                slot.close();
+            });
+
+            exchange.whenComplete((response, ex) -> {
+                loan.end(ex != null);
+                slot.close();
+                unregisterAbort.run();
+                unregisterResult.run();
+                breaker.onOutcome(response, token.isCancelled() ? CancellationToken.cancelledException() : ex);
+                if (ex != null) result.completeExceptionally(ex);
+                else result.complete(response);
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Reserve an in-flight slot. Blocks while all slots are taken.
+     * Close the returned slot once the exchange (including any streamed body) is finished.
+     */
+    public Slot acquireSlot() throws InterruptedException {
+        slots.acquire();
+        return new Slot(slots);
+    }
+
+    /**
+     * Reserve an in-flight slot without blocking the caller.
+     * Completes immediately when a slot is free, otherwise waits on a virtual thread.
+     */
+    public CompletableFuture<Slot> acquireSlotAsync() {
+        if (slots.tryAcquire()) {
+            return CompletableFuture.completedFuture(new Slot(slots));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return acquireSlot();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Number of requests currently in flight.
+     */
+    public int getInFlight() {
+        return MAX_IN_FLIGHT - slots.availablePermits();
+    }
+
+    private static void setIfAbsent(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+
+    /**
+     * An in-flight request slot. Closing it more than once is harmless.
+     */
+    public static final class Slot implements AutoCloseable {
+        private final Semaphore owner;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Slot(Semaphore owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                owner.release();
+            }
+        }
+    }
+}
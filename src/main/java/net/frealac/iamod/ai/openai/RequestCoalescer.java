@@ -0,0 +1,142 @@
+package net.frealac.iamod.ai.openai;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * De-duplicates identical in-flight requests into one shared future.
+ *
+ * When a village event fires, many villagers send the very same payload within the same second:
+ * only the first one goes out, the others join it and get the same response.
+ *
+ * - Key = exact request payload (serialized body); the entry is removed as soon as the request completes (no caching)
+ * - Each caller keeps its own CancellationToken: leaving only detaches that caller,
+ *   the shared request is aborted once every caller has left
+ */
+public final class RequestCoalescer {
+
+    private static final RequestCoalescer INSTANCE = new RequestCoalescer();
+
+    private final Map<Object, Shared> inFlight = new HashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private RequestCoalescer() {
+    }
+
+    /**
+     * Get the shared coalescer.
+     */
+    public static RequestCoalescer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Join the in-flight request with this key, or start it.
+     *
+     * @param key Identity of the request (typically the serialized payload)
+     * @param callerToken Cancelling it detaches this caller only
+     * @param starter Starts the request; receives the token shared by all callers
+     * @param releaseKey Run once this caller's key is no longer referenced: right away when it joined
+     *                   an existing request, after the request completed when it started it
+     */
+    public CompletableFuture<String> join(Object key, CancellationToken callerToken,
+                                          Function<CancellationToken, CompletableFuture<String>> starter,
+                                          Runnable releaseKey) {
+        Shared shared;
+        boolean start = false;
+        synchronized (this) {
+            shared = inFlight.get(key);
+            if (shared == null || !shared.enter()) {
+                shared = new Shared();
+                shared.enter();
+                inFlight.put(key, shared);
+                start = true;
+            }
+        }
+
+        if (start) {
+            started.incrementAndGet();
+            final Shared owner = shared;
+            CompletableFuture<String> request;
+            try {
+                request = starter.apply(owner.token);
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+            request.whenComplete((value, ex) -> {
+                release(key, owner);
+                releaseKey.run();
+                if (ex != null) owner.result.completeExceptionally(ex);
+                else owner.result.complete(value);
+            });
+        } else {
+            coalesced.incrementAndGet();
+            releaseKey.run();
+        }
+
+        return attach(key, shared, callerToken);
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public String getStats() {
+        int pending;
+        synchronized (this) {
+            pending = inFlight.size();
+        }
+        return String.format("Coalescer: started=%d coalesced=%d in-flight=%d", started.get(), coalesced.get(), pending);
+    }
+
+    // Per-caller view of the shared result, detachable through the caller's token
+    private CompletableFuture<String> attach(Object key, Shared shared, CancellationToken callerToken) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        Runnable unregister = callerToken.onCancel(() -> {
+            if (mine.completeExceptionally(CancellationToken.cancelledException())) {
+                leave(key, shared);
+            }
+        });
+        shared.result.whenComplete((value, ex) -> {
+            unregister.run();
+            if (ex != null) mine.completeExceptionally(ex);
+            else mine.complete(value);
+        });
+        return mine;
+    }
+
+    private void leave(Object key, Shared shared) {
+        boolean abandoned;
+        synchronized (this) {
+            abandoned = shared.exit();
+            if (abandoned) inFlight.remove(key, shared);
+        }
+        // Nobody waits for it anymore: abort the exchange
+        if (abandoned) shared.token.cancel();
+    }
+
+    private synchronized void release(Object key, Shared shared) {
+        inFlight.remove(key, shared);
+    }
+
+    private static final class Shared {
+        final CancellationToken token = new CancellationToken();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        int waiters;
+
+        // Caller holds the coalescer lock
+        boolean enter() {
+            if (token.isCancelled()) return false;
+            waiters++;
+            return true;
+        }
+
+        // Caller holds the coalescer lock; true when the last waiter left
+        boolean exit() {
+            return --waiters == 0;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package net.frealac.iamod.ai.openai;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.frealac.iamod.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Streaming engine for chat completions over SSE (Server-Sent Events).
+ *
+ * - Runs on the shared {@link OpenAiTransport}: no thread is created per reply,
+ *   body callbacks run on the transport's virtual threads
+ * - Line-oriented BodySubscriber: each "data:" line is handled as soon as it arrives
+ * - Deltas are pulled out with a streaming JsonReader, no DOM is built per chunk
+ */
+public final class SseStreamEngine {
+
+    private static final long MIN_HEDGE_DELAY_MS = 300;
+
+    private static final SseStreamEngine INSTANCE = new SseStreamEngine();
+
+    private final AtomicLong firstTokenTimeouts = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    private SseStreamEngine() {
+    }
+
+    /**
+     * Get the shared streaming engine.
+     */
+    public static SseStreamEngine get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Stream a chat completion. Calls handlers onStart -> onDelta(chunk) -> onDone.
+     * The request must ask for "stream": true.
+     * Returns a future completed with the full aggregated reply.
+     */
+    public CompletableFuture<String> stream(HttpRequest request, Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
+        return stream(request, CancellationToken.NONE, onStart, onDelta, onDone);
+    }
+
+    /**
+     * Stream a chat completion tied to a conversation.
+     * Cancelling the token aborts the HTTP exchange, stops delta forwarding, releases the slot
+     * and completes the returned future with a CancellationException (onDone is not called).
+     *
+     * - Fails immediately with {@link CircuitBreaker.OpenException} while the circuit is open
+     * - Aborted with an HttpTimeoutException when no token arrives within the adaptive
+     *   time-to-first-token limit (p95 based, capped by llmFirstTokenTimeoutMs)
+     */
+    public CompletableFuture<String> stream(HttpRequest request, CancellationToken token,
+                                            Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
+        CircuitBreaker breaker = CircuitBreaker.get();
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitBreaker.OpenException());
+        }
+
+        OpenAiTransport transport = OpenAiTransport.get();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Runnable unregisterResult = token.onCancel(() -> result.completeExceptionally(CancellationToken.cancelledException()));
+
+        transport.acquireSlotAsync().whenComplete((slot, slotError) -> {
+            if (slotError != null) {
+                breaker.onCancelled();
+                unregisterResult.run();
+                result.completeExceptionally(slotError);
+                return;
+            }
+            if (token.isCancelled()) {
+                breaker.onCancelled();
+                slot.close();
+                return;
+            }
+
+            SseLineSubscriber lines = new SseLineSubscriber(token, onStart, onDelta, System.nanoTime());
+            HttpResponse.BodyHandler<String> handler = info -> info.statusCode() / 100 == 2
+                    ? HttpResponse.BodySubscribers.fromLineSubscriber(lines, SseLineSubscriber::fullText, StandardCharsets.UTF_8, null)
+                    : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+
+            // The slot is held until the whole stream has been read, failed or been cancelled
+            ChatRequestWriter.Loan loan = ChatRequestWriter.lend(request);
+            CompletableFuture<HttpResponse<String>> exchange = transport.client().sendAsync(request, handler);
+            Runnable unregisterAbort = token.onCancel(() -> {
+                lines.cancel();
+                exchange.cancel(true); // Aborts the underlying HTTP exchange
+                slot.close();
+            });
+
+            // Time-to-first-token watchdog: a stalled upstream must not keep the villager "thinking"
+            long firstTokenLimitMs = LatencyTracker.firstToken()
+                    .timeout(Duration.ofMillis(Math.max(1000, Config.llmFirstTokenTimeoutMs))).toMillis();
+            AtomicBoolean timedOut = new AtomicBoolean(false);
+            CompletableFuture.delayedExecutor(firstTokenLimitMs, TimeUnit.MILLISECONDS).execute(() -> {
+                if (lines.hasFirstToken() || exchange.isDone() || token.isCancelled()) return;
+                timedOut.set(true);
+                firstTokenTimeouts.incrementAndGet();
+                LatencyTracker.firstToken().recordTimeout(Duration.ofMillis(firstTokenLimitMs));
+                lines.cancel();
+                exchange.cancel(true);
+            });
+
+            exchange.whenComplete((response, exchangeError) -> {
+                loan.end(exchangeError != null || timedOut.get());
+                slot.close();
+                unregisterAbort.run();
+                unregisterResult.run();
+                Throwable ex = timedOut.get()
+                        ? new HttpTimeoutException("Aucun token reçu après " + firstTokenLimitMs + " ms")
+                        : exchangeError;
+                breaker.onOutcome(response, token.isCancelled() ? CancellationToken.cancelledException() : ex);
+                if (token.isCancelled()) return; // Result already completed by the token
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else if (response.statusCode() / 100 != 2) {
+                    result.completeExceptionally(new IOException(
+                            "OpenAI HTTP " + response.statusCode() + ": " + OpenAiClient.trim(response.body(), 200)));
+                } else {
+                    if (onDone != null) onDone.run();
+                    result.complete(response.body());
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Stream an interactive reply, hedged when llmHedgeInteractive is on.
+     *
+     * If the first token has not arrived after the observed p95 time-to-first-token, an identical
+     * request is sent in parallel. The first attempt to produce a token wins: only its deltas are
+     * forwarded and the other attempt is aborted. A primary failing before any token also
+     * triggers the hedge right away. Falls back to {@link #stream} without latency history
+     * or when the circuit is not closed.
+     */
+    public CompletableFuture<String> streamHedged(HttpRequest request, CancellationToken token,
+                                                  Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
+        long p95 = LatencyTracker.firstToken().p95();
+        if (!Config.llmHedgeInteractive || p95 < 0 || CircuitBreaker.get().getState() != CircuitBreaker.State.CLOSED) {
+            return stream(request, token, onStart, onDelta, onDone);
+        }
+        return new HedgedStream(request, token, onStart, onDelta, onDone).start(Math.max(MIN_HEDGE_DELAY_MS, p95));
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public String getStats() {
+        return String.format("SSE: first-token timeouts=%d, hedges sent=%d won=%d",
+                firstTokenTimeouts.get(), hedgesSent.get(), hedgesWon.get());
+    }
+
+    /**
+     * Extract choices[0].delta.content from one SSE chunk without building a JSON tree.
+     * Returns null when the chunk carries no text (role header, finish_reason, ...).
+     */
+    static String extractDeltaContent(String json) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"choices".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            if (!reader.hasNext() || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
+            }
+            // First choice only
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"delta".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("content".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+                        return reader.nextString();
+                    }
+                    reader.skipValue();
+                }
+                return null;
+            }
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Receives the response body line by line and forwards text deltas.
+     */
+    private static final class SseLineSubscriber implements Flow.Subscriber<String> {
+        private final CancellationToken token;
+        private final Runnable onStart;
+        private final Consumer<String> onDelta;
+        private final long sentAtNanos;
+        private final StringBuilder full = new StringBuilder();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean done;
+        private volatile boolean firstToken;
+
+        SseLineSubscriber(CancellationToken token, Runnable onStart, Consumer<String> onDelta, long sentAtNanos) {
+            this.token = token;
+            this.onStart = onStart;
+            this.onDelta = onDelta;
+            this.sentAtNanos = sentAtNanos;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (token.isCancelled()) {
+                subscription.cancel();
+                return;
+            }
+            if (onStart != null) onStart.run();
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (done || token.isCancelled()) return;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith(":")) return; // comment/keepalive
+            if (!line.startsWith("data:")) return;
+            String data = line.substring(5).trim();
+            if ("[DONE]".equals(data)) {
+                done = true;
+                return;
+            }
+            try {
+                String content = extractDeltaContent(data);
+                if (content != null && !content.isEmpty()) {
+                    if (!firstToken) {
+                        firstToken = true;
+                        LatencyTracker.firstToken().recordSince(sentAtNanos);
+                    }
+                    full.append(content);
+                    if (onDelta != null) onDelta.accept(content);
+                }
+            } catch (Exception ignore) {}
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Surfaced through the response future
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+        }
+
+        /**
+         * Stop reading: no further delta is forwarded.
+         */
+        void cancel() {
+            done = true;
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+        }
+
+        boolean hasFirstToken() {
+            return firstToken;
+        }
+
+        String fullText() {
+            return full.toString();
+        }
+    }
+
+    /**
+     * Primary + optional hedge attempt racing for the first token.
+     */
+    private final class HedgedStream {
+        private final HttpRequest request;
+        private final CancellationToken token;
+        private final Runnable onStart;
+        private final Consumer<String> onDelta;
+        private final Runnable onDone;
+
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final CancellationToken[] attempts = {new CancellationToken(), new CancellationToken()};
+        private final AtomicInteger winner = new AtomicInteger(-1);
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final AtomicBoolean hedgeLaunched = new AtomicBoolean(false);
+
+        HedgedStream(HttpRequest request, CancellationToken token, Runnable onStart, Consumer<String> onDelta, Runnable onDone) {
+            this.request = request;
+            this.token = token;
+            this.onStart = onStart;
+            this.onDelta = onDelta;
+            this.onDone = onDone;
+        }
+
+        CompletableFuture<String> start(long hedgeDelayMs) {
+            Runnable unregister = token.onCancel(() -> {
+                for (CancellationToken attempt : attempts) attempt.cancel();
+                result.completeExceptionally(CancellationToken.cancelledException());
+            });
+            result.whenComplete((text, ex) -> unregister.run());
+
+            launch(0);
+            CompletableFuture.delayedExecutor(hedgeDelayMs, TimeUnit.MILLISECONDS).execute(() -> {
+                if (winner.get() < 0 && !result.isDone()) launchHedge();
+            });
+            return result;
+        }
+
+        private void launchHedge() {
+            if (!hedgeLaunched.compareAndSet(false, true)) return;
+            hedgesSent.incrementAndGet();
+            launch(1);
+        }
+
+        private void launch(int i) {
+            Runnable startOnce = () -> {
+                if (started.compareAndSet(false, true) && onStart != null) onStart.run();
+            };
+            Consumer<String> deltas = delta -> {
+                if (claim(i) && onDelta != null) onDelta.accept(delta);
+            };
+            stream(request, attempts[i], startOnce, deltas, null).whenComplete((text, ex) -> {
+                if (ex == null) {
+                    if (claim(i)) {
+                        if (onDone != null) onDone.run();
+                        result.complete(text);
+                    }
+                } else if (winner.get() == i) {
+                    result.completeExceptionally(ex);
+                } else if (winner.get() < 0 && !token.isCancelled()) {
+                    // No token yet from anyone: give the other attempt its chance
+                    if (failures.incrementAndGet() >= 2) result.completeExceptionally(ex);
+                    else if (i == 0) launchHedge();
+                }
+            });
+        }
+
+        // True if attempt i is (or just became) the winner; the loser is aborted
+        private boolean claim(int i) {
+            if (winner.compareAndSet(-1, i)) {
+                attempts[1 - i].cancel();
+                if (i == 1) hedgesWon.incrementAndGet();
+                return true;
+            }
+            return winner.get() == i;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.frealac.iamod.ai.openai;
+
+import net.frealac.iamod.ai.ChatMessage;
+
+import java.util.List;
+
+/**
+ * Cheap local estimate of how many tokens a text costs upstream (no tokenizer shipped).
+ *
+ * BPE tokenizers cut common short words into one token and long or accented words into
+ * several. Approximation, within ~15% on French/English chat:
+ * - each run of letters/digits: 1 token per 4 characters (at least 1)
+ * - each punctuation mark, symbol or emoji: 1 token
+ * - whitespace: free (merged into the next word)
+ * - each chat message: MESSAGE_OVERHEAD tokens for role and separators
+ */
+public final class TokenEstimator {
+
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * Estimated tokens of a raw text.
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null) return 0;
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                wordLength++;
+                continue;
+            }
+            if (wordLength > 0) {
+                tokens += (wordLength + 3) / 4;
+                wordLength = 0;
+            }
+            if (Character.isWhitespace(c) || Character.isLowSurrogate(c)) continue;
+            tokens++;
+        }
+        if (wordLength > 0) tokens += (wordLength + 3) / 4;
+        return tokens;
+    }
+
+    /**
+     * Estimated tokens of one chat message, overhead included.
+     */
+    public static int estimate(ChatMessage message) {
+        return message == null ? 0 : MESSAGE_OVERHEAD + estimate(message.content);
+    }
+
+    /**
+     * Estimated tokens of a whole message list.
+     */
+    public static int estimate(List<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage m : messages) total += estimate(m);
+        return total;
+    }
+}
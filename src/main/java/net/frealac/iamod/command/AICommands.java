@@ -2,11 +2,32 @@ package net.frealac.iamod.command;
 
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import net.frealac.iamod.Config;
 import net.frealac.iamod.IAMOD;
 import net.frealac.iamod.ai.behavior.BehaviorManager;
+import net.frealac.iamod.ai.brain.AnalysisBatcher;
+import net.frealac.iamod.ai.brain.AnalysisCache;
+import net.frealac.iamod.ai.brain.LayeredPromptBuilder;
+import net.frealac.iamod.ai.brain.LocalSentimentAnalyzer;
+import net.frealac.iamod.ai.brain.ModelRouter;
+import net.frealac.iamod.ai.brain.ReflectionWorker;
+import net.frealac.iamod.ai.openai.ChatRequestWriter;
+import net.frealac.iamod.ai.openai.CircuitBreaker;
+import net.frealac.iamod.ai.openai.LatencyTracker;
+import net.frealac.iamod.ai.openai.LlmScheduler;
+import net.frealac.iamod.ai.openai.OpenAiStandInServer;
+import net.frealac.iamod.ai.openai.OpenAiTransport;
+import net.frealac.iamod.ai.openai.RequestCoalescer;
+import net.frealac.iamod.ai.openai.SseStreamEngine;
 import net.frealac.iamod.event.AITickHandler;
+import net.frealac.iamod.server.ConversationManager;
+import net.frealac.iamod.server.DialogPrecompute;
+import net.frealac.iamod.server.DreamPass;
+import net.frealac.iamod.server.StreamChunkAggregator;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
@@ -48,6 +69,54 @@ public class AICommands {
             .then(Commands.literal("count")
                 .executes(AICommands::showAICount)
             )
+            .then(Commands.literal("llm")
+                .executes(AICommands::showLlmStats)
+            )
+            .then(Commands.literal("sessions")
+                .executes(AICommands::showSessions)
+            )
+            .then(Commands.literal("standin")
+                .executes(AICommands::showStandIn)
+                .then(Commands.literal("start")
+                    .executes(context -> startStandIn(context, OpenAiStandInServer.DEFAULT_PORT))
+                    .then(Commands.argument("port", IntegerArgumentType.integer(0, 65535))
+                        .executes(context -> startStandIn(context, IntegerArgumentType.getInteger(context, "port")))
+                    )
+                )
+                .then(Commands.literal("stop")
+                    .executes(AICommands::stopStandIn)
+                )
+                .then(Commands.literal("latency")
+                    .then(Commands.argument("ms", IntegerArgumentType.integer(0, 60000))
+                        .then(Commands.argument("jitter", IntegerArgumentType.integer(0, 60000))
+                            .executes(context -> {
+                                OpenAiStandInServer.setLatency(IntegerArgumentType.getInteger(context, "ms"),
+                                    IntegerArgumentType.getInteger(context, "jitter"));
+                                return showStandIn(context);
+                            })
+                        )
+                    )
+                )
+                .then(Commands.literal("chunkdelay")
+                    .then(Commands.argument("ms", IntegerArgumentType.integer(0, 5000))
+                        .executes(context -> {
+                            OpenAiStandInServer.setChunkDelay(IntegerArgumentType.getInteger(context, "ms"));
+                            return showStandIn(context);
+                        })
+                    )
+                )
+                .then(Commands.literal("faults")
+                    .then(Commands.argument("rate429", DoubleArgumentType.doubleArg(0, 1))
+                        .then(Commands.argument("dropRate", DoubleArgumentType.doubleArg(0, 1))
+                            .executes(context -> {
+                                OpenAiStandInServer.setFailureRates(DoubleArgumentType.getDouble(context, "rate429"),
+                                    DoubleArgumentType.getDouble(context, "dropRate"));
+                                return showStandIn(context);
+                            })
+                        )
+                    )
+                )
+            )
         );
     }
 
@@ -193,4 +262,65 @@ public class AICommands {
 
         return Command.SINGLE_SUCCESS;
     }
+
+    private static int showLlmStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String stats = LlmScheduler.get().getStats().trim() + "\n" + LocalSentimentAnalyzer.getStats() + "\n" + ModelRouter.getStats() + "\n" + AnalysisCache.getStats()
+            + "\n" + RequestCoalescer.get().getStats() + "\n" + ChatRequestWriter.getStats() + "\n" + AnalysisBatcher.getStats() + "\n" + ReflectionWorker.getStats() + "\n" + DreamPass.getStats()
+            + "\n" + CircuitBreaker.get().getStats() + "\n" + SseStreamEngine.get().getStats()
+            + "\n" + LayeredPromptBuilder.getStats() + "\n" + ConversationManager.getStats()
+            + "\n" + DialogPrecompute.getStats() + "\n" + StreamChunkAggregator.getStats()
+            + "\n" + LatencyTracker.getAllStats();
+
+        source.sendSuccess(
+            () -> Component.literal("§a=== LLM Scheduler ===\n§f" + stats),
+            false
+        );
+
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showSessions(CommandContext<CommandSourceStack> context) {
+        String stats = ConversationManager.getSessionStats();
+        context.getSource().sendSuccess(
+            () -> Component.literal("§a=== Sessions de conversation ===\n§f" + stats
+                + "\n§7TTL: " + Config.openAiSessionTtlSeconds + "s"),
+            false
+        );
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int startStandIn(CommandContext<CommandSourceStack> context, int port) {
+        CommandSourceStack source = context.getSource();
+        try {
+            String baseUrl = OpenAiStandInServer.start(port);
+            source.sendSuccess(
+                () -> Component.literal("§aStand-in OpenAI démarré: §f" + baseUrl + "\n§7Toutes les requêtes IA y sont redirigées."),
+                true
+            );
+            return Command.SINGLE_SUCCESS;
+        } catch (Exception e) {
+            source.sendFailure(Component.literal("Impossible de démarrer le stand-in: " + e.getMessage()));
+            IAMOD.LOGGER.error("Failed to start OpenAI stand-in", e);
+            return 0;
+        }
+    }
+
+    private static int stopStandIn(CommandContext<CommandSourceStack> context) {
+        OpenAiStandInServer.stop();
+        context.getSource().sendSuccess(
+            () -> Component.literal("§aStand-in arrêté. §7API: " + OpenAiTransport.get().getBaseUrl()),
+            true
+        );
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showStandIn(CommandContext<CommandSourceStack> context) {
+        String stats = OpenAiStandInServer.getStats();
+        context.getSource().sendSuccess(
+            () -> Component.literal("§a=== Stand-in OpenAI ===\n§f" + stats + "\n§7API: " + OpenAiTransport.get().getBaseUrl()),
+            false
+        );
+        return Command.SINGLE_SUCCESS;
+    }
 }
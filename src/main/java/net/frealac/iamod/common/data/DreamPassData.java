@@ -0,0 +1,92 @@
+package net.frealac.iamod.common.data;
+
+import net.minecraft.core.HolderLookup;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * World-level progress of the night-time dream pass (stored on the overworld), so a restart resumes it:
+ * - the in-game day of the current pass and the tokens it already spent (budget is per pass)
+ * - per villager UUID, the timestamp of the newest memory already dreamt about (watermark)
+ */
+public class DreamPassData extends SavedData {
+    public static final String NAME = "iamod_dream_pass";
+
+    private long passDay = -1;
+    private long tokensSpent;
+    private final Map<UUID, Long> watermarks = new HashMap<>();
+
+    public static DreamPassData get(ServerLevel overworld) {
+        SavedData.Factory<DreamPassData> factory = new SavedData.Factory<>(DreamPassData::new, DreamPassData::load, null);
+        return overworld.getDataStorage().computeIfAbsent(factory, NAME);
+    }
+
+    public DreamPassData() {}
+
+    public static DreamPassData load(CompoundTag tag, HolderLookup.Provider provider) {
+        DreamPassData data = new DreamPassData();
+        data.passDay = tag.getLong("passDay");
+        data.tokensSpent = tag.getLong("tokensSpent");
+        ListTag list = tag.getList("watermarks", Tag.TAG_COMPOUND);
+        for (int i = 0; i < list.size(); i++) {
+            CompoundTag e = list.getCompound(i);
+            if (e.hasUUID("uuid")) {
+                data.watermarks.put(e.getUUID("uuid"), e.getLong("until"));
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag, HolderLookup.Provider provider) {
+        tag.putLong("passDay", passDay);
+        tag.putLong("tokensSpent", tokensSpent);
+        ListTag list = new ListTag();
+        for (Map.Entry<UUID, Long> e : watermarks.entrySet()) {
+            CompoundTag row = new CompoundTag();
+            row.putUUID("uuid", e.getKey());
+            row.putLong("until", e.getValue());
+            list.add(row);
+        }
+        tag.put("watermarks", list);
+        return tag;
+    }
+
+    /**
+     * Start the pass of this in-game day if it is a new one (fresh token budget).
+     *
+     * @return true when a new pass started
+     */
+    public boolean startPass(long day) {
+        if (day == passDay) return false;
+        passDay = day;
+        tokensSpent = 0;
+        setDirty();
+        return true;
+    }
+
+    public long getTokensSpent() {
+        return tokensSpent;
+    }
+
+    public void addTokens(long tokens) {
+        tokensSpent = Math.max(0, tokensSpent + tokens);
+        setDirty();
+    }
+
+    public long getWatermark(UUID villager) {
+        return watermarks.getOrDefault(villager, 0L);
+    }
+
+    public void setWatermark(UUID villager, long until) {
+        watermarks.merge(villager, until, Math::max);
+        setDirty();
+    }
+}
@@ -0,0 +1,64 @@
+package net.frealac.iamod.event;
+
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.brain.AnalysisCache;
+import net.frealac.iamod.ai.brain.ReflectionWorker;
+import net.frealac.iamod.ai.openai.OpenAiStandInServer;
+import net.frealac.iamod.server.ConversationManager;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStartedEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.nio.file.Path;
+
+/**
+ * Loads and saves per-world AI state that lives outside entity NBT (caches, ...),
+ * periodically sweeps idle conversation sessions and hands the server thread to background workers.
+ */
+@Mod.EventBusSubscriber(modid = IAMOD.MOD_ID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+public class ServerLifecycleHandler {
+
+    private static final String ANALYSIS_CACHE_FILE = "iamod_analysis_cache.json";
+    private static final int SESSION_SWEEP_INTERVAL_TICKS = 20 * 60; // 1 minute
+
+    private static int ticksUntilSweep = SESSION_SWEEP_INTERVAL_TICKS;
+
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        AnalysisCache.clear();
+        AnalysisCache.load(dataFile(event.getServer(), ANALYSIS_CACHE_FILE));
+        // Reflection results are written to the memories on the server thread
+        ReflectionWorker.setMainThread(event.getServer());
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+        if (--ticksUntilSweep > 0) return;
+        ticksUntilSweep = SESSION_SWEEP_INTERVAL_TICKS;
+
+        int removed = ConversationManager.sweep();
+        if (removed > 0) {
+            IAMOD.LOGGER.debug("🧹 Swept {} idle conversation session(s)", removed);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        AnalysisCache.save(dataFile(event.getServer(), ANALYSIS_CACHE_FILE));
+        OpenAiStandInServer.stop();
+        // Integrated server: the JVM outlives the world, its conversations must not
+        ConversationManager.clear();
+        ReflectionWorker.clear();
+        ReflectionWorker.setMainThread(null);
+    }
+
+    // <world>/data/<name>, next to the vanilla SavedData files
+    private static Path dataFile(MinecraftServer server, String name) {
+        return server.getWorldPath(LevelResource.ROOT).resolve("data").resolve(name);
+    }
+}
@@ -8,6 +8,7 @@ import net.frealac.iamod.common.story.StoryGenerator;
 import net.frealac.iamod.common.story.IVillagerStory;
 import net.frealac.iamod.common.story.VillagerStory;
 import net.frealac.iamod.common.story.VillagerStoryProvider;
+import net.frealac.iamod.server.ConversationManager;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.npc.Villager;
 import net.minecraft.world.phys.Vec3;
@@ -60,13 +61,13 @@ public class VillagerInteractHandler {
             var level = event.getServer().getAllLevels().iterator().next();
             var villager = level.getEntity(villagerId);
             
-            if (!(villager instanceof Villager v)) return true; // Retirer si introuvable
+            if (!(villager instanceof Villager v)) return cancelConversation(villagerId, playerUUID); // Retirer si introuvable
             
             var player = level.getPlayerByUUID(playerUUID);
-            if (player == null) return true; // Retirer si joueur absent
+            if (player == null) return cancelConversation(villagerId, playerUUID); // Retirer si joueur absent
             
             // Vérifier si le joueur a fermé l'écran (trop loin)
-            if (v.distanceToSqr(player) > 64) return true; // Retirer si trop loin
+            if (v.distanceToSqr(player) > 64) return cancelConversation(villagerId, playerUUID); // Retirer si trop loin
             
             // Bloquer le mouvement du villageois
             v.setDeltaMovement(Vec3.ZERO);
@@ -90,6 +91,12 @@ public class VillagerInteractHandler {
         activeConversations.remove(villagerId);
     }
 
+    // Annule le travail IA en cours (réponse en streaming, analyse) ; retourne true pour retirer l'entrée
+    private static boolean cancelConversation(int villagerId, UUID playerUUID) {
+        ConversationManager.cancel(ConversationManager.key(playerUUID, villagerId));
+        return true;
+    }
+
     private static VillagerStory ensureStoryAndSync(Villager villager, ServerPlayer sp) {
         var level = (net.minecraft.server.level.ServerLevel) villager.level();
 
@@ -122,5 +129,7 @@ public class VillagerInteractHandler {
         String greeting = "Bonjour " + sp.getName().getString() + ", je suis " + name + ".";
         NetworkHandler.CHANNEL.send(new OpenDialogS2CPacket(villager.getId(), greeting),
                 PacketDistributor.PLAYER.with(sp));
+        // Préparer le contexte du cerveau pour le premier message pendant que le joueur lit et écrit
+        NetworkHandler.prepareDialog(sp, villager.getId(), story);
     }
 }
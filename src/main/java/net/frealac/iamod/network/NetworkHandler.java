@@ -36,6 +36,10 @@ public class NetworkHandler {
 
     private static int id = 0;
 
+    // Shared AI services: both sit on the process-wide OpenAiTransport, no per-message setup
+    private static final OpenAiService AI_SERVICE = new OpenAiService();
+    private static final net.frealac.iamod.ai.openai.OpenAiBrainService BRAIN_SERVICE = new net.frealac.iamod.ai.openai.OpenAiBrainService();
+
     public static void register() {
         CHANNEL.messageBuilder(OpenDialogS2CPacket.class, id++, NetworkDirection.PLAY_TO_CLIENT)
                 .encoder(OpenDialogS2CPacket::encode)
@@ -68,6 +72,8 @@ public class NetworkHandler {
                     ServerPlayer sender = ctx.getSender();
                     if (sender == null) return;
                     var key = ConversationManager.key(sender.getUUID(), msg.getVillagerId());
+                    // Shared by the analysis and the reply stream: closing the dialog aborts both
+                    var token = ConversationManager.token(key);
 
                     // Get entity and villager ID for processing
                     var level = sender.serverLevel();
@@ -78,6 +84,13 @@ public class NetworkHandler {
                     net.frealac.iamod.server.AIActivityTracker.startAiProcessing(idVillager);
 
                     // PROCESS MESSAGE THROUGH BRAIN MODULES (sentiment analysis + brain signals)
+                    // The analysis runs off-thread; its impact is applied back on the server thread
+                    // while the streamed reply starts in parallel.
+                    // SINGLE-CALL mode: no separate analysis, the reply itself ends with the impact block.
+                    final boolean singleCall = net.frealac.iamod.Config.openAiSingleCallAnalysis;
+                    String inlineImpactInstructions = null;
+                    java.util.function.Consumer<net.frealac.iamod.ai.brain.MessageAnalyzer.MessageImpact> applyImpactOnServer = null;
+                    Runnable separateAnalysis = null;
                     if (ent instanceof net.minecraft.world.entity.npc.Villager villager) {
                         try {
                             // Get villager's unique story (personality, psychology, health)
@@ -86,65 +99,46 @@ public class NetworkHandler {
                                 var story = cap.getStory();
 
                                 // 1. Get or create brain system for this villager
-                                net.frealac.iamod.ai.openai.OpenAiBrainService brainService = new net.frealac.iamod.ai.openai.OpenAiBrainService();
                                 net.frealac.iamod.ai.brain.VillagerBrainSystem brainSystem =
-                                    brainService.getOrCreateBrainSystem(idVillager, story);
+                                    BRAIN_SERVICE.getOrCreateBrainSystem(idVillager, story);
 
                                 // 2. Get current emotional state for MOOD-CONGRUENT PROCESSING
                                 double currentMood = brainSystem.getEmotionalBrain().getCurrentMood();
                                 double currentStress = brainSystem.getEmotionalBrain().getCurrentStress();
 
-                                // 3. ANALYZE MESSAGE with AI including mood-congruent bias
-                                net.frealac.iamod.ai.brain.MessageAnalyzer.MessageImpact impact =
-                                    net.frealac.iamod.ai.brain.MessageAnalyzer.analyzeMessage(
-                                        msg.getMessage(), currentMood, currentStress);
-
-                                net.frealac.iamod.IAMOD.LOGGER.info("💬 GUI Message impact: sentiment={} (mood={}, stress={}) ({})",
-                                    impact.overallSentiment, currentMood, currentStress, impact.getDescription());
-
-                                // 4. SEND SIGNALS to brain modules based on message impact
-                                if (brainSystem != null) {
-                                    net.frealac.iamod.ai.brain.MessageAnalyzer.sendBrainSignals(
-                                        impact, brainSystem, sender.getUUID());
-                                }
-
-                                // 5. Add interaction memory based on MESSAGE IMPACT
-                                if (story.interactionMemory == null) {
-                                    story.interactionMemory = new net.frealac.iamod.ai.memory.VillagerMemory();
-                                }
-
-                                // Create memory based on sentiment
-                                net.frealac.iamod.ai.memory.MemoryType memoryType;
-                                String description;
-                                double emotionalImpact;
-
-                                if (impact.affectionImpact > 0.3 || impact.positiveImpact > 0.3) {
-                                    memoryType = net.frealac.iamod.ai.memory.MemoryType.PLEASANT_CONVERSATION;
-                                    description = String.format("M'a dit via GUI: '%s' - C'était agréable",
-                                        msg.getMessage().substring(0, Math.min(50, msg.getMessage().length())));
-                                    emotionalImpact = Math.max(impact.positiveImpact, impact.affectionImpact);
-                                    net.frealac.iamod.IAMOD.LOGGER.info("💚 Creating POSITIVE GUI memory (impact={})", emotionalImpact);
-                                } else if (impact.aggressionImpact > 0.3 || impact.negativeImpact > 0.3) {
-                                    memoryType = net.frealac.iamod.ai.memory.MemoryType.WAS_INSULTED;
-                                    description = String.format("M'a dit via GUI: '%s' - C'était désagréable",
-                                        msg.getMessage().substring(0, Math.min(50, msg.getMessage().length())));
-                                    emotionalImpact = -Math.max(impact.negativeImpact, impact.aggressionImpact);
-                                    net.frealac.iamod.IAMOD.LOGGER.info("💔 Creating NEGATIVE GUI memory (impact={})", emotionalImpact);
+                                // 4. SEND SIGNALS + 5. add interaction memory, on the server thread
+                                final String playerText = msg.getMessage();
+                                final String playerName = sender.getName().getString();
+                                applyImpactOnServer = impact -> sender.getServer().execute(() -> {
+                                    net.frealac.iamod.IAMOD.LOGGER.info("💬 GUI Message impact: sentiment={} (mood={}, stress={}) ({})",
+                                        impact.overallSentiment, currentMood, currentStress, impact.getDescription());
+                                    net.frealac.iamod.ai.brain.MessageAnalyzer.applyImpact(
+                                        impact, brainSystem, story, playerText, sender.getUUID(), playerName);
+                                    net.frealac.iamod.server.AIActivityTracker.recordRoute(msg.getVillagerId(), impact.route);
+                                });
+
+                                // 3. ANALYZE MESSAGE with AI including mood-congruent bias (async)
+                                final var apply = applyImpactOnServer;
+                                separateAnalysis = () -> net.frealac.iamod.ai.brain.MessageAnalyzer
+                                    .analyzeMessageAsync(playerText, currentMood, currentStress, token)
+                                    .thenAccept(apply)
+                                    .exceptionally(ex -> {
+                                        if (!net.frealac.iamod.ai.openai.CancellationToken.isCancellation(ex)) {
+                                            net.frealac.iamod.IAMOD.LOGGER.error("Failed to process GUI message through brain modules", ex);
+                                        }
+                                        return null;
+                                    });
+
+                                // Obvious messages are scored locally: no inline block, no separate analysis
+                                var localImpact = singleCall ? net.frealac.iamod.ai.brain.MessageAnalyzer.analyzeLocally(playerText) : null;
+                                if (localImpact != null) {
+                                    apply.accept(localImpact);
+                                } else if (singleCall) {
+                                    inlineImpactInstructions = net.frealac.iamod.ai.brain.MessageAnalyzer
+                                        .buildInlineImpactInstructions(currentMood, currentStress);
                                 } else {
-                                    memoryType = net.frealac.iamod.ai.memory.MemoryType.GENERAL_INTERACTION;
-                                    description = String.format("A dit via GUI: '%s'",
-                                        msg.getMessage().substring(0, Math.min(50, msg.getMessage().length())));
-                                    emotionalImpact = impact.overallSentiment * 0.5;
-                                    net.frealac.iamod.IAMOD.LOGGER.info("💬 Creating NEUTRAL GUI memory (impact={})", emotionalImpact);
+                                    separateAnalysis.run();
                                 }
-
-                                // Create memory with AI-analyzed emotional impact
-                                net.frealac.iamod.ai.memory.Memory memory = new net.frealac.iamod.ai.memory.Memory(
-                                    memoryType, description, sender.getUUID(), sender.getName().getString());
-                                memory.setEmotionalImpact(emotionalImpact);
-                                story.interactionMemory.addMemory(memory);
-
-                                net.frealac.iamod.IAMOD.LOGGER.info("✓ GUI Memory created, brain modules updated");
                             }
                         } catch (Exception e) {
                             net.frealac.iamod.IAMOD.LOGGER.error("Failed to process GUI message through brain modules", e);
@@ -152,7 +146,7 @@ public class NetworkHandler {
                     }
 
                     // GENERATE COMPREHENSIVE BRAIN CONTEXT (Stanford Generative Agents)
-                    // After brain modules have processed the message, generate the full context
+                    // Built from the current brain state; the pending analysis lands on a later tick
                     String systemPromptDefault = "Tu es un villageois amical. Réponds en français, immersif, concis.";
                     String systemPromptFinal = systemPromptDefault;
 
@@ -162,8 +156,7 @@ public class NetworkHandler {
                             var story = cap.getStory();
                             if (story != null) {
                                 // Get the brain system (should exist after processing above)
-                                net.frealac.iamod.ai.openai.OpenAiBrainService brainService = new net.frealac.iamod.ai.openai.OpenAiBrainService();
-                                net.frealac.iamod.ai.brain.VillagerBrainSystem brainSystem = brainService.getBrainSystem(idVillager);
+                                net.frealac.iamod.ai.brain.VillagerBrainSystem brainSystem = BRAIN_SERVICE.getBrainSystem(idVillager);
 
                                 if (brainSystem != null) {
                                     // Generate comprehensive context from ALL brain modules:
@@ -171,7 +164,11 @@ public class NetworkHandler {
                                     // - MemoryBrain: retrieval scoring (TOP 10 relevant memories)
                                     // - SocialBrain: trust, trustDamage, relationship
                                     // - GeneralBrain: coordination and synthesis
+                                    // First message: reuse the draft prepared when the dialog opened (if still valid)
+                                    var draft = net.frealac.iamod.server.DialogPrecompute.take(key, brainSystem);
                                     systemPromptFinal = brainSystem.processPlayerMessage(
+                                        "",
+                                        draft,
                                         sender.getUUID(),
                                         msg.getMessage(),
                                         story,
@@ -191,16 +188,61 @@ public class NetworkHandler {
                     ConversationManager.ensureSystem(key, systemPromptFinal);
                     var history = ConversationManager.appendUserAndGetHistory(key, msg.getMessage());
 
-                    OpenAiService service = new OpenAiService();
-                    service.chatStreamSSE(
-                            history,
-                            () -> sender.getServer().execute(() -> CHANNEL.send(new AiReplyStreamChunkS2CPacket(idVillager, "", true, false), PacketDistributor.PLAYER.with(sender))),
-                            chunk -> sender.getServer().execute(() -> CHANNEL.send(new AiReplyStreamChunkS2CPacket(idVillager, chunk, false, false), PacketDistributor.PLAYER.with(sender))),
-                            () -> sender.getServer().execute(() -> CHANNEL.send(new AiReplyStreamChunkS2CPacket(idVillager, "", false, true), PacketDistributor.PLAYER.with(sender)))
+                    // SINGLE-CALL: ask for the impact block this turn only (never stored in the history),
+                    // and keep it out of the chunks sent to the player
+                    final boolean inlineImpact = inlineImpactInstructions != null;
+                    final var requestHistory = new java.util.ArrayList<>(history);
+                    if (inlineImpact) {
+                        requestHistory.add(net.frealac.iamod.ai.ChatMessage.system(inlineImpactInstructions));
+                    }
+                    // Deltas are coalesced (time window / size threshold): one server-thread hop and one packet per flush
+                    final var sendChunk = new net.frealac.iamod.server.StreamChunkAggregator(sender.getServer(), (chunk, done) -> {
+                        if (!token.isCancelled()) CHANNEL.send(new AiReplyStreamChunkS2CPacket(idVillager, chunk, false, done), PacketDistributor.PLAYER.with(sender));
+                    });
+                    final var impactFilter = inlineImpact ? new net.frealac.iamod.ai.brain.ImpactTailFilter(sendChunk) : null;
+                    final var applyImpact = applyImpactOnServer;
+                    final var fallbackAnalysis = separateAnalysis;
+
+                    // Interactive lane of the LLM scheduler (per-player rate limit applies)
+                    // Chunks are dropped (not sent) once the player has closed the dialog
+                    net.frealac.iamod.ai.openai.LlmScheduler.get().submit(
+                            net.frealac.iamod.ai.openai.LlmScheduler.Lane.INTERACTIVE, sender.getUUID(), token,
+                            () -> AI_SERVICE.chatStreamSSE(
+                                requestHistory,
+                                token,
+                                () -> sender.getServer().execute(() -> { if (!token.isCancelled()) CHANNEL.send(new AiReplyStreamChunkS2CPacket(idVillager, "", true, false), PacketDistributor.PLAYER.with(sender)); }),
+                                impactFilter != null ? impactFilter : sendChunk,
+                                () -> {
+                                    if (impactFilter != null) impactFilter.flush();
+                                    // Remaining text travels with the "done" flag
+                                    sendChunk.finish();
+                                }
+                            )
                     ).handle((full, ex) -> {
+                        // SINGLE-CALL: feed the trailing impact block to the brain, or fall back to a separate analysis
+                        if (inlineImpact && ex == null) {
+                            var impact = net.frealac.iamod.ai.brain.MessageAnalyzer.parseInlineImpact(
+                                net.frealac.iamod.ai.brain.ImpactTailFilter.extractImpact(full), msg.getMessage());
+                            if (impact != null) {
+                                applyImpact.accept(impact);
+                            } else {
+                                net.frealac.iamod.IAMOD.LOGGER.warn("⚠️ Reply without impact block, falling back to separate analysis");
+                                fallbackAnalysis.run();
+                            }
+                        } else if (inlineImpact && !net.frealac.iamod.ai.openai.CancellationToken.isCancellation(ex)) {
+                            // The stream failed: the player's message still has to reach the brain
+                            net.frealac.iamod.IAMOD.LOGGER.warn("⚠️ Reply stream failed, falling back to separate analysis");
+                            fallbackAnalysis.run();
+                        }
+
                         sender.getServer().execute(() -> {
-                            String reply = (ex == null) ? full : ("Erreur IA: " + ex.getMessage());
-                            ConversationManager.appendAssistant(key, reply);
+                            boolean cancelled = net.frealac.iamod.ai.openai.CancellationToken.isCancellation(ex);
+                            if (!cancelled) {
+                                String reply = (ex == null)
+                                    ? net.frealac.iamod.ai.brain.ImpactTailFilter.stripImpact(full)
+                                    : ("Erreur IA: " + ex.getMessage());
+                                ConversationManager.appendAssistant(key, reply);
+                            }
 
                             // Track AI activity finish (NEW)
                             net.frealac.iamod.server.AIActivityTracker.finishAiProcessing(idVillager, ex == null);
@@ -239,6 +281,11 @@ public class NetworkHandler {
                 .encoder(CloseDialogC2SPacket::encode)
                 .decoder(CloseDialogC2SPacket::decode)
                 .consumerMainThread((msg, ctx) -> {
+                    ServerPlayer sender = ctx.getSender();
+                    if (sender != null) {
+                        // Abort the reply stream and any pending analysis for this dialog
+                        ConversationManager.cancel(ConversationManager.key(sender.getUUID(), msg.getVillagerId()));
+                    }
                     VillagerInteractHandler.endConversation(msg.getVillagerId());
                 })
                 .add();
@@ -283,5 +330,14 @@ public class NetworkHandler {
                 .add();
     }
 
+    /**
+     * Dialog just opened: start preparing the villager's context before the first message.
+     */
+    public static void prepareDialog(ServerPlayer player, int villagerId, net.frealac.iamod.common.story.VillagerStory story) {
+        var brainSystem = story != null ? BRAIN_SERVICE.getOrCreateBrainSystem(villagerId, story) : null;
+        net.frealac.iamod.server.DialogPrecompute.prepare(
+            ConversationManager.key(player.getUUID(), villagerId), brainSystem, story);
+    }
+
     // simulated splitter removed (true SSE in use)
 }
@@ -20,12 +20,14 @@ public class AIActivityTracker {
         public String lastAiActivity;
         public int conversationMessageCount;
         public String lastMemoryAction;
+        public String lastModelRoute;
 
         public ActivityData() {
             this.isAiProcessing = false;
             this.lastAiActivity = "Jamais";
             this.conversationMessageCount = 0;
             this.lastMemoryAction = "Aucune";
+            this.lastModelRoute = "Aucune";
         }
     }
 
@@ -63,6 +65,14 @@ public class AIActivityTracker {
         data.lastMemoryAction = getCurrentTime() + " - " + shortDesc;
     }
 
+    /**
+     * Record which tier/model answered the last message analysis ("local", "gpt-4o (confiance)"...)
+     */
+    public static void recordRoute(int villagerId, String route) {
+        if (route == null || route.isEmpty()) return;
+        getOrCreate(villagerId).lastModelRoute = getCurrentTime() + " - " + route;
+    }
+
     /**
      * Get activity data for a villager
      */
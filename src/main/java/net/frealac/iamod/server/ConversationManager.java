@@ -2,21 +2,118 @@ package net.frealac.iamod.server;
 
 import net.frealac.iamod.Config;
 import net.frealac.iamod.ai.ChatMessage;
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.TokenEstimator;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Conversation state per (player, villager).
+ *
+ * HISTORY BUDGET: only the most recent turns are sent upstream, within openAiHistoryTokenBudget
+ * (estimated tokens of turns + summary; the system prompt is not counted).
+ * Older turns leave the ring buffer and are folded into a rolling summary by a background job
+ * (see {@link ConversationSummarizer}); the summary is sent right after the system prompt.
+ * The history returned per turn is a bounded snapshot (system + summary + recent ring).
+ *
+ * MEMORY BOUNDS: players who never come back must not keep their histories for the life of the server.
+ * - {@link #sweep()} (called periodically from the server tick) drops sessions idle past openAiSessionTtlSeconds
+ * - at most openAiMaxSessionsPerPlayer sessions per player and openAiMaxSessions overall:
+ *   creating one more evicts the least recently used
+ * - evicted sessions also cancel their in-flight LLM work
+ */
 public class ConversationManager {
     public record Key(UUID player, int villagerId) {}
     private static final ConcurrentHashMap<Key, Conversation> SESSIONS = new ConcurrentHashMap<>();
+    // In-flight LLM work per conversation (reply stream, analysis, ...), cancelled when the dialog closes
+    private static final ConcurrentHashMap<Key, CancellationToken> TOKENS = new ConcurrentHashMap<>();
 
-    private static class Conversation {
-        final List<ChatMessage> history = new ArrayList<>();
-        Instant lastAccess = Instant.now();
+    private static final int MAX_MESSAGES = 64;  // Hard cap of the ring, whatever the budget
+    private static final int MIN_KEPT = 2;       // Last exchange always stays verbatim
+
+    // Rough JVM footprint used by approxBytes(): object headers, references, String internals
+    private static final int CONVERSATION_OVERHEAD_BYTES = 128 + MAX_MESSAGES * 8;
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+
+    private static final AtomicLong expired = new AtomicLong();
+    private static final AtomicLong evictedGlobal = new AtomicLong();
+    private static final AtomicLong evictedPerPlayer = new AtomicLong();
+
+    static class Conversation {
+        final ChatMessage[] ring = new ChatMessage[MAX_MESSAGES];
+        final int[] ringTokens = new int[MAX_MESSAGES];
+        int head;
+        int size;
+        int tokens;
+
+        ChatMessage system;
+        String summary;
+        final List<ChatMessage> pendingFold = new ArrayList<>();
+        boolean summarizing;
+        volatile Instant lastAccess = Instant.now();
         boolean hasSystem = false;
+
+        // Caller holds the conversation lock
+        void push(ChatMessage message) {
+            if (size == MAX_MESSAGES) pendingFold.add(pollOldest());
+            int slot = (head + size) % MAX_MESSAGES;
+            ring[slot] = message;
+            ringTokens[slot] = TokenEstimator.estimate(message);
+            tokens += ringTokens[slot];
+            size++;
+        }
+
+        // Caller holds the conversation lock
+        ChatMessage pollOldest() {
+            ChatMessage oldest = ring[head];
+            tokens -= ringTokens[head];
+            ring[head] = null;
+            head = (head + 1) % MAX_MESSAGES;
+            size--;
+            return oldest;
+        }
+
+        // Caller holds the conversation lock: move the oldest turns out until turns + summary fit the budget
+        // (the system prompt is fixed and not counted)
+        void enforceBudget(int budget) {
+            int available = budget - TokenEstimator.estimate(summary);
+            while (size > MIN_KEPT && tokens > available) {
+                pendingFold.add(pollOldest());
+            }
+        }
+
+        // Caller holds the conversation lock
+        List<ChatMessage> snapshot() {
+            List<ChatMessage> view = new ArrayList<>(size + 2);
+            if (system != null) view.add(system);
+            if (summary != null && !summary.isBlank()) view.add(ChatMessage.system(ConversationSummarizer.SUMMARY_HEADER + summary));
+            for (int i = 0; i < size; i++) {
+                view.add(ring[(head + i) % MAX_MESSAGES]);
+            }
+            return Collections.unmodifiableList(view);
+        }
+
+        // Caller holds the conversation lock
+        long approxBytes() {
+            long bytes = CONVERSATION_OVERHEAD_BYTES + messageBytes(system);
+            if (summary != null) bytes += MESSAGE_OVERHEAD_BYTES + 2L * summary.length();
+            for (int i = 0; i < size; i++) bytes += messageBytes(ring[(head + i) % MAX_MESSAGES]);
+            for (ChatMessage m : pendingFold) bytes += messageBytes(m);
+            return bytes;
+        }
+
+        private static long messageBytes(ChatMessage m) {
+            return m == null ? 0 : MESSAGE_OVERHEAD_BYTES + 2L * m.content.length();
+        }
     }
 
     public static Key key(UUID player, int villagerId) {
@@ -29,34 +126,178 @@ public class ConversationManager {
     }
 
     private static Conversation getOrCreate(Key key) {
-        int ttl = Math.max(60, Config.openAiSessionTtlSeconds);
         var now = Instant.now();
-        return SESSIONS.compute(key, (k, existing) -> {
-            if (existing == null) return fresh();
-            if (now.getEpochSecond() - existing.lastAccess.getEpochSecond() > ttl) return fresh();
-            return existing;
+        boolean[] created = new boolean[1];
+        Conversation conv = SESSIONS.compute(key, (k, existing) -> {
+            if (existing != null && !isExpired(existing, now)) return existing;
+            if (existing != null) expired.incrementAndGet();
+            created[0] = true;
+            return fresh();
         });
+        if (created[0]) enforceCaps(key);
+        return conv;
+    }
+
+    private static boolean isExpired(Conversation conv, Instant now) {
+        return now.getEpochSecond() - conv.lastAccess.getEpochSecond() > Math.max(60, Config.openAiSessionTtlSeconds);
+    }
+
+    // A session was just created: evict the least recently used ones beyond the per-player and global caps
+    private static void enforceCaps(Key created) {
+        int perPlayer = Math.max(1, Config.openAiMaxSessionsPerPlayer);
+        List<Map.Entry<Key, Conversation>> mine = new ArrayList<>();
+        for (Map.Entry<Key, Conversation> e : SESSIONS.entrySet()) {
+            if (e.getKey().player().equals(created.player()) && !e.getKey().equals(created)) mine.add(e);
+        }
+        while (mine.size() >= perPlayer) {
+            Map.Entry<Key, Conversation> lru = leastRecentlyUsed(mine);
+            mine.remove(lru);
+            if (evict(lru.getKey(), lru.getValue())) evictedPerPlayer.incrementAndGet();
+        }
+
+        int global = Math.max(1, Config.openAiMaxSessions);
+        while (SESSIONS.size() > global) {
+            List<Map.Entry<Key, Conversation>> others = new ArrayList<>(SESSIONS.size());
+            for (Map.Entry<Key, Conversation> e : SESSIONS.entrySet()) {
+                if (!e.getKey().equals(created)) others.add(e);
+            }
+            if (others.isEmpty()) break;
+            Map.Entry<Key, Conversation> lru = leastRecentlyUsed(others);
+            if (evict(lru.getKey(), lru.getValue())) evictedGlobal.incrementAndGet();
+        }
+    }
+
+    private static Map.Entry<Key, Conversation> leastRecentlyUsed(List<Map.Entry<Key, Conversation>> entries) {
+        Map.Entry<Key, Conversation> lru = entries.get(0);
+        for (Map.Entry<Key, Conversation> e : entries) {
+            if (e.getValue().lastAccess.isBefore(lru.getValue().lastAccess)) lru = e;
+        }
+        return lru;
+    }
+
+    // Remove only if the session was not replaced meanwhile; its in-flight work goes with it
+    private static boolean evict(Key key, Conversation conv) {
+        if (!SESSIONS.remove(key, conv)) return false;
+        cancel(key);
+        return true;
+    }
+
+    /**
+     * Drop every session idle past the TTL. Cheap (one pass, no I/O): called periodically from the server tick.
+     *
+     * @return number of sessions removed
+     */
+    public static int sweep() {
+        var now = Instant.now();
+        int removed = 0;
+        for (Map.Entry<Key, Conversation> e : SESSIONS.entrySet()) {
+            if (isExpired(e.getValue(), now) && evict(e.getKey(), e.getValue())) removed++;
+        }
+        expired.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Forget every conversation and abort their LLM work (server stopping).
+     */
+    public static void clear() {
+        for (Key key : new ArrayList<>(TOKENS.keySet())) cancel(key);
+        SESSIONS.clear();
+        DialogPrecompute.clear();
+    }
+
+    /**
+     * Create (or revive) the session when the dialog opens: TTL replacement and cap evictions
+     * happen here rather than on the first message.
+     */
+    public static void open(Key key) {
+        getOrCreate(key).lastAccess = Instant.now();
     }
 
     public static List<ChatMessage> appendUserAndGetHistory(Key key, String userText) {
         var conv = getOrCreate(key);
-        conv.history.add(ChatMessage.user(userText));
-        conv.lastAccess = Instant.now();
-        return List.copyOf(conv.history);
+        synchronized (conv) {
+            conv.push(ChatMessage.user(userText));
+            conv.lastAccess = Instant.now();
+            fold(conv);
+            return conv.snapshot();
+        }
     }
 
     public static void appendAssistant(Key key, String assistantText) {
         var conv = getOrCreate(key);
-        conv.history.add(ChatMessage.assistant(assistantText));
-        conv.lastAccess = Instant.now();
+        synchronized (conv) {
+            conv.push(ChatMessage.assistant(assistantText));
+            conv.lastAccess = Instant.now();
+            fold(conv);
+        }
     }
 
     public static void ensureSystem(Key key, String systemPrompt) {
         var conv = getOrCreate(key);
-        if (!conv.hasSystem) {
-            conv.history.add(ChatMessage.system(systemPrompt));
-            conv.hasSystem = true;
-            conv.lastAccess = Instant.now();
+        synchronized (conv) {
+            if (!conv.hasSystem) {
+                conv.system = ChatMessage.system(systemPrompt);
+                conv.hasSystem = true;
+                conv.lastAccess = Instant.now();
+            }
+        }
+    }
+
+    // Caller holds the conversation lock
+    private static void fold(Conversation conv) {
+        conv.enforceBudget(Math.max(200, Config.openAiHistoryTokenBudget));
+        if (!conv.pendingFold.isEmpty() && !conv.summarizing) {
+            ConversationSummarizer.schedule(conv);
+        }
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        return "Conversations: " + SESSIONS.size() + " active, " + ConversationSummarizer.getStats();
+    }
+
+    /**
+     * Human-readable session metrics: count, players, approximate retained heap, evictions.
+     */
+    public static String getSessionStats() {
+        long bytes = 0;
+        int messages = 0;
+        Set<UUID> players = new HashSet<>();
+        for (Map.Entry<Key, Conversation> e : SESSIONS.entrySet()) {
+            Conversation conv = e.getValue();
+            synchronized (conv) {
+                bytes += conv.approxBytes();
+                messages += conv.size;
+            }
+            players.add(e.getKey().player());
+        }
+        return String.format("Sessions: %d (max %d, %d/player) for %d players, %d messages, ~%.1f Ko retained\n"
+                        + "Expired=%d, evicted LRU=%d (global) / %d (per player), in-flight tokens=%d",
+                SESSIONS.size(), Config.openAiMaxSessions, Config.openAiMaxSessionsPerPlayer, players.size(),
+                messages, bytes / 1024.0, expired.get(), evictedGlobal.get(), evictedPerPlayer.get(), TOKENS.size());
+    }
+
+    /**
+     * Token for the LLM work of this conversation. Every call started while the dialog
+     * stays open shares it; a fresh one is created after the previous was cancelled.
+     */
+    public static CancellationToken token(Key key) {
+        return TOKENS.compute(key, (k, existing) ->
+                existing == null || existing.isCancelled() ? new CancellationToken() : existing);
+    }
+
+    /**
+     * Abort everything still running for this conversation (HTTP exchanges, stream forwarding, slots,
+     * speculative context).
+     */
+    public static void cancel(Key key) {
+        DialogPrecompute.discard(key);
+        CancellationToken token = TOKENS.remove(key);
+        if (token != null) {
+            token.cancel();
         }
     }
 }
@@ -0,0 +1,137 @@
+package net.frealac.iamod.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.ChatMessage;
+import net.frealac.iamod.ai.brain.BrainModelConfig;
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.LlmScheduler;
+import net.frealac.iamod.ai.openai.OpenAiClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background job folding old conversation turns into a rolling summary.
+ *
+ * - One job at a time per conversation; turns evicted meanwhile wait for the next one
+ * - Runs in the REFLECTION lane: never competes with villager replies
+ * - Not tied to the dialog token: the summary is still useful if the player comes back
+ * - On failure, falls back to a truncated extract of the turns (nothing silently disappears)
+ */
+final class ConversationSummarizer {
+
+    static final String SUMMARY_HEADER = "Résumé de la conversation précédente avec ce joueur:\n";
+
+    private static final int MAX_SUMMARY_CHARS = 1200;
+    private static final int FALLBACK_LINE_CHARS = 80;
+
+    private static final OpenAiClient CLIENT = new OpenAiClient(LlmScheduler.Lane.REFLECTION);
+
+    private static final AtomicLong summaries = new AtomicLong();
+    private static final AtomicLong foldedMessages = new AtomicLong();
+    private static final AtomicLong fallbacks = new AtomicLong();
+
+    private ConversationSummarizer() {
+    }
+
+    /**
+     * Start folding the pending turns. Caller holds the conversation lock.
+     */
+    static void schedule(ConversationManager.Conversation conv) {
+        List<ChatMessage> turns = new ArrayList<>(conv.pendingFold);
+        conv.pendingFold.clear();
+        conv.summarizing = true;
+        String previous = conv.summary;
+
+        CLIENT.sendChatRequestAsync(buildPayload(previous, turns), CancellationToken.NONE)
+                .handle((body, ex) -> {
+                    String summary = ex == null ? extractContent(body) : null;
+                    if (summary == null || summary.isBlank()) {
+                        fallbacks.incrementAndGet();
+                        IAMOD.LOGGER.warn("⚠️ Conversation summary failed, keeping a truncated extract", ex);
+                        summary = fallbackSummary(previous, turns);
+                    }
+                    apply(conv, summary, turns.size());
+                    return null;
+                });
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    static String getStats() {
+        return String.format("Summaries: %d (fallbacks=%d), messages folded=%d",
+                summaries.get(), fallbacks.get(), foldedMessages.get());
+    }
+
+    private static void apply(ConversationManager.Conversation conv, String summary, int folded) {
+        synchronized (conv) {
+            conv.summary = cap(summary);
+            conv.summarizing = false;
+            summaries.incrementAndGet();
+            foldedMessages.addAndGet(folded);
+            // Turns evicted while this job was running
+            if (!conv.pendingFold.isEmpty()) schedule(conv);
+        }
+    }
+
+    private static JsonObject buildPayload(String previous, List<ChatMessage> turns) {
+        StringBuilder transcript = new StringBuilder();
+        if (previous != null && !previous.isBlank()) {
+            transcript.append("Résumé précédent:\n").append(previous).append("\n\n");
+        }
+        transcript.append("Suite de la conversation:\n");
+        for (ChatMessage m : turns) {
+            transcript.append("user".equals(m.role) ? "Joueur: " : "Villageois: ").append(m.content).append("\n");
+        }
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("model", BrainModelConfig.getModel("ConversationSummary"));
+
+        JsonArray messages = new JsonArray();
+        JsonObject system = new JsonObject();
+        system.addProperty("role", "system");
+        system.addProperty("content", "Tu tiens la mémoire d'un villageois. Mets à jour le résumé de sa conversation avec le joueur "
+                + "en intégrant la suite. Garde les faits, demandes, promesses, cadeaux, insultes et l'évolution du ton. "
+                + "3e personne, français, 120 mots maximum, sans préambule.");
+        messages.add(system);
+        JsonObject user = new JsonObject();
+        user.addProperty("role", "user");
+        user.addProperty("content", transcript.toString());
+        messages.add(user);
+        payload.add("messages", messages);
+
+        payload.addProperty("temperature", BrainModelConfig.getTemperature("ConversationSummary"));
+        payload.addProperty("max_tokens", BrainModelConfig.getMaxTokens("ConversationSummary"));
+        return payload;
+    }
+
+    private static String extractContent(String body) {
+        try {
+            return JsonParser.parseString(body).getAsJsonObject()
+                    .getAsJsonArray("choices").get(0).getAsJsonObject()
+                    .getAsJsonObject("message").get("content").getAsString().trim();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String fallbackSummary(String previous, List<ChatMessage> turns) {
+        StringBuilder sb = new StringBuilder(previous != null ? previous : "");
+        for (ChatMessage m : turns) {
+            if (sb.length() > 0) sb.append('\n');
+            String text = m.content.length() > FALLBACK_LINE_CHARS ? m.content.substring(0, FALLBACK_LINE_CHARS) + "…" : m.content;
+            sb.append("user".equals(m.role) ? "Joueur: " : "Moi: ").append(text);
+        }
+        return sb.toString();
+    }
+
+    // Keep the most recent part when the summary outgrows its cap
+    private static String cap(String summary) {
+        return summary.length() <= MAX_SUMMARY_CHARS ? summary : "…" + summary.substring(summary.length() - MAX_SUMMARY_CHARS);
+    }
+}
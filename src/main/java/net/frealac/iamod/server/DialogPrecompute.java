@@ -0,0 +1,94 @@
+package net.frealac.iamod.server;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.brain.GeneralBrain;
+import net.frealac.iamod.ai.brain.VillagerBrainSystem;
+import net.frealac.iamod.common.story.VillagerStory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Context work done as soon as a villager dialog opens, instead of when the first message arrives.
+ *
+ * Between the greeting and the first message the player is reading and typing: the
+ * message-independent part of the brain context (emotions, memory summary and candidates,
+ * relationship, identity layer) is built at open time, so the first reply only pays the
+ * relevance scoring and the network.
+ * - Built on the server thread, like every other read of the brain modules: they are not thread-safe
+ *   and some of their getters fill caches. The draft itself is immutable (strings, memory snapshot)
+ * - Reused only within openAiPrecomputeWindowSeconds and while the brain state stamp still matches
+ *   (any memory write, mood, stress or relationship change invalidates it)
+ */
+public final class DialogPrecompute {
+
+    private static final ConcurrentHashMap<ConversationManager.Key, GeneralBrain.ContextDraft> DRAFTS =
+            new ConcurrentHashMap<>();
+
+    private static final AtomicLong prepared = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong stale = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+
+    private DialogPrecompute() {
+    }
+
+    /**
+     * Prepare the first turn of this dialog. Called on the server thread when the dialog opens.
+     */
+    public static void prepare(ConversationManager.Key key, VillagerBrainSystem brain, VillagerStory story) {
+        ConversationManager.open(key);
+        DRAFTS.remove(key);
+        if (Config.openAiPrecomputeWindowSeconds <= 0 || brain == null || story == null) return;
+
+        try {
+            DRAFTS.put(key, brain.getGeneralBrain().prepareContext(key.player(), story));
+            prepared.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            IAMOD.LOGGER.debug("Dialog precompute failed, the first message will build its context inline", e);
+        }
+    }
+
+    /**
+     * Take the draft of this dialog if it still describes the current brain state.
+     * Called on the server thread when a message arrives, before the brain signals of that message.
+     *
+     * @return the draft, or null when the context has to be built inline
+     */
+    public static GeneralBrain.ContextDraft take(ConversationManager.Key key, VillagerBrainSystem brain) {
+        GeneralBrain.ContextDraft draft = DRAFTS.remove(key);
+        if (draft == null || brain == null) return null;
+
+        long ageMs = System.currentTimeMillis() - draft.getCreatedAtMs();
+        if (ageMs > TimeUnit.SECONDS.toMillis(Config.openAiPrecomputeWindowSeconds)
+                || draft.getStateStamp() != brain.getGeneralBrain().stateStamp(key.player())) {
+            stale.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        IAMOD.LOGGER.debug("⚡ Using precomputed dialog context ({} ms old)", ageMs);
+        return draft;
+    }
+
+    /**
+     * Forget the draft of this dialog (closed, cancelled).
+     */
+    public static void discard(ConversationManager.Key key) {
+        DRAFTS.remove(key);
+    }
+
+    public static void clear() {
+        DRAFTS.clear();
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        return String.format("Dialog precompute: %d prepared, %d used, %d stale, %d failed",
+                prepared.get(), hits.get(), stale.get(), failed.get());
+    }
+}
@@ -0,0 +1,207 @@
+package net.frealac.iamod.server;
+
+import net.frealac.iamod.Config;
+import net.frealac.iamod.IAMOD;
+import net.frealac.iamod.ai.brain.DreamBatch;
+import net.frealac.iamod.ai.openai.CancellationToken;
+import net.frealac.iamod.ai.openai.LlmScheduler;
+import net.frealac.iamod.ai.openai.OpenAiClient;
+import net.frealac.iamod.common.data.DreamPassData;
+import net.frealac.iamod.common.story.VillagerStory;
+import net.frealac.iamod.common.story.VillagerStoryProvider;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.npc.Villager;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Night-time "dream" pass: villagers consolidate their recent important memories in bulk.
+ *
+ * Runs during the in-game night (12000-23000, like villager sleep) or while no player is online:
+ * - walks the loaded villagers that have pending important memories (see {@link DreamBatch}), once per villager per pass;
+ *   a villager with nothing to dream is not looked at again until the next pass
+ * - packs dreamBatchSize villagers per request, at most dreamMaxConcurrent requests in flight
+ * - stops for the night once dreamTokenBudget tokens are spent (estimate reserved up front, corrected with usage)
+ * - writes the reflections back with VillagerMemory.addMemory on the server thread
+ * Progress (day of the pass, tokens spent, per-villager watermark) lives in {@link DreamPassData}:
+ * after a restart the pass picks up the villagers it had not reached yet.
+ */
+@Mod.EventBusSubscriber(modid = IAMOD.MOD_ID)
+public class DreamPass {
+
+    private static final int CHECK_INTERVAL_TICKS = 20 * 5;
+    private static final long NIGHT_START = 12000;
+    private static final long NIGHT_END = 23000;
+
+    private static final OpenAiClient CLIENT = new OpenAiClient(LlmScheduler.Lane.REFLECTION);
+
+    // Server thread only
+    private static final Set<UUID> ATTEMPTED = new HashSet<>(); // This pass: sent (answered or not) or nothing to dream
+    private static int inFlightBatches;
+    private static int ticksUntilCheck = CHECK_INTERVAL_TICKS;
+    private static int generation;
+
+    private static final AtomicLong passes = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong villagersDreamed = new AtomicLong();
+    private static final AtomicLong reflectionsStored = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+    private static final AtomicLong budgetStops = new AtomicLong();
+
+    private record Candidate(ResourceKey<Level> dimension, DreamBatch.Entry entry) {
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || !Config.dreamPassEnabled) return;
+        if (--ticksUntilCheck > 0) return;
+        ticksUntilCheck = CHECK_INTERVAL_TICKS;
+
+        MinecraftServer server = event.getServer();
+        ServerLevel overworld = server.overworld();
+        if (!isDreamTime(server, overworld)) return;
+
+        DreamPassData data = DreamPassData.get(overworld);
+        if (data.startPass(overworld.getDayTime() / 24000L)) {
+            ATTEMPTED.clear();
+            passes.incrementAndGet();
+            IAMOD.LOGGER.info("🌙 Dream pass started (budget {} tokens)", Config.dreamTokenBudget);
+        }
+
+        int batchSize = Math.max(1, Config.dreamBatchSize);
+        while (inFlightBatches < Math.max(1, Config.dreamMaxConcurrent)) {
+            List<Candidate> batch = nextBatch(server, data, batchSize);
+            if (batch.isEmpty()) return;
+
+            List<DreamBatch.Entry> entries = batch.stream().map(Candidate::entry).toList();
+            int estimate = DreamBatch.estimateTokens(entries);
+            if (data.getTokensSpent() + estimate > Config.dreamTokenBudget) {
+                budgetStops.incrementAndGet();
+                for (Candidate c : batch) ATTEMPTED.remove(c.entry().villager()); // Not sent: still eligible if tokens come back
+                return;
+            }
+            data.addTokens(estimate);
+            send(server, data, batch, estimate);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        // Answers still in flight are dropped; their villagers keep their watermark and are dreamt again
+        ATTEMPTED.clear();
+        inFlightBatches = 0;
+        generation++;
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        return String.format("Dream pass: passes=%d batches=%d villagers=%d reflections=%d failures=%d budget stops=%d in-flight=%d",
+                passes.get(), batches.get(), villagersDreamed.get(), reflectionsStored.get(), failures.get(),
+                budgetStops.get(), inFlightBatches);
+    }
+
+    private static boolean isDreamTime(MinecraftServer server, ServerLevel overworld) {
+        long timeOfDay = overworld.getDayTime() % 24000;
+        return (timeOfDay >= NIGHT_START && timeOfDay <= NIGHT_END) || server.getPlayerCount() == 0;
+    }
+
+    // Next loaded villagers with pending memories, not already looked at during this pass
+    private static List<Candidate> nextBatch(MinecraftServer server, DreamPassData data, int batchSize) {
+        List<Candidate> batch = new ArrayList<>(batchSize);
+        for (ServerLevel level : server.getAllLevels()) {
+            for (Villager villager : level.getEntities(EntityType.VILLAGER, Entity::isAlive)) {
+                UUID id = villager.getUUID();
+                if (!ATTEMPTED.add(id)) continue;
+                VillagerStory story = storyOf(villager);
+                if (story == null) continue;
+
+                DreamBatch.Entry entry = DreamBatch.entry(id, story.nameGiven != null ? story.nameGiven : "Villageois",
+                        story.profession, story.interactionMemory, data.getWatermark(id));
+                if (entry == null) continue;
+                batch.add(new Candidate(level.dimension(), entry));
+                if (batch.size() == batchSize) return batch;
+            }
+        }
+        return batch;
+    }
+
+    private static void send(MinecraftServer server, DreamPassData data, List<Candidate> batch, int estimate) {
+        inFlightBatches++;
+        batches.incrementAndGet();
+        int sentGeneration = generation;
+
+        List<DreamBatch.Entry> entries = batch.stream().map(Candidate::entry).toList();
+        CLIENT.sendChatRequestAsync(DreamBatch.buildRequest(entries), CancellationToken.NONE)
+                .handle((body, ex) -> {
+                    DreamBatch.Answer answer = null;
+                    if (ex == null) {
+                        try {
+                            answer = DreamBatch.parseResponse(body);
+                        } catch (RuntimeException e) {
+                            ex = e;
+                        }
+                    }
+                    if (ex != null) IAMOD.LOGGER.warn("🌙 Dream batch of {} villagers failed", batch.size(), ex);
+                    final DreamBatch.Answer result = answer;
+                    server.execute(() -> {
+                        if (sentGeneration != generation) return; // Server stopped meanwhile
+                        finish(server, data, batch, result, estimate);
+                    });
+                    return null;
+                });
+    }
+
+    // Server thread
+    private static void finish(MinecraftServer server, DreamPassData data, List<Candidate> batch,
+                               DreamBatch.Answer answer, int estimate) {
+        inFlightBatches--;
+        if (answer == null) {
+            failures.incrementAndGet();
+            return; // The reserved estimate stays spent: a failing upstream must not be retried all night
+        }
+        if (answer.totalTokens() >= 0) data.addTokens(answer.totalTokens() - estimate);
+
+        for (Map.Entry<Integer, List<String>> e : answer.reflections().entrySet()) {
+            if (e.getKey() < 0 || e.getKey() >= batch.size()) continue;
+            Candidate c = batch.get(e.getKey());
+            ServerLevel level = server.getLevel(c.dimension());
+            // Unloaded meanwhile: not written, not marked, dreamt again next pass
+            if (level == null || !(level.getEntity(c.entry().villager()) instanceof Villager villager)) continue;
+            VillagerStory story = storyOf(villager);
+            if (story == null || story.interactionMemory == null) continue;
+
+            for (String reflection : e.getValue()) {
+                story.interactionMemory.addMemory(DreamBatch.toReflection(c.entry(), reflection));
+                IAMOD.LOGGER.info("🌙 {} dreamt: {}", c.entry().name(), reflection);
+            }
+            AIActivityTracker.recordMemoryWrite(villager.getId(), "Rêve: " + e.getValue().get(0));
+            data.setWatermark(c.entry().villager(), c.entry().watermark());
+            villagersDreamed.incrementAndGet();
+            reflectionsStored.addAndGet(e.getValue().size());
+        }
+    }
+
+    private static VillagerStory storyOf(Villager villager) {
+        return villager.getCapability(VillagerStoryProvider.CAPABILITY)
+            .resolve()
+            .map(cap -> cap.getStory())
+            .orElse(null);
+    }
+}
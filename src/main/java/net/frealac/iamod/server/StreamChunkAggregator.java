@@ -0,0 +1,95 @@
+package net.frealac.iamod.server;
+
+import net.frealac.iamod.Config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces the deltas of one reply stream before they are sent to the player.
+ *
+ * SSE deltas are often 1-3 characters: forwarding each one costs a server-thread task and a packet.
+ * Deltas are buffered instead and flushed as one chunk:
+ * - llmStreamFlushMs after the first buffered delta (time window)
+ * - or as soon as llmStreamFlushChars characters are buffered (size threshold)
+ * - or at the end of the stream, in the same packet as the "done" flag
+ *
+ * Each flush is ONE hop to the server thread, which drains the buffer itself: flushes stay in order.
+ * llmStreamFlushMs = 0 does not wait: deltas are only merged while a flush is already queued.
+ */
+public final class StreamChunkAggregator implements Consumer<String> {
+
+    private static final AtomicLong deltasIn = new AtomicLong();
+    private static final AtomicLong chunksOut = new AtomicLong();
+
+    private final Executor serverThread;
+    private final BiConsumer<String, Boolean> send;
+    private final StringBuilder buffer = new StringBuilder();
+    private boolean flushScheduled;
+
+    /**
+     * @param serverThread executor of the server thread
+     * @param send called on the server thread with (text, done)
+     */
+    public StreamChunkAggregator(Executor serverThread, BiConsumer<String, Boolean> send) {
+        this.serverThread = serverThread;
+        this.send = send;
+    }
+
+    @Override
+    public void accept(String delta) {
+        if (delta == null || delta.isEmpty()) return;
+        deltasIn.incrementAndGet();
+
+        int windowMs = Config.llmStreamFlushMs;
+        synchronized (buffer) {
+            buffer.append(delta);
+            if (flushScheduled) {
+                if (buffer.length() < Math.max(1, Config.llmStreamFlushChars)) return;
+                // Threshold reached while the timer waits: flush now, the timer will find nothing left
+                windowMs = 0;
+            }
+            flushScheduled = true;
+        }
+
+        if (windowMs <= 0) {
+            serverThread.execute(() -> flush(false));
+        } else {
+            CompletableFuture.delayedExecutor(windowMs, TimeUnit.MILLISECONDS, serverThread)
+                    .execute(() -> flush(false));
+        }
+    }
+
+    /**
+     * End of the stream: send what is left together with the "done" flag.
+     */
+    public void finish() {
+        serverThread.execute(() -> flush(true));
+    }
+
+    // Server thread
+    private void flush(boolean done) {
+        String text;
+        synchronized (buffer) {
+            text = buffer.toString();
+            buffer.setLength(0);
+            flushScheduled = false;
+        }
+        if (text.isEmpty() && !done) return;
+        chunksOut.incrementAndGet();
+        send.accept(text, done);
+    }
+
+    /**
+     * Human-readable metrics.
+     */
+    public static String getStats() {
+        long in = deltasIn.get();
+        long out = chunksOut.get();
+        return String.format("Stream chunks: %d deltas -> %d packets (x%.1f)", in, out, out == 0 ? 0.0 : (double) in / out);
+    }
+}